@@ -1,199 +1,426 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-class User {
-    private String userId;
-    private String password;
-    private String nickname;
-    private String email;
-    private String phone;
-    private List<String> friendList;
-    private List<String> blockedList;
+// ChatApplication.java - 메인 애플리케이션 클래스
+public class ChatApplication {
+    private UserStore users;
     private Map<String, ChatRoom> chatRooms;
+    private User currentUser;
+    private Scanner scanner;
+    private PrintStream out;
+    // 로그인 메뉴에서 종료를 고르면 false
+    private boolean running = true;
+    // 모델과 변경 로그를 가진 인스턴스. 접속 세션이면 서버를 띄운 인스턴스, 아니면 자기 자신.
+    private final ChatApplication engine;
+    private final AtomicInteger roomIdCounter = new AtomicInteger(1);
+    private MutationLog mutationLog;
+    // 변경(로그 기록 + 적용)은 읽기 잠금을 공유해 동시에 진행하고, 스냅샷은 쓰기 잠금으로 잠깐 멈춰 세운 뒤 상태를 복사한다.
+    // 그래야 스냅샷 번호까지의 변경이 모두 반영된 상태를 찍는다.
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private Path dataDirectory;
+    // 마지막 스냅샷 이후 이만큼 변경이 쌓이면 새 스냅샷을 만든다
+    private long snapshotInterval;
+    private volatile long lastSnapshotLsn;
+    private final AtomicBoolean snapshotInProgress = new AtomicBoolean();
+    private ExecutorService snapshotWriter;
+    // 삭제된 메시지의 본문과 청크를 회수한다 (engine 만 가짐, 꺼져 있으면 null)
+    private MessageCompactor compactor;
+    // 새 메시지를 접속 중인 참여자에게 보낸다 (engine 만 가짐, 세션은 service 를 거친다)
+    private MessageDispatcher dispatcher;
+    // 채팅방 표시 이름 (engine 만 가짐)
+    private DisplayNames displayNames;
+    // 지연 시간, 카운터, 게이지 (engine 만 가짐)
+    private ChatMetrics metrics;
+    // 모든 작업이 거치는 API (engine 것을 같이 쓴다). 콘솔 메뉴는 입력을 받고 결과를 출력하기만 한다.
+    private ChatService service;
+    // 접속 세션이면 로그인한 동안 새 메시지 알림을 받아 이 실행기에서 출력한다 (혼자 쓰는 콘솔이면 null)
+    private Executor pushExecutor;
+    private volatile MessageDispatcher.Subscription subscription;
+    // 알림 출력 작업이 실행기에 들어가 있으면 true (세션마다 하나만 넣는다)
+    private final AtomicBoolean pushScheduled = new AtomicBoolean();
+    
+    private static final int SEARCH_PAGE_SIZE = 20;
+    // 채팅방에 들어갔을 때 한 화면에 보이는 메시지 수
+    private static final int MESSAGE_PAGE_SIZE = 20;
+    private static final long DEFAULT_SNAPSHOT_INTERVAL = 50_000;
+    private static final long DEFAULT_METRICS_INTERVAL_SECONDS = 60;
+    
+    public ChatApplication() {
+        engine = this;
+        out = System.out;
+        users = new UserStore();
+        chatRooms = new ConcurrentHashMap<>();
+        scanner = new Scanner(System.in);
+        metrics = new ChatMetrics();
+        dispatcher = new MessageDispatcher(Integer.getInteger("chat.push.queueSize", MessageDispatcher.DEFAULT_QUEUE_CAPACITY),
+                                           this::reportBackgroundError);
+        displayNames = new DisplayNames(users);
+        service = new ChatService(this, users, chatRooms, dispatcher, displayNames, metrics);
+        
+        // 최근 스냅샷을 읽은 뒤 그 이후의 변경 기록만 다시 적용
+        String dataDir = System.getProperty("chat.data.dir", "chat-data");
+        if (!dataDir.equals("off")) {
+            dataDirectory = Paths.get(dataDir);
+        }
+        configureMessageStore();
+        if (dataDirectory != null) {
+            loadSnapshot();
+        }
+        
+        // 테스트용 기본 계정들 생성
+        createDefaultTestAccounts();
+        
+        if (dataDirectory != null) {
+            openMutationLog();
+        }
+        startCompactor();
+        registerGauges();
+        startMetricsWriter();
+    }
     
-    public User(String userId, String password, String nickname, String email, String phone) {
-        this.userId = userId;
-        this.password = password;
-        this.nickname = nickname;
-        this.email = email;
-        this.phone = phone;
-        this.friendList = new ArrayList<>();
-        this.blockedList = new ArrayList<>();
-        this.chatRooms = new HashMap<>();
+    // 접속 세션용 (ConsoleSessionServer). 모든 작업은 engine 의 service 를 거치고,
+    // 입력/출력과 로그인 상태만 따로 가진다.
+    ChatApplication(ChatApplication engine, InputStream in, PrintStream out, Executor pushExecutor) {
+        this.engine = engine;
+        this.service = engine.service;
+        this.scanner = new Scanner(in, StandardCharsets.UTF_8);
+        this.out = out;
+        this.pushExecutor = pushExecutor;
     }
     
-    // Getters and Setters
-    public String getUserId() { return userId; }
-    public String getPassword() { return password; }
-    public void setPassword(String password) { this.password = password; }
-    public String getNickname() { return nickname; }
-    public void setNickname(String nickname) { this.nickname = nickname; }
-    public String getEmail() { return email; }
-    public void setEmail(String email) { this.email = email; }
-    public String getPhone() { return phone; }
-    public void setPhone(String phone) { this.phone = phone; }
-    public List<String> getFriendList() { return friendList; }
-    public List<String> getBlockedList() { return blockedList; }
-    public Map<String, ChatRoom> getChatRooms() { return chatRooms; }
+    private void configureMessageStore() {
+        try {
+            Path directory = dataDirectory != null
+                ? dataDirectory.resolve("messages") : Files.createTempDirectory("chat-messages");
+            MessageStore.configure(directory);
+        } catch (IOException e) {
+            out.println("❌ 메시지 저장 디렉터리를 준비할 수 없습니다: " + e.getMessage());
+            System.exit(1);
+        }
+    }
     
-    // 친구 관련 메서드
-    public void addFriend(String friendId) {
-        if (!friendList.contains(friendId) && !blockedList.contains(friendId)) {
-            friendList.add(friendId);
+    private void loadSnapshot() {
+        try {
+            Path file = ChatSnapshot.findLatest(dataDirectory);
+            if (file == null) {
+                return;
+            }
+            ChatSnapshot snapshot = ChatSnapshot.restore(file, users, chatRooms);
+            roomIdCounter.set(snapshot.getRoomIdCounter());
+            lastSnapshotLsn = snapshot.getLsn();
+        } catch (IOException e) {
+            // 스냅샷 이전의 로그는 이미 지워졌을 수 있으므로 빈 상태로 이어가지 않는다
+            out.println("❌ 스냅샷을 읽을 수 없습니다: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+    
+    // chat.data.dir (기본 chat-data, "off" 면 저장 안 함), chat.durability (sync / batch / async, 기본 batch)
+    // chat.snapshot.interval: 스냅샷 사이의 변경 건수 (기본 50000, 0 이면 만들지 않음)
+    private void openMutationLog() {
+        MutationLog.Durability durability = MutationLog.Durability.valueOf(
+            System.getProperty("chat.durability", "batch").toUpperCase());
+        snapshotInterval = Long.getLong("chat.snapshot.interval", DEFAULT_SNAPSHOT_INTERVAL);
+        
+        try {
+            Path logDirectory = dataDirectory.resolve("log");
+            mutationLog = new MutationLog(logDirectory, durability, MutationLog.DEFAULT_SEGMENT_BYTES);
+            long restored = mutationLog.replay(lastSnapshotLsn, this::apply);
+            if (restored > 0) {
+                out.println("저장된 변경 " + restored + "건을 복구했습니다.");
+            }
+        } catch (IOException e) {
+            out.println("❌ 변경 로그를 열 수 없어 저장 없이 실행합니다: " + e.getMessage());
+            mutationLog = null;
+            return;
         }
+        snapshotWriter = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::closeMutationLog));
     }
     
-    public void removeFriend(String friendId) {
-        friendList.remove(friendId);
+    // chat.compaction.interval: 삭제된 메시지를 정리하는 주기 (초, 기본 60, 0 이면 하지 않음)
+    private void startCompactor() {
+        long interval = Long.getLong("chat.compaction.interval", MessageCompactor.DEFAULT_INTERVAL_SECONDS);
+        if (interval > 0) {
+            compactor = new MessageCompactor(chatRooms, this::reportBackgroundError);
+            compactor.start(interval);
+        }
     }
     
-    public void blockUser(String userId) {
-        if (!blockedList.contains(userId)) {
-            blockedList.add(userId);
-            friendList.remove(userId);
+    // 게이지는 내보낼 때만 읽는다 (메시지 수는 그때 방마다 더한다)
+    private void registerGauges() {
+        metrics.gauge("users", users::size);
+        metrics.gauge("rooms", chatRooms::size);
+        metrics.gauge("messages", () -> {
+            long count = 0;
+            for (ChatRoom room : chatRooms.values()) {
+                count += room.getMessages().size();
+            }
+            return count;
+        });
+        metrics.gauge("sessions.subscribed", dispatcher::getSubscriberCount);
+        metrics.gauge("push.published", dispatcher::getPublishedCount);
+        metrics.gauge("push.delivered", dispatcher::getDeliveredCount);
+        metrics.gauge("push.coalesced", dispatcher::getCoalescedCount);
+        metrics.gauge("push.dropped", dispatcher::getDroppedCount);
+        metrics.gauge("push.overflowed", dispatcher::getOverflowedCount);
+        if (compactor != null) {
+            metrics.gauge("compaction.passes", compactor::getPasses);
+            metrics.gauge("compaction.steps", compactor::getSteps);
+            metrics.gauge("compaction.reclaimed_bytes", compactor::getReclaimedBytes);
+        }
+        if (mutationLog != null) {
+            MutationLog log = mutationLog;
+            metrics.gauge("log.lsn", log::getLastLsn);
+            metrics.gauge("log.snapshot_lsn", () -> lastSnapshotLsn);
         }
     }
     
-    public void unblockUser(String userId) {
-        blockedList.remove(userId);
+    // chat.metrics.interval: 지표를 데이터 디렉터리의 metrics.txt 에 덮어쓰는 주기 (초, 기본 60, 0 이면 쓰지 않음)
+    private void startMetricsWriter() {
+        long interval = Long.getLong("chat.metrics.interval", DEFAULT_METRICS_INTERVAL_SECONDS);
+        if (dataDirectory == null || interval <= 0) {
+            return;
+        }
+        Path file = dataDirectory.resolve("metrics.txt");
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleAtFixedRate(() -> writeMetrics(file), interval, interval, TimeUnit.SECONDS);
     }
     
-    public boolean isFriend(String userId) {
-        return friendList.contains(userId);
+    // 백그라운드 작업(스냅샷 기록, 압축, 알림 분배)의 오류. 지표(errors.background)로 세고 엔진 콘솔에 한 줄 남긴다.
+    private void reportBackgroundError(String message) {
+        metrics.counter("errors.background").increment();
+        out.println("❌ " + message);
     }
     
-    public boolean isBlocked(String userId) {
-        return blockedList.contains(userId);
+    // 읽는 쪽이 쓰다 만 파일을 보지 않도록 임시 파일에 쓴 뒤 바꿔 넣는다
+    private void writeMetrics(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, metrics.text().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 다음 주기에 다시 쓴다
+        }
     }
-}
-
-// Message.java - 메시지 정보를 저장하는 클래스
-class Message {
-    private String messageId;
-    private String senderId;
-    private String content;
-    private Date timestamp;
-    private boolean isRead;
-    private boolean isDeleted;
-    private boolean isPinned;
-    private boolean isBookmarked;
-    private String replyToMessageId;
-    
-    public Message(String messageId, String senderId, String content) {
-        this.messageId = messageId;
-        this.senderId = senderId;
-        this.content = content;
-        this.timestamp = new Date();
-        this.isRead = false;
-        this.isDeleted = false;
-        this.isPinned = false;
-        this.isBookmarked = false;
-    }
-    
-    // Getters and Setters
-    public String getMessageId() { return messageId; }
-    public String getSenderId() { return senderId; }
-    public String getContent() { return content; }
-    public void setContent(String content) { this.content = content; }
-    public Date getTimestamp() { return timestamp; }
-    public boolean isRead() { return isRead; }
-    public void setRead(boolean read) { isRead = read; }
-    public boolean isDeleted() { return isDeleted; }
-    public void setDeleted(boolean deleted) { isDeleted = deleted; }
-    public boolean isPinned() { return isPinned; }
-    public void setPinned(boolean pinned) { isPinned = pinned; }
-    public boolean isBookmarked() { return isBookmarked; }
-    public void setBookmarked(boolean bookmarked) { isBookmarked = bookmarked; }
-    public String getReplyToMessageId() { return replyToMessageId; }
-    public void setReplyToMessageId(String replyToMessageId) { this.replyToMessageId = replyToMessageId; }
-}
-
-// ChatRoom.java - 채팅방 정보를 저장하는 클래스
-class ChatRoom {
-    private String roomId;
-    private String roomName;
-    private List<String> participants;
-    private List<Message> messages;
-    private boolean isPinned;
-    private Date lastMessageTime;
-    private boolean isGroupChat;
-    
-    public ChatRoom(String roomId, String roomName, boolean isGroupChat) {
-        this.roomId = roomId;
-        this.roomName = roomName;
-        this.isGroupChat = isGroupChat;
-        this.participants = new ArrayList<>();
-        this.messages = new ArrayList<>();
-        this.isPinned = false;
-        this.lastMessageTime = new Date();
-    }
-    
-    // Getters and Setters
-    public String getRoomId() { return roomId; }
-    public String getRoomName() { return roomName; }
-    public void setRoomName(String roomName) { this.roomName = roomName; }
-    public List<String> getParticipants() { return participants; }
-    public List<Message> getMessages() { return messages; }
-    public boolean isPinned() { return isPinned; }
-    public void setPinned(boolean pinned) { isPinned = pinned; }
-    public Date getLastMessageTime() { return lastMessageTime; }
-    public void setLastMessageTime(Date lastMessageTime) { this.lastMessageTime = lastMessageTime; }
-    public boolean isGroupChat() { return isGroupChat; }
-    
-    public void addParticipant(String userId) {
-        if (!participants.contains(userId)) {
-            participants.add(userId);
-        }
-    }
-    
-    public void removeParticipant(String userId) {
-        participants.remove(userId);
-    }
-    
-    public void addMessage(Message message) {
-        messages.add(message);
-        this.lastMessageTime = message.getTimestamp();
-    }
-    
-    public int getUnreadCount(String userId) {
-        int count = 0;
-        for (Message msg : messages) {
-            if (!msg.getSenderId().equals(userId) && !msg.isRead()) {
-                count++;
+    
+    private void closeMutationLog() {
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdown();
+            try {
+                snapshotWriter.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (mutationLog != null) {
+            try {
+                mutationLog.close();
+            } catch (IOException e) {
+                out.println("❌ 변경 로그를 닫는 중 오류가 발생했습니다: " + e.getMessage());
             }
         }
-        return count;
     }
-}
-
-// ChatApplication.java - 메인 애플리케이션 클래스
-public class ChatApplication {
-    private Map<String, User> users;
-    private Map<String, ChatRoom> chatRooms;
-    private User currentUser;
-    private Scanner scanner;
-    private int messageIdCounter;
-    private int roomIdCounter;
     
-    public ChatApplication() {
-        users = new HashMap<>();
-        chatRooms = new HashMap<>();
-        scanner = new Scanner(System.in);
-        messageIdCounter = 1;
-        roomIdCounter = 1;
-        
-        // 테스트용 기본 계정들 생성
-        createDefaultTestAccounts();
+    // 변경이 충분히 쌓였으면 스냅샷을 시작한다. 상태 복사는 여기서, 파일 기록은 백그라운드 스레드에서 한다.
+    private void maybeStartSnapshot() {
+        if (snapshotInterval <= 0 || snapshotInProgress.get()
+                || mutationLog.getLastLsn() - lastSnapshotLsn < snapshotInterval
+                || !snapshotInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        ChatSnapshot snapshot;
+        snapshotLock.writeLock().lock();
+        try {
+            // 세그먼트를 나눠 두면 스냅샷 완료 후 이전 세그먼트를 통째로 지울 수 있다
+            long lsn = mutationLog.rollSegment();
+            snapshot = ChatSnapshot.capture(lsn, users, chatRooms, roomIdCounter.get());
+        } catch (IOException e) {
+            out.println("❌ 스냅샷을 시작하지 못했습니다: " + e.getMessage());
+            snapshotInProgress.set(false);
+            return;
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        snapshotWriter.execute(() -> {
+            try {
+                Path file = snapshot.writeTo(dataDirectory);
+                ChatSnapshot.deleteOlderThan(dataDirectory, file);
+                mutationLog.deleteSegmentsThrough(snapshot.getLsn());
+                lastSnapshotLsn = snapshot.getLsn();
+            } catch (IOException e) {
+                reportBackgroundError("스냅샷을 저장하지 못했습니다: " + e.getMessage());
+            } finally {
+                snapshotInProgress.set(false);
+            }
+        });
+    }
+    
+    // 변경을 로그에 먼저 기록한 뒤 메모리 상태에 반영. 기록하지 못하면 상태를 바꾸지 않고 IllegalStateException 을 던진다.
+    // 같은 대상(방, 사용자)에 대한 변경은 대상을 잠가 로그 순서와 적용 순서를 맞추고, 대상이 다르면 동시에 진행한다.
+    // engine 에서만 부른다 (ChatService 가 부름).
+    void commit(Mutation mutation) {
+        synchronized (lockFor(mutation)) {
+            snapshotLock.readLock().lock();
+            try {
+                if (mutationLog != null) {
+                    try {
+                        mutationLog.append(mutation);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("변경 내용을 저장하지 못했습니다: " + e.getMessage(), e);
+                    }
+                }
+                apply(mutation);
+            } finally {
+                snapshotLock.readLock().unlock();
+            }
+        }
+        if (mutationLog != null) {
+            maybeStartSnapshot();
+        }
+    }
+    
+    private Object lockFor(Mutation m) {
+        switch (m.getType()) {
+            case Mutation.REGISTER_USER:
+                return users;
+            case Mutation.CREATE_ROOM:
+                return chatRooms;
+            case Mutation.ADD_FRIEND:
+            case Mutation.REMOVE_FRIEND:
+            case Mutation.BLOCK_USER:
+            case Mutation.UNBLOCK_USER:
+            case Mutation.SET_NICKNAME:
+            case Mutation.SET_PASSWORD:
+            case Mutation.SET_EMAIL:
+            case Mutation.SET_PHONE:
+                return users.get(m.getString(0));
+            default:
+                // 나머지는 모두 방에 대한 변경 (첫 문자열이 방 아이디)
+                return chatRooms.get(m.getString(0));
+        }
+    }
+    
+    String nextRoomId(String prefix) {
+        return prefix + roomIdCounter.getAndIncrement();
+    }
+    
+    // 변경 한 건을 메모리 상태에 반영. 로그 재적용에도 같은 경로를 쓰며, 이미 반영된 생성은 건너뛴다.
+    private void apply(Mutation m) {
+        switch (m.getType()) {
+            case Mutation.REGISTER_USER:
+                if (!users.containsKey(m.getString(0))) {
+                    users.add(new User(m.getString(0), m.getString(1), m.getString(2), m.getString(3), m.getString(4)));
+                }
+                break;
+            case Mutation.ADD_FRIEND: users.get(m.getString(0)).addFriend(m.getString(1)); break;
+            case Mutation.REMOVE_FRIEND: users.get(m.getString(0)).removeFriend(m.getString(1)); break;
+            case Mutation.BLOCK_USER: users.get(m.getString(0)).blockUser(m.getString(1)); break;
+            case Mutation.UNBLOCK_USER: users.get(m.getString(0)).unblockUser(m.getString(1)); break;
+            case Mutation.SET_NICKNAME:
+                users.get(m.getString(0)).setNickname(m.getString(1));
+                displayNames.nicknameChanged();
+                break;
+            case Mutation.SET_PASSWORD: users.get(m.getString(0)).setPassword(m.getString(1)); break;
+            case Mutation.SET_EMAIL: users.get(m.getString(0)).setEmail(m.getString(1)); break;
+            case Mutation.SET_PHONE: users.get(m.getString(0)).setPhone(m.getString(1)); break;
+            case Mutation.CREATE_ROOM: {
+                String roomId = m.getString(0);
+                if (!chatRooms.containsKey(roomId)) {
+                    chatRooms.put(roomId, new ChatRoom(roomId, m.getString(1), m.getFlag(0)));
+                    roomIdCounter.accumulateAndGet(idNumber(roomId) + 1, Math::max);
+                }
+                break;
+            }
+            case Mutation.JOIN_ROOM: {
+                ChatRoom room = chatRooms.get(m.getString(0));
+                room.addParticipant(m.getString(1));
+                users.get(m.getString(1)).addChatRoom(room);
+                break;
+            }
+            case Mutation.LEAVE_ROOM: {
+                ChatRoom room = chatRooms.get(m.getString(0));
+                room.removeParticipant(m.getString(1));
+                users.get(m.getString(1)).removeChatRoom(room);
+                break;
+            }
+            case Mutation.SET_ROOM_PINNED: chatRooms.get(m.getString(0)).setPinned(m.getFlag(0)); break;
+            case Mutation.MARK_READ: chatRooms.get(m.getString(0)).markReadUpTo(m.getString(1), m.getNumber(0)); break;
+            case Mutation.ADD_MESSAGE: {
+                ChatRoom room = chatRooms.get(m.getString(0));
+                if (m.getNumber(0) > room.getLastSeq()) {
+                    room.addMessage(m.getString(1), m.getString(2), m.getNumber(1), m.getNumber(2));
+                }
+                break;
+            }
+            case Mutation.ADD_MESSAGES: {
+                ChatRoom room = chatRooms.get(m.getString(0));
+                if (m.getNumber(0) > room.getLastSeq()) {
+                    room.addMessages(m.getString(1), m.getStrings(2), m.getNumber(1));
+                }
+                break;
+            }
+            case Mutation.SET_MESSAGE_PINNED: chatRooms.get(m.getString(0)).setMessagePinned(m.getNumber(0), m.getFlag(1)); break;
+            case Mutation.SET_MESSAGE_BOOKMARKED: chatRooms.get(m.getString(0)).setMessageBookmarked(m.getNumber(0), m.getFlag(1)); break;
+            case Mutation.DELETE_MESSAGE: {
+                chatRooms.get(m.getString(0)).deleteMessage(m.getNumber(0));
+                break;
+            }
+            default:
+                throw new IllegalStateException("알 수 없는 변경 종류: " + m.getType());
+        }
+    }
+    
+    // "room_12" 형태 아이디의 숫자 부분 (복구 후 아이디 카운터를 이어가기 위함)
+    private static int idNumber(String id) {
+        try {
+            return Integer.parseInt(id.substring(id.lastIndexOf('_') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
     
     private void createDefaultTestAccounts() {
+        // 스냅샷에서 복구했다면 기본 계정도 이미 들어 있다
+        if (users.containsKey("test1")) {
+            printDefaultTestAccounts();
+            return;
+        }
+        
         // 테스트용 기본 계정 3개 생성
         User test1 = new User("test1", "0000", "test1", "test1@example.com", "010-1111-1111");
         User test2 = new User("test2", "0000", "test2", "test2@example.com", "010-2222-2222");
         User test3 = new User("test3", "0000", "test3", "test3@example.com", "010-3333-3333");
         
-        users.put("test1", test1);
-        users.put("test2", test2);
-        users.put("test3", test3);
+        users.add(test1);
+        users.add(test2);
+        users.add(test3);
         
         // 테스트 계정들끼리 서로 친구 추가
         test1.addFriend("test2");
@@ -203,36 +430,54 @@ public class ChatApplication {
         test3.addFriend("test1");
         test3.addFriend("test2");
         
-        System.out.println("테스트용 계정이 생성되었습니다:");
-        System.out.println("- test1 / 0000 (test1)");
-        System.out.println("- test2 / 0000 (test2)");
-        System.out.println("- test3 / 0000 (test3)");
-        System.out.println();
+        printDefaultTestAccounts();
+    }
+    
+    private void printDefaultTestAccounts() {
+        out.println("테스트용 계정이 생성되었습니다:");
+        out.println("- test1 / 0000 (test1)");
+        out.println("- test2 / 0000 (test2)");
+        out.println("- test3 / 0000 (test3)");
+        out.println();
+    }
+    
+    // 콘솔 메뉴, 접속 세션, TCP 서버가 모두 같은 서비스 객체를 쓴다
+    ChatService getService() {
+        return service;
+    }
+    
+    // 운영 지표. ChatServer 의 METRICS 명령과 metrics.txt 가 이 객체의 text() 를 쓴다.
+    ChatMetrics getMetrics() {
+        return engine.metrics;
     }
     
     public void start() {
-        System.out.println("=== 채팅 애플리케이션에 오신 것을 환영합니다! ===");
+        out.println("=== 채팅 애플리케이션에 오신 것을 환영합니다! ===");
         
-        while (true) {
-            if (currentUser == null) {
-                showLoginMenu();
-            } else {
-                showMainMenu();
+        try {
+            while (running) {
+                if (currentUser == null) {
+                    showLoginMenu();
+                } else {
+                    showMainMenu();
+                }
             }
+        } finally {
+            unsubscribe();
         }
     }
     
     private void showLoginMenu() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("    로그인 메뉴    ");
-        System.out.println("-".repeat(50));
-        System.out.println("1. 로그인");
-        System.out.println("2. 회원가입");
-        System.out.println("3. 아이디 찾기");
-        System.out.println("4. 비밀번호 찾기");
-        System.out.println("5. 프로그램 종료");
-        System.out.println("-".repeat(50));
-        System.out.print("선택: ");
+        out.println("\n" + "=".repeat(50));
+        out.println("    로그인 메뉴    ");
+        out.println("-".repeat(50));
+        out.println("1. 로그인");
+        out.println("2. 회원가입");
+        out.println("3. 아이디 찾기");
+        out.println("4. 비밀번호 찾기");
+        out.println("5. 프로그램 종료");
+        out.println("-".repeat(50));
+        out.print("선택: ");
         
         try {
             int choice = scanner.nextInt();
@@ -244,29 +489,29 @@ public class ChatApplication {
                 case 3: findUserId(); break;
                 case 4: findPassword(); break;
                 case 5: 
-                    System.out.println("프로그램을 종료합니다.");
-                    System.exit(0);
+                    out.println("프로그램을 종료합니다.");
+                    running = false;
                     break;
                 default:
-                    System.out.println("잘못된 선택입니다.");
+                    out.println("잘못된 선택입니다.");
             }
         } catch (Exception e) {
-            System.out.println("❌ 숫자를 입력해주세요.");
+            out.println("❌ 숫자를 입력해주세요.");
             scanner.nextLine(); // 잘못된 입력 버퍼 비우기
         }
     }
     
     private void showMainMenu() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("    메인 메뉴    ");
-        System.out.println("현재 사용자: " + currentUser.getNickname() + " (" + currentUser.getUserId() + ")");
-        System.out.println("-".repeat(50));
-        System.out.println("1. 채팅");
-        System.out.println("2. 친구 관리");
-        System.out.println("3. 프로필 관리");
-        System.out.println("4. 로그아웃");
-        System.out.println("-".repeat(50));
-        System.out.print("선택: ");
+        out.println("\n" + "=".repeat(50));
+        out.println("    메인 메뉴    ");
+        out.println("현재 사용자: " + currentUser.getNickname() + " (" + currentUser.getUserId() + ")");
+        out.println("-".repeat(50));
+        out.println("1. 채팅");
+        out.println("2. 친구 관리");
+        out.println("3. 프로필 관리");
+        out.println("4. 로그아웃");
+        out.println("-".repeat(50));
+        out.print("선택: ");
         
         try {
             int choice = scanner.nextInt();
@@ -278,18 +523,18 @@ public class ChatApplication {
                 case 3: profileMenu(); break;
                 case 4: logout(); break;
                 default:
-                    System.out.println("잘못된 선택입니다.");
+                    out.println("잘못된 선택입니다.");
             }
         } catch (Exception e) {
-            System.out.println("❌ 숫자를 입력해주세요.");
+            out.println("❌ 숫자를 입력해주세요.");
             scanner.nextLine(); // 잘못된 입력 버퍼 비우기
         }
     }
     
     private void register() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("    회원가입     ");
-        System.out.println("-".repeat(50));
+        out.println("\n" + "=".repeat(50));
+        out.println("    회원가입     ");
+        out.println("-".repeat(50));
         
         String userId = "";
         String password = "";
@@ -297,155 +542,184 @@ public class ChatApplication {
         
         // 필수 항목: 아이디
         while (userId.trim().isEmpty()) {
-            System.out.print("아이디 (필수): ");
+            out.print("아이디 (필수): ");
             userId = scanner.nextLine().trim();
             
             if (userId.isEmpty()) {
-                System.out.println("❌ 아이디는 필수 입력 항목입니다.");
+                out.println("❌ 아이디는 필수 입력 항목입니다.");
                 continue;
             }
             
-            if (users.containsKey(userId)) {
-                System.out.println("❌ 이미 존재하는 아이디입니다.");
+            try {
+                service.checkUserId(userId);
+            } catch (IllegalArgumentException e) {
+                out.println("❌ " + e.getMessage());
                 userId = "";
             }
         }
         
         // 필수 항목: 비밀번호
         while (password.trim().isEmpty()) {
-            System.out.print("비밀번호 (필수): ");
+            out.print("비밀번호 (필수): ");
             password = scanner.nextLine().trim();
             
             if (password.isEmpty()) {
-                System.out.println("❌ 비밀번호는 필수 입력 항목입니다.");
+                out.println("❌ 비밀번호는 필수 입력 항목입니다.");
             }
         }
         
         // 필수 항목: 닉네임
         while (nickname.trim().isEmpty()) {
-            System.out.print("닉네임 (필수): ");
+            out.print("닉네임 (필수): ");
             nickname = scanner.nextLine().trim();
             
             if (nickname.isEmpty()) {
-                System.out.println("❌ 닉네임은 필수 입력 항목입니다.");
+                out.println("❌ 닉네임은 필수 입력 항목입니다.");
             }
         }
         
-        // 선택 항목: 이메일
-        System.out.print("이메일 (선택): ");
+        // 선택 항목: 이메일 (비워 두면 "이메일 없음")
+        out.print("이메일 (선택): ");
         String email = scanner.nextLine().trim();
-        if (email.isEmpty()) {
-            email = "이메일 없음";
-        }
         
-        // 선택 항목: 전화번호
-        System.out.print("전화번호 (선택): ");
+        // 선택 항목: 전화번호 (비워 두면 "전화번호 없음")
+        out.print("전화번호 (선택): ");
         String phone = scanner.nextLine().trim();
-        if (phone.isEmpty()) {
-            phone = "전화번호 없음";
-        }
-        
-        User newUser = new User(userId, password, nickname, email, phone);
-        
-        // 새 사용자에게 기본 테스트 계정들을 친구로 추가
-        addDefaultFriendsToNewUser(newUser);
         
-        users.put(userId, newUser);
-        
-        System.out.println("\n");
-        System.out.println("✅ 회원가입이 완료되었습니다!");
-        System.out.println("✅ 기본 친구 3명이 자동으로 추가되었습니다. (test1, test2, test3)");
-        System.out.println("-".repeat(50));
-    }
-    
-    private void addDefaultFriendsToNewUser(User newUser) {
-        // 테스트 계정이 아닌 경우에만 기본 친구 추가
-        if (!newUser.getUserId().startsWith("test")) {
-            // 테스트 계정들을 친구로 추가
-            newUser.addFriend("test1");
-            newUser.addFriend("test2");
-            newUser.addFriend("test3");
-            
-            // 테스트 계정들의 친구 목록에도 새 사용자 추가
-            if (users.containsKey("test1")) {
-                users.get("test1").addFriend(newUser.getUserId());
-            }
-            if (users.containsKey("test2")) {
-                users.get("test2").addFriend(newUser.getUserId());
-            }
-            if (users.containsKey("test3")) {
-                users.get("test3").addFriend(newUser.getUserId());
-            }
+        // 새 사용자에게 기본 테스트 계정들을 친구로 추가 (ChatService.register 안에서 처리)
+        try {
+            service.register(userId, password, nickname, email, phone);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // 입력을 받는 사이 다른 세션이 같은 아이디로 가입했거나 저장에 실패한 경우
+            out.println("❌ " + e.getMessage());
+            return;
         }
+        
+        out.println("\n");
+        out.println("✅ 회원가입이 완료되었습니다!");
+        out.println("✅ 기본 친구 3명이 자동으로 추가되었습니다. (test1, test2, test3)");
+        out.println("-".repeat(50));
     }
     
     private void login() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("    로그인    ");
-        System.out.println("-".repeat(50));
-        System.out.print("아이디: ");
+        out.println("\n" + "=".repeat(50));
+        out.println("    로그인    ");
+        out.println("-".repeat(50));
+        out.print("아이디: ");
         String userId = scanner.nextLine();
-        System.out.print("비밀번호: ");
+        out.print("비밀번호: ");
         String password = scanner.nextLine();
         
-        User user = users.get(userId);
-        if (user != null && user.getPassword().equals(password)) {
+        try {
+            User user = service.login(userId, password);
             currentUser = user;
-            System.out.println("\n로그인 성공! 환영합니다, " + user.getNickname() + "님!\n");
-        } else {
-            System.out.println("\n❌ 아이디 또는 비밀번호가 잘못되었습니다.");
+            subscribe(user);
+            out.println("\n로그인 성공! 환영합니다, " + user.getNickname() + "님!\n");
+        } catch (IllegalArgumentException e) {
+            out.println("\n❌ " + e.getMessage());
         }
     }
     
     private void findUserId() {
-        System.out.println("\n=== 아이디 찾기 ===");
-        System.out.print("이메일: ");
-        String email = scanner.nextLine();
+        out.println("\n=== 아이디 찾기 ===");
+        out.print("이메일 또는 전화번호: ");
+        String emailOrPhone = scanner.nextLine();
         
-        for (User user : users.values()) {
-            if (user.getEmail().equals(email)) {
-                System.out.println("찾은 아이디: " + user.getUserId());
-                return;
-            }
+        String found = service.findUserId(emailOrPhone);
+        if (found != null) {
+            out.println("찾은 아이디: " + found);
+            return;
         }
-        System.out.println("해당 이메일로 가입된 계정을 찾을 수 없습니다.");
+        out.println("해당 이메일 또는 전화번호로 가입된 계정을 찾을 수 없습니다.");
     }
     
     private void findPassword() {
-        System.out.println("\n=== 비밀번호 찾기 ===");
-        System.out.print("아이디: ");
+        out.println("\n=== 비밀번호 찾기 ===");
+        out.print("아이디: ");
         String userId = scanner.nextLine();
-        System.out.print("이메일: ");
+        out.print("이메일: ");
         String email = scanner.nextLine();
         
-        User user = users.get(userId);
-        if (user != null && user.getEmail().equals(email)) {
-            System.out.println("임시 비밀번호가 이메일로 전송되었습니다.");
-            System.out.println("현재 비밀번호: " + user.getPassword());
+        String password = service.findPassword(userId, email);
+        if (password != null) {
+            out.println("임시 비밀번호가 이메일로 전송되었습니다.");
+            out.println("현재 비밀번호: " + password);
         } else {
-            System.out.println("아이디 또는 이메일이 일치하지 않습니다.");
+            out.println("아이디 또는 이메일이 일치하지 않습니다.");
         }
     }
     
     private void logout() {
+        unsubscribe();
         currentUser = null;
-        System.out.println("로그아웃되었습니다.");
+        out.println("로그아웃되었습니다.");
+    }
+    
+    // 접속 세션은 로그인한 동안 새 메시지를 알림으로 받는다. 출력이 막혀 밀리면 방별 누락 수로 합쳐진다.
+    private void subscribe(User user) {
+        if (pushExecutor != null) {
+            subscription = service.getDispatcher().subscribe(user.getUserId(), MessageDispatcher.OverflowPolicy.COALESCE,
+                                                             this::schedulePush);
+        }
+    }
+    
+    // 이미 넣어 둔 출력 작업이 있으면 그 작업이 꺼낼 때 같이 가져가므로 더 넣지 않는다
+    private void schedulePush() {
+        if (!pushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            pushExecutor.execute(this::printPushedMessages);
+        } catch (RejectedExecutionException e) {
+            // 서버가 닫히는 중
+            pushScheduled.set(false);
+        }
+    }
+    
+    private void unsubscribe() {
+        MessageDispatcher.Subscription current = subscription;
+        if (current != null) {
+            subscription = null;
+            current.close();
+        }
+    }
+    
+    // 알림 실행기 스레드에서 불린다. 꺼내기와 출력을 out 을 잠근 채 해야 알림이 순서대로 찍힌다.
+    private void printPushedMessages() {
+        // 꺼내기 전에 풀어야 그 사이에 온 알림이 다음 작업으로 이어진다
+        pushScheduled.set(false);
+        MessageDispatcher.Subscription current = subscription;
+        if (current == null) {
+            return;
+        }
+        synchronized (out) {
+            for (MessageDispatcher.Delivery delivery : current.drain()) {
+                String roomName = service.roomDisplayName(delivery.getRoomId(), current.getUserId());
+                if (delivery.isGap()) {
+                    out.println("\n📩 [" + roomName + "] 새 메시지 " + delivery.getMissedCount() + "개가 더 있습니다.");
+                } else {
+                    String senderName = service.senderName(delivery.getSenderId());
+                    out.println("\n📩 [" + roomName + "] " + senderName + ": " + delivery.getContent());
+                }
+            }
+            out.flush();
+        }
     }
     
     private void friendMenu() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("     친구 관리     ");
-        System.out.println("-".repeat(50));
-        System.out.println("1. 친구 목록 보기");
-        System.out.println("2. 친구 추가");
-        System.out.println("3. 친구 삭제");
-        System.out.println("4. 사용자 차단");
-        System.out.println("5. 차단 해제");
-        System.out.println("6. 차단 목록 보기");
-        System.out.println("7. 친구 검색");
-        System.out.println("8. 메인 메뉴로");
-        System.out.println("-".repeat(30));
-        System.out.print("선택: ");
+        out.println("\n" + "=".repeat(50));
+        out.println("     친구 관리     ");
+        out.println("-".repeat(50));
+        out.println("1. 친구 목록 보기");
+        out.println("2. 친구 추가");
+        out.println("3. 친구 삭제");
+        out.println("4. 사용자 차단");
+        out.println("5. 차단 해제");
+        out.println("6. 차단 목록 보기");
+        out.println("7. 친구 검색");
+        out.println("8. 메인 메뉴로");
+        out.println("-".repeat(30));
+        out.print("선택: ");
         
         int choice = scanner.nextInt();
         scanner.nextLine();
@@ -460,139 +734,111 @@ public class ChatApplication {
             case 7: searchFriend(); break;
             case 8: return;
             default:
-                System.out.println("잘못된 선택입니다.");
+                out.println("잘못된 선택입니다.");
         }
     }
     
+    // 친구/프로필 메뉴는 안내를 ❌ 없이 보여 준다. 저장 실패는 어느 메뉴에서든 ❌ 를 붙인다.
+    private void printFailure(RuntimeException e) {
+        out.println(e instanceof IllegalStateException ? "❌ " + e.getMessage() : e.getMessage());
+    }
+    
     private void showFriendList() {
-        System.out.println("\n=== 친구 목록 ===");
-        List<String> friends = currentUser.getFriendList();
+        out.println("\n=== 친구 목록 ===");
+        List<User> friends = service.listFriends(currentUser.getUserId());
         if (friends.isEmpty()) {
-            System.out.println("친구가 없습니다.");
+            out.println("친구가 없습니다.");
         } else {
-            for (String friendId : friends) {
-                User friend = users.get(friendId);
-                if (friend != null) {
-                    System.out.println("- " + friend.getNickname() + " (" + friendId + ")");
-                }
+            for (User friend : friends) {
+                out.println("- " + friend.getNickname() + " (" + friend.getUserId() + ")");
             }
         }
     }
     
     private void addFriend() {
-        System.out.print("추가할 친구의 아이디: ");
+        out.print("추가할 친구의 아이디: ");
         String friendId = scanner.nextLine();
         
-        if (friendId.equals(currentUser.getUserId())) {
-            System.out.println("자신을 친구로 추가할 수 없습니다.");
-            return;
-        }
-        
-        if (!users.containsKey(friendId)) {
-            System.out.println("존재하지 않는 사용자입니다.");
-            return;
-        }
-        
-        if (currentUser.isFriend(friendId)) {
-            System.out.println("이미 친구입니다.");
-            return;
-        }
-        
-        if (currentUser.isBlocked(friendId)) {
-            System.out.println("차단된 사용자입니다. 차단을 해제한 후 추가해주세요.");
-            return;
+        try {
+            service.addFriend(currentUser.getUserId(), friendId);
+            out.println("친구가 추가되었습니다!");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printFailure(e);
         }
-        
-        currentUser.addFriend(friendId);
-        System.out.println("친구가 추가되었습니다!");
     }
     
     private void removeFriend() {
-        System.out.print("삭제할 친구의 아이디: ");
+        out.print("삭제할 친구의 아이디: ");
         String friendId = scanner.nextLine();
         
-        if (currentUser.isFriend(friendId)) {
-            currentUser.removeFriend(friendId);
-            System.out.println("친구가 삭제되었습니다.");
-        } else {
-            System.out.println("친구 목록에 없는 사용자입니다.");
+        try {
+            service.removeFriend(currentUser.getUserId(), friendId);
+            out.println("친구가 삭제되었습니다.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printFailure(e);
         }
     }
     
     private void blockUser() {
-        System.out.print("차단할 사용자의 아이디: ");
+        out.print("차단할 사용자의 아이디: ");
         String userId = scanner.nextLine();
         
-        if (!users.containsKey(userId)) {
-            System.out.println("존재하지 않는 사용자입니다.");
-            return;
-        }
-        
-        if (userId.equals(currentUser.getUserId())) {
-            System.out.println("자신을 차단할 수 없습니다.");
-            return;
+        try {
+            service.blockUser(currentUser.getUserId(), userId);
+            out.println("사용자가 차단되었습니다.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printFailure(e);
         }
-        
-        currentUser.blockUser(userId);
-        System.out.println("사용자가 차단되었습니다.");
     }
     
     private void unblockUser() {
-        System.out.print("차단 해제할 사용자의 아이디: ");
+        out.print("차단 해제할 사용자의 아이디: ");
         String userId = scanner.nextLine();
         
-        if (currentUser.isBlocked(userId)) {
-            currentUser.unblockUser(userId);
-            System.out.println("차단이 해제되었습니다.");
-        } else {
-            System.out.println("차단 목록에 없는 사용자입니다.");
+        try {
+            service.unblockUser(currentUser.getUserId(), userId);
+            out.println("차단이 해제되었습니다.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printFailure(e);
         }
     }
     
     private void showBlockedList() {
-        System.out.println("\n=== 차단 목록 ===");
-        List<String> blocked = currentUser.getBlockedList();
+        out.println("\n=== 차단 목록 ===");
+        List<User> blocked = service.listBlocked(currentUser.getUserId());
         if (blocked.isEmpty()) {
-            System.out.println("차단된 사용자가 없습니다.");
+            out.println("차단된 사용자가 없습니다.");
         } else {
-            for (String userId : blocked) {
-                User user = users.get(userId);
-                if (user != null) {
-                    System.out.println("- " + user.getNickname() + " (" + userId + ")");
-                }
+            for (User user : blocked) {
+                out.println("- " + user.getNickname() + " (" + user.getUserId() + ")");
             }
         }
     }
     
     private void searchFriend() {
-        System.out.print("검색할 닉네임 또는 아이디: ");
-        String keyword = scanner.nextLine().toLowerCase();
-        
-        System.out.println("\n=== 검색 결과 ===");
-        boolean found = false;
-        for (User user : users.values()) {
-            if (!user.getUserId().equals(currentUser.getUserId()) &&
-                (user.getNickname().toLowerCase().contains(keyword) || 
-                 user.getUserId().toLowerCase().contains(keyword))) {
-                System.out.println("- " + user.getNickname() + " (" + user.getUserId() + ")");
-                found = true;
-            }
+        out.print("검색할 닉네임 또는 아이디: ");
+        String keyword = scanner.nextLine();
+        
+        out.println("\n=== 검색 결과 ===");
+        List<User> found = service.searchUsers(currentUser.getUserId(), keyword);
+        for (User user : found) {
+            out.println("- " + user.getNickname() + " (" + user.getUserId() + ")");
         }
         
-        if (!found) {
-            System.out.println("검색 결과가 없습니다.");
+        if (found.isEmpty()) {
+            out.println("검색 결과가 없습니다.");
         }
     }
     
     private void profileMenu() {
-        System.out.println("\n=== 프로필 관리 ===");
-        System.out.println("1. 프로필 보기");
-        System.out.println("2. 닉네임 변경");
-        System.out.println("3. 비밀번호 변경");
-        System.out.println("4. 이메일 변경");
-        System.out.println("5. 전화번호 변경");
-        System.out.println("6. 메인 메뉴로");
-        System.out.print("선택: ");
+        out.println("\n=== 프로필 관리 ===");
+        out.println("1. 프로필 보기");
+        out.println("2. 닉네임 변경");
+        out.println("3. 비밀번호 변경");
+        out.println("4. 이메일 변경");
+        out.println("5. 전화번호 변경");
+        out.println("6. 메인 메뉴로");
+        out.print("선택: ");
         
         int choice = scanner.nextInt();
         scanner.nextLine();
@@ -605,70 +851,85 @@ public class ChatApplication {
             case 5: changePhone(); break;
             case 6: return;
             default:
-                System.out.println("잘못된 선택입니다.");
+                out.println("잘못된 선택입니다.");
         }
     }
     
     private void showProfile() {
-        System.out.println("\n=== 내 프로필 ===");
-        System.out.println("아이디: " + currentUser.getUserId());
-        System.out.println("닉네임: " + currentUser.getNickname());
-        System.out.println("이메일: " + currentUser.getEmail());
-        System.out.println("전화번호: " + currentUser.getPhone());
-        System.out.println("친구 수: " + currentUser.getFriendList().size());
+        out.println("\n=== 내 프로필 ===");
+        out.println("아이디: " + currentUser.getUserId());
+        out.println("닉네임: " + currentUser.getNickname());
+        out.println("이메일: " + currentUser.getEmail());
+        out.println("전화번호: " + currentUser.getPhone());
+        out.println("친구 수: " + currentUser.getFriendCount());
     }
     
     private void changeNickname() {
-        System.out.print("새 닉네임: ");
+        out.print("새 닉네임: ");
         String newNickname = scanner.nextLine();
-        currentUser.setNickname(newNickname);
-        System.out.println("닉네임이 변경되었습니다.");
+        try {
+            service.changeNickname(currentUser.getUserId(), newNickname);
+            out.println("닉네임이 변경되었습니다.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printFailure(e);
+        }
     }
     
     private void changePassword() {
-        System.out.print("현재 비밀번호: ");
+        out.print("현재 비밀번호: ");
         String currentPassword = scanner.nextLine();
         
-        if (!currentUser.getPassword().equals(currentPassword)) {
-            System.out.println("현재 비밀번호가 일치하지 않습니다.");
-            return;
+        try {
+            // 새 비밀번호를 묻기 전에 먼저 확인한다
+            service.checkPassword(currentUser.getUserId(), currentPassword);
+            
+            out.print("새 비밀번호: ");
+            String newPassword = scanner.nextLine();
+            service.changePassword(currentUser.getUserId(), currentPassword, newPassword);
+            out.println("비밀번호가 변경되었습니다.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printFailure(e);
         }
-        
-        System.out.print("새 비밀번호: ");
-        String newPassword = scanner.nextLine();
-        currentUser.setPassword(newPassword);
-        System.out.println("비밀번호가 변경되었습니다.");
     }
     
     private void changeEmail() {
-        System.out.print("새 이메일: ");
+        out.print("새 이메일: ");
         String newEmail = scanner.nextLine();
-        currentUser.setEmail(newEmail);
-        System.out.println("이메일이 변경되었습니다.");
+        try {
+            service.changeEmail(currentUser.getUserId(), newEmail);
+            out.println("이메일이 변경되었습니다.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printFailure(e);
+        }
     }
     
     private void changePhone() {
-        System.out.print("새 전화번호: ");
+        out.print("새 전화번호: ");
         String newPhone = scanner.nextLine();
-        currentUser.setPhone(newPhone);
-        System.out.println("전화번호가 변경되었습니다.");
+        try {
+            service.changePhone(currentUser.getUserId(), newPhone);
+            out.println("전화번호가 변경되었습니다.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printFailure(e);
+        }
     }
     
     private void chatMenu() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("    채팅     ");
-        System.out.println("-".repeat(50));
-        System.out.println("1. 채팅방 목록 보기");
-        System.out.println("2. 새 채팅 시작");
-        System.out.println("3. 그룹 채팅방 생성");
-        System.out.println("4. 랜덤 채팅");
-        System.out.println("5. 채팅방 정렬 (최근순)");
-        System.out.println("6. 채팅방 정렬 (안읽은순)");
-        System.out.println("7. 채팅방 고정/해제");
-        System.out.println("8. 채팅방 나가기");
-        System.out.println("9. 메인 메뉴로");
-        System.out.println("-".repeat(30));
-        System.out.print("선택: ");
+        out.println("\n" + "=".repeat(50));
+        out.println("    채팅     ");
+        out.println("-".repeat(50));
+        out.println("1. 채팅방 목록 보기");
+        out.println("2. 새 채팅 시작");
+        out.println("3. 그룹 채팅방 생성");
+        out.println("4. 랜덤 채팅");
+        out.println("5. 채팅방 정렬 (최근순)");
+        out.println("6. 채팅방 정렬 (안읽은순)");
+        out.println("7. 채팅방 고정/해제");
+        out.println("8. 채팅방 나가기");
+        out.println("9. 전체 메시지 검색");
+        out.println("10. 메인 메뉴로");
+        out.println("-".repeat(30));
+        out.print("선택: ");
         
         try {
             int choice = scanner.nextInt();
@@ -683,60 +944,45 @@ public class ChatApplication {
                 case 6: sortChatRoomsByUnread(); break;
                 case 7: toggleChatRoomPin(); break;
                 case 8: leaveChatRoom(); break;
-                case 9: return;
+                case 9: searchAllChatRooms(); break;
+                case 10: return;
                 default:
-                    System.out.println("잘못된 선택입니다.");
+                    out.println("잘못된 선택입니다.");
             }
         } catch (Exception e) {
-            System.out.println("❌ 숫자를 입력해주세요.");
+            out.println("❌ 숫자를 입력해주세요.");
             scanner.nextLine(); // 잘못된 입력 버퍼 비우기
         }
     }
     
+    // 고정된 방 먼저, 최근 메시지 순으로 사용자의 모든 방
+    private List<ChatService.RoomSummary> allRooms() {
+        return service.listRooms(currentUser.getUserId(), 0, Integer.MAX_VALUE).getItems();
+    }
     
     private void showChatRoomList() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("    채팅방 목록    ");
-        System.out.println("-".repeat(50));
-        Map<String, ChatRoom> userChatRooms = currentUser.getChatRooms();
+        out.println("\n" + "=".repeat(50));
+        out.println("    채팅방 목록    ");
+        out.println("-".repeat(50));
+        List<ChatService.RoomSummary> rooms = allRooms();
         
-        if (userChatRooms.isEmpty()) {
-            System.out.println("📭 채팅방이 없습니다.\n");
+        if (rooms.isEmpty()) {
+            out.println("📭 채팅방이 없습니다.\n");
             return;
         }
         
-        List<String> friendNames = new ArrayList<>();
-        for (Map.Entry<String, ChatRoom> entry : userChatRooms.entrySet()) {
-            ChatRoom room = entry.getValue();
-            int unreadCount = room.getUnreadCount(currentUser.getUserId());
+        for (int i = 0; i < rooms.size(); i++) {
+            ChatService.RoomSummary room = rooms.get(i);
             String pinStatus = room.isPinned() ? "📌 " : "";
-            String unreadStatus = unreadCount > 0 ? " (" + unreadCount + "개 안읽음)" : "";
-            
-            // 친구 이름 추출 (그룹채팅이 아닌 경우)
-            String displayName = "";
-            if (!room.isGroupChat()) {
-                // 1:1 채팅방에서 상대방 찾기
-                for (String participantId : room.getParticipants()) {
-                    if (!participantId.equals(currentUser.getUserId())) {
-                        User friend = users.get(participantId);
-                        if (friend != null) {
-                            displayName = friend.getNickname();
-                            break;
-                        }
-                    }
-                }
-            } else {
-                displayName = room.getRoomName();
-            }
+            String unreadStatus = room.getUnreadCount() > 0 ? " (" + room.getUnreadCount() + "개 안읽음)" : "";
             
-            friendNames.add(displayName);
-            System.out.printf("[%d] %s%s%s\n", 
-                friendNames.size(), pinStatus, displayName, unreadStatus);
-            System.out.println("    💬 최근: " + room.getLastMessageTime());
+            out.printf("[%d] %s%s%s\n",
+                i + 1, pinStatus, room.getDisplayName(), unreadStatus);
+            out.println("    💬 최근: " + room.getLastMessageTime());
         }
         
-        System.out.println("=".repeat(50));
-        System.out.print("입장할 채팅방 번호 (취소: 0): ");
+        out.println("=".repeat(50));
+        out.print("입장할 채팅방 번호 (취소: 0): ");
         int choice = scanner.nextInt();
         scanner.nextLine();
         
@@ -744,94 +990,141 @@ public class ChatApplication {
             return;
         }
         
-        if (choice > 0 && choice <= friendNames.size()) {
-            String selectedFriendName = friendNames.get(choice - 1);
-            
-            // 선택된 친구 이름으로 채팅방 찾기
-            for (Map.Entry<String, ChatRoom> entry : userChatRooms.entrySet()) {
-                ChatRoom room = entry.getValue();
-                
-                if (!room.isGroupChat()) {
-                    // 1:1 채팅방에서 상대방 찾기
-                    for (String participantId : room.getParticipants()) {
-                        if (!participantId.equals(currentUser.getUserId())) {
-                            User friend = users.get(participantId);
-                            if (friend != null && friend.getNickname().equals(selectedFriendName)) {
-                                enterChatRoomByRoom(room, selectedFriendName);
-                                return;
-                            }
-                        }
-                    }
-                } else if (room.getRoomName().equals(selectedFriendName)) {
-                    enterChatRoomByRoom(room, selectedFriendName);
-                    return;
-                }
-            }
+        // 보여 준 목록의 방으로 바로 들어간다
+        if (choice > 0 && choice <= rooms.size()) {
+            ChatService.RoomSummary room = rooms.get(choice - 1);
+            enterChatRoom(room.getRoomId(), room.getDisplayName());
         } else {
-            System.out.println("❌ 잘못된 번호입니다.");
+            out.println("❌ 잘못된 번호입니다.");
         }
     }
     
-    private void enterChatRoomByRoom(ChatRoom room, String displayName) {
+    private void enterChatRoom(String roomId, String displayName) {
+        String userId = currentUser.getUserId();
+        
         // 메시지를 읽음 처리
-        for (Message msg : room.getMessages()) {
-            if (!msg.getSenderId().equals(currentUser.getUserId())) {
-                msg.setRead(true);
-            }
+        try {
+            service.markRead(roomId, userId, Long.MAX_VALUE);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            out.println("❌ " + e.getMessage());
         }
         
+        // 보고 있는 페이지의 첫 메시지 순번 (0 이면 최신 페이지를 따라간다)
+        long pageStart = 0;
         while (true) {
-            System.out.println("\n" + "═".repeat(60));
-            System.out.println("💬 채팅방: " + displayName);
-            System.out.println("═".repeat(60));
-            showMessages(room);
+            List<Message> page;
+            List<Message> pinned;
+            try {
+                page = pageStart == 0
+                    ? service.messagesBefore(roomId, userId, Long.MAX_VALUE, MESSAGE_PAGE_SIZE)
+                    : service.messagesAfter(roomId, userId, pageStart - 1, MESSAGE_PAGE_SIZE);
+                pinned = service.pinnedMessages(roomId, userId);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // 다른 세션에서 방을 나갔으면 목록으로 돌아간다
+                out.println("❌ " + e.getMessage());
+                return;
+            }
             
-            System.out.println("─".repeat(60));
-            System.out.println("1. 메시지 전송    2. 메시지 검색    3. 메시지 고정/해제");
-            System.out.println("4. 메시지 북마크  5. 메시지 삭제    6. 메시지 답장");
-            System.out.println("7. 채팅방 나가기");
-            System.out.println("─".repeat(60));
-            System.out.print("선택: ");
+            out.println("\n" + "═".repeat(60));
+            out.println("💬 채팅방: " + displayName);
+            out.println("═".repeat(60));
+            showMessages(roomId, pinned, page);
             
-            int choice = scanner.nextInt();
-            scanner.nextLine();
+            out.println("─".repeat(60));
+            out.println("1. 메시지 전송    2. 메시지 검색    3. 메시지 고정/해제");
+            out.println("4. 메시지 북마크  5. 메시지 삭제    6. 메시지 답장");
+            out.println("7. 채팅방 나가기  8. 이전 메시지    9. 다음 메시지");
+            out.println("10. 고정 메시지로 이동");
+            out.println("─".repeat(60));
+            out.print("선택: ");
             
-            switch (choice) {
-                case 1: sendMessage(room); break;
-                case 2: searchMessages(room); break;
-                case 3: toggleMessagePin(room); break;
-                case 4: bookmarkMessage(room); break;
-                case 5: deleteMessage(room); break;
-                case 6: replyToMessage(room); break;
-                case 7: return;
-                default:
-                    System.out.println("❌ 잘못된 선택입니다.");
+            try {
+                int choice = scanner.nextInt();
+                scanner.nextLine();
+                
+                switch (choice) {
+                    case 1: sendMessage(roomId); pageStart = 0; break;
+                    case 2: searchMessages(roomId); break;
+                    case 3: toggleMessagePin(roomId); break;
+                    case 4: bookmarkMessage(roomId); break;
+                    case 5: deleteMessage(roomId); break;
+                    case 6: replyToMessage(roomId); pageStart = 0; break;
+                    case 7: return;
+                    case 8: pageStart = previousPageStart(roomId, page, pageStart); break;
+                    case 9: pageStart = nextPageStart(roomId, page, pageStart); break;
+                    case 10: pageStart = pinnedPageStart(roomId, pinned, pageStart); break;
+                    default:
+                        out.println("❌ 잘못된 선택입니다.");
+                }
+            } catch (InputMismatchException e) {
+                out.println("❌ 숫자를 입력해주세요.");
+                scanner.nextLine(); // 잘못된 입력 버퍼 비우기
+            }
+        }
+    }
+    
+    private long previousPageStart(String roomId, List<Message> page, long pageStart) {
+        List<Message> previous = page.isEmpty()
+            ? Collections.emptyList()
+            : service.messagesBefore(roomId, currentUser.getUserId(), page.get(0).getSeq(), MESSAGE_PAGE_SIZE);
+        if (previous.isEmpty()) {
+            out.println("❌ 가장 처음 메시지입니다.");
+            return pageStart;
+        }
+        return previous.get(0).getSeq();
+    }
+    
+    // 다음 페이지가 마지막 메시지까지 닿으면 최신 페이지로 돌아간다
+    private long nextPageStart(String roomId, List<Message> page, long pageStart) {
+        if (pageStart == 0) {
+            out.println("❌ 가장 최근 메시지입니다.");
+            return 0;
+        }
+        long last = page.isEmpty() ? pageStart - 1 : page.get(page.size() - 1).getSeq();
+        List<Message> next = service.messagesAfter(roomId, currentUser.getUserId(), last, MESSAGE_PAGE_SIZE + 1);
+        return next.size() <= MESSAGE_PAGE_SIZE ? 0 : next.get(0).getSeq();
+    }
+    
+    // 고정 메시지 목록의 번호를 골라 그 메시지부터 보여 준다
+    private long pinnedPageStart(String roomId, List<Message> pinned, long pageStart) {
+        if (pinned.isEmpty()) {
+            out.println("❌ 고정된 메시지가 없습니다.");
+            return pageStart;
+        }
+        out.print("📌 이동할 고정 메시지 번호: ");
+        String input = scanner.nextLine();
+        try {
+            Message message = service.getMessage(roomId, currentUser.getUserId(), Long.parseLong(input));
+            if (message != null && message.isPinned() && !message.isDeleted()) {
+                return message.getSeq();
             }
+        } catch (NumberFormatException e) {
+            // 아래에서 안내
         }
+        out.println("❌ 잘못된 메시지 번호입니다.");
+        return pageStart;
     }
     
     private void startNewChat() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("    새 채팅 시작     ");
-        System.out.println("-".repeat(50));
+        out.println("\n" + "=".repeat(50));
+        out.println("    새 채팅 시작     ");
+        out.println("-".repeat(50));
         
         // 친구 목록 표시
-        List<String> friends = currentUser.getFriendList();
+        List<User> friends = service.listFriends(currentUser.getUserId());
         if (friends.isEmpty()) {
-            System.out.println("❌ 친구가 없습니다. 먼저 친구를 추가해주세요.");
+            out.println("❌ 친구가 없습니다. 먼저 친구를 추가해주세요.");
             return;
         }
         
-        System.out.println("📋 친구 목록:");
+        out.println("📋 친구 목록:");
         for (int i = 0; i < friends.size(); i++) {
-            User friend = users.get(friends.get(i));
-            if (friend != null) {
-                System.out.printf("[%d] %s (%s)\n", i + 1, friend.getNickname(), friend.getUserId());
-            }
+            User friend = friends.get(i);
+            out.printf("[%d] %s (%s)\n", i + 1, friend.getNickname(), friend.getUserId());
         }
         
-        System.out.println("-".repeat(30));
-        System.out.print("채팅할 친구 번호 (취소: 0): ");
+        out.println("-".repeat(30));
+        out.print("채팅할 친구 번호 (취소: 0): ");
         int choice = scanner.nextInt();
         scanner.nextLine();
         
@@ -840,216 +1133,113 @@ public class ChatApplication {
         }
         
         if (choice < 1 || choice > friends.size()) {
-            System.out.println("❌ 잘못된 번호입니다.");
-            return;
-        }
-        
-        String friendId = friends.get(choice - 1);
-        User selectedFriend = users.get(friendId);
-        
-        if (selectedFriend == null) {
-            System.out.println("❌ 존재하지 않는 사용자입니다.");
+            out.println("❌ 잘못된 번호입니다.");
             return;
         }
         
-        if (currentUser.isBlocked(friendId)) {
-            System.out.println("❌ 차단된 사용자입니다.");
-            return;
-        }
+        User selectedFriend = friends.get(choice - 1);
         
         // 기존 채팅방이 있는지 확인
-        ChatRoom existingRoom = findExistingChatRoom(friendId);
+        ChatService.RoomSummary existingRoom = service.findDirectRoom(currentUser.getUserId(), selectedFriend.getUserId());
         if (existingRoom != null) {
-            System.out.println("✅ 기존 채팅방으로 입장합니다: " + selectedFriend.getNickname());
-            enterChatRoomByRoom(existingRoom, selectedFriend.getNickname());
+            out.println("✅ 기존 채팅방으로 입장합니다: " + selectedFriend.getNickname());
+            enterChatRoom(existingRoom.getRoomId(), selectedFriend.getNickname());
             return;
         }
         
-        // 새 채팅방 생성
-        String roomId = "room_" + roomIdCounter++;
-        ChatRoom chatRoom = new ChatRoom(roomId, selectedFriend.getNickname(), false);
-        chatRoom.addParticipant(currentUser.getUserId());
-        chatRoom.addParticipant(friendId);
-        
-        chatRooms.put(roomId, chatRoom);
-        currentUser.getChatRooms().put(selectedFriend.getNickname(), chatRoom);
-        
-        // 상대방의 채팅방 목록에도 추가
-        selectedFriend.getChatRooms().put(currentUser.getNickname(), chatRoom);
-        
-        System.out.println("✅ 새 채팅방이 생성되었습니다: " + selectedFriend.getNickname());
-        enterChatRoomByRoom(chatRoom, selectedFriend.getNickname());
-    }
-    
-    private ChatRoom findExistingChatRoom(String friendId) {
-        for (ChatRoom room : currentUser.getChatRooms().values()) {
-            if (!room.isGroupChat() && room.getParticipants().contains(friendId)) {
-                return room;
-            }
+        // 새 채팅방 생성 (상대방의 채팅방 목록에도 추가). 그사이 상대가 먼저 방을 열었다면 그 방을 쓴다.
+        ChatService.RoomSummary chatRoom;
+        try {
+            chatRoom = service.openDirectRoom(currentUser.getUserId(), selectedFriend.getUserId());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            out.println("❌ " + e.getMessage());
+            return;
         }
-        return null;
+        
+        out.println("✅ 새 채팅방이 생성되었습니다: " + selectedFriend.getNickname());
+        enterChatRoom(chatRoom.getRoomId(), selectedFriend.getNickname());
     }
     
     private void createGroupChat() {
-        System.out.print("그룹 채팅방 이름: ");
+        out.print("그룹 채팅방 이름: ");
         String roomName = scanner.nextLine();
         
-        String roomId = "group_" + roomIdCounter++;
-        ChatRoom chatRoom = new ChatRoom(roomId, roomName, true);
-        chatRoom.addParticipant(currentUser.getUserId());
+        String roomId;
+        try {
+            roomId = service.createGroupRoom(currentUser.getUserId(), roomName).getRoomId();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            out.println("❌ " + e.getMessage());
+            return;
+        }
         
-        System.out.println("초대할 친구들의 아이디를 입력하세요 (완료: enter):");
+        out.println("초대할 친구들의 아이디를 입력하세요 (완료: enter):");
         while (true) {
-            System.out.print("친구 아이디: ");
+            out.print("친구 아이디: ");
             String friendId = scanner.nextLine();
             
             if (friendId.isEmpty()) break;
             
-            if (users.containsKey(friendId) && currentUser.isFriend(friendId)) {
-                chatRoom.addParticipant(friendId);
-                users.get(friendId).getChatRooms().put(roomName, chatRoom);
-                System.out.println(friendId + "가 초대되었습니다.");
-            } else {
-                System.out.println("존재하지 않거나 친구가 아닌 사용자입니다.");
+            try {
+                service.inviteToRoom(roomId, currentUser.getUserId(), friendId);
+                out.println(friendId + "가 초대되었습니다.");
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                printFailure(e);
             }
         }
         
-        chatRooms.put(roomId, chatRoom);
-        currentUser.getChatRooms().put(roomName, chatRoom);
-        
-        System.out.println("그룹 채팅방이 생성되었습니다!");
+        out.println("그룹 채팅방이 생성되었습니다!");
     }
     
     private void randomChat() {
-        List<String> availableUsers = new ArrayList<>();
-        for (String userId : users.keySet()) {
-            if (!userId.equals(currentUser.getUserId()) && 
-                !currentUser.isBlocked(userId)) {
-                availableUsers.add(userId);
-            }
-        }
-        
-        if (availableUsers.isEmpty()) {
-            System.out.println("랜덤 채팅할 사용자가 없습니다.");
-            return;
-        }
-        
-        Random random = new Random();
-        String randomUserId = availableUsers.get(random.nextInt(availableUsers.size()));
-        
-        System.out.println("랜덤 매칭: " + users.get(randomUserId).getNickname());
-        
-        String roomId = "random_" + roomIdCounter++;
-        String roomName = "랜덤채팅_" + users.get(randomUserId).getNickname();
-        
-        ChatRoom chatRoom = new ChatRoom(roomId, roomName, false);
-        chatRoom.addParticipant(currentUser.getUserId());
-        chatRoom.addParticipant(randomUserId);
-        
-        chatRooms.put(roomId, chatRoom);
-        currentUser.getChatRooms().put(roomName, chatRoom);
-        users.get(randomUserId).getChatRooms().put("랜덤채팅_" + currentUser.getNickname(), chatRoom);
-        
-        enterChatRoom(roomName);
-    }
-    
-        
-    private void enterChatRoom(String roomName) {
-        ChatRoom room = currentUser.getChatRooms().get(roomName);
-        if (room == null) {
-            System.out.println("❌ 채팅방을 찾을 수 없습니다.");
+        ChatService.RoomSummary room;
+        try {
+            room = service.randomChat(currentUser.getUserId());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            printFailure(e);
             return;
         }
         
-        // 메시지를 읽음 처리
-        for (Message msg : room.getMessages()) {
-            if (!msg.getSenderId().equals(currentUser.getUserId())) {
-                msg.setRead(true);
-            }
-        }
-        
-        while (true) {
-            System.out.println("\n" + "═".repeat(60));
-            System.out.println("💬 채팅방: " + roomName);
-            System.out.println("═".repeat(60));
-            showMessages(room);
-            
-            System.out.println("─".repeat(60));
-            System.out.println("1. 메시지 전송    2. 메시지 검색    3. 메시지 고정/해제");
-            System.out.println("4. 메시지 북마크  5. 메시지 삭제    6. 메시지 답장");
-            System.out.println("7. 채팅방 나가기");
-            System.out.println("─".repeat(60));
-            System.out.print("선택: ");
-            
-            try {
-                int choice = scanner.nextInt();
-                scanner.nextLine();
-                
-                switch (choice) {
-                    case 1: sendMessage(room); break;
-                    case 2: searchMessages(room); break;
-                    case 3: toggleMessagePin(room); break;
-                    case 4: bookmarkMessage(room); break;
-                    case 5: deleteMessage(room); break;
-                    case 6: replyToMessage(room); break;
-                    case 7: return;
-                    default:
-                        System.out.println("❌ 잘못된 선택입니다.");
-                }
-            } catch (Exception e) {
-                System.out.println("❌ 숫자를 입력해주세요.");
-                scanner.nextLine(); // 잘못된 입력 버퍼 비우기
-            }
-        }
+        // 새 1:1 방이므로 보이는 이름이 곧 상대 닉네임
+        out.println("랜덤 매칭: " + room.getDisplayName());
+        enterChatRoom(room.getRoomId(), room.getRoomName());
     }
     
-    private void showMessages(ChatRoom room) {
-        List<Message> messages = room.getMessages();
-        if (messages.isEmpty()) {
-            System.out.println("\n📭 메시지가 없습니다.");
+    // 고정된 메시지와 현재 페이지를 보여 준다. 번호는 방 안의 메시지 순번이므로 고정/북마크/삭제/답장에서 그대로 쓴다.
+    private void showMessages(String roomId, List<Message> pinnedMessages, List<Message> page) {
+        if (page.isEmpty() && pinnedMessages.isEmpty()) {
+            out.println("\n📭 메시지가 없습니다.");
             return;
         }
         
-        // 메시지를 고정된 것과 일반 메시지로 분리하여 정렬
-        List<Message> pinnedMessages = new ArrayList<>();
-        List<Message> normalMessages = new ArrayList<>();
-        
-        for (Message msg : messages) {
-            if (!msg.isDeleted()) {
-                if (msg.isPinned()) {
-                    pinnedMessages.add(msg);
-                } else {
-                    normalMessages.add(msg);
-                }
-            }
-        }
-        
-        System.out.println("\n" + "─".repeat(60));
-        System.out.println("📨 메시지 목록");
-        System.out.println("─".repeat(60));
-        
-        int index = 0;
+        out.println("\n" + "─".repeat(60));
+        out.println("📨 메시지 목록");
+        out.println("─".repeat(60));
         
         // 고정된 메시지 먼저 표시
         if (!pinnedMessages.isEmpty()) {
-            System.out.println("📌 고정된 메시지:");
+            out.println("📌 고정된 메시지:");
             for (Message msg : pinnedMessages) {
-                displayMessage(msg, index, messages);
-                index++;
+                displayMessage(msg, roomId);
             }
-            System.out.println("─".repeat(40));
+            out.println("─".repeat(40));
         }
         
-        // 일반 메시지 표시
-        for (Message msg : normalMessages) {
-            displayMessage(msg, index, messages);
-            index++;
+        // 이전 메시지가 더 있으면 알린다
+        if (!page.isEmpty() && !service.messagesBefore(roomId, currentUser.getUserId(), page.get(0).getSeq(), 1).isEmpty()) {
+            out.println("⬆️  이전 메시지가 더 있습니다. (8. 이전 메시지)");
         }
-        System.out.println("─".repeat(60));
+        
+        // 페이지의 메시지 표시 (고정된 메시지는 위에서 보였으므로 건너뛴다)
+        for (Message msg : page) {
+            if (!msg.isPinned()) {
+                displayMessage(msg, roomId);
+            }
+        }
+        out.println("─".repeat(60));
     }
     
-    private void displayMessage(Message msg, int displayIndex, List<Message> allMessages) {
-        String senderName = users.get(msg.getSenderId()).getNickname();
+    private void displayMessage(Message msg, String roomId) {
+        String senderName = service.senderName(msg);
         String status = "";
         
         if (msg.isPinned()) status += "📌 ";
@@ -1057,10 +1247,10 @@ public class ChatApplication {
         
         // 답장 메시지인 경우 원본 메시지 표시
         String replyInfo = "";
-        if (msg.getReplyToMessageId() != null) {
-            Message originalMsg = findMessageById(allMessages, msg.getReplyToMessageId());
+        if (msg.getReplyToSeq() != 0) {
+            Message originalMsg = service.getMessage(roomId, currentUser.getUserId(), msg.getReplyToSeq());
             if (originalMsg != null && !originalMsg.isDeleted()) {
-                String originalSender = users.get(originalMsg.getSenderId()).getNickname();
+                String originalSender = service.senderName(originalMsg);
                 String originalContent = originalMsg.getContent();
                 if (originalContent.length() > 20) {
                     originalContent = originalContent.substring(0, 20) + "...";
@@ -1070,235 +1260,218 @@ public class ChatApplication {
             status += "\n     ↳ ";
         }
         
-        System.out.printf("[%d] %s%s: %s%s\n", 
-            displayIndex, replyInfo, status, senderName, msg.getContent());
-        System.out.println("    ⏰ " + msg.getTimestamp());
-        System.out.println();
+        out.printf("[%d] %s%s: %s%s\n",
+            msg.getSeq(), replyInfo, status, senderName, msg.getContent());
+        out.println("    ⏰ " + msg.getTimestamp());
+        out.println();
     }
     
-    private Message findMessageById(List<Message> messages, String messageId) {
-        for (Message msg : messages) {
-            if (msg.getMessageId().equals(messageId)) {
-                return msg;
+    private void sendMessage(String roomId) {
+        out.println("\n" + "─".repeat(30));
+        out.print("💬 메시지 (종료: -1 입력)");
+        
+        while (true) {
+            out.print("\n💬 메시지: ");
+            String content = scanner.nextLine();
+            
+            if (content.equals("-1")) {
+                out.println("메시지 전송을 종료합니다.");
+                return;
+            }
+            
+            try {
+                service.sendMessage(roomId, currentUser.getUserId(), content, 0, subscription);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                out.println("❌ " + e.getMessage());
+                continue;
             }
+            
+            out.println("✅ 메시지가 전송되었습니다.");
+            //out.println("─".repeat(30));
         }
-        return null;
     }
     
-    private void sendMessage(ChatRoom room) {
-        System.out.println("\n" + "─".repeat(30));
-        System.out.print("💬 메시지 (종료: -1 입력)");
-       
+    private void searchMessages(String roomId) {
+        out.println("\n" + "─".repeat(50));
+        out.println("🔍 메시지 검색 (종료: -1 입력)");
+        out.println("─".repeat(50));
+        
         while (true) {
-            System.out.print("\n💬 메시지: ");
-            String content = scanner.nextLine();
+            out.print("🔍 검색할 키워드: ");
+            String keyword = scanner.nextLine();
             
-            if (content.equals("-1")) {
-                System.out.println("메시지 전송을 종료합니다.");
+            if (keyword.equals("-1")) {
+                out.println("메시지 검색을 종료합니다.");
                 return;
             }
             
-            if (content.trim().isEmpty()) {
-                System.out.println("❌ 메시지를 입력해주세요.");
+            if (keyword.trim().isEmpty()) {
+                out.println("❌ 검색할 키워드를 입력해주세요.");
                 continue;
             }
             
-            String messageId = "msg_" + messageIdCounter++;
-            Message message = new Message(messageId, currentUser.getUserId(), content);
-            room.addMessage(message);
+            out.println("\n=== 검색 결과 ===");
+            int offset = 0;
+            while (true) {
+                ChatService.Page<Message> results = service.search(roomId, currentUser.getUserId(), keyword, offset, SEARCH_PAGE_SIZE);
+                if (results.getItems().isEmpty() && offset == 0) {
+                    out.println("검색 결과가 없습니다.");
+                    break;
+                }
+                
+                for (Message msg : results.getItems()) {
+                    String senderName = service.senderName(msg);
+                    out.println("[" + msg.getSeq() + "] " + senderName + ": " + msg.getContent() +
+                                     " (" + msg.getTimestamp() + ")");
+                }
+                
+                if (!results.hasMore()) {
+                    break;
+                }
+                out.print("더 보기 (y/n): ");
+                if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                    break;
+                }
+                offset += SEARCH_PAGE_SIZE;
+            }
+            out.println("─".repeat(30));
+        }
+    }
+    
+    private void searchAllChatRooms() {
+        out.println("\n" + "─".repeat(50));
+        out.println("🔍 전체 채팅방 메시지 검색");
+        out.println("─".repeat(50));
+        out.print("🔍 검색할 키워드: ");
+        String keyword = scanner.nextLine();
+        
+        if (keyword.trim().isEmpty()) {
+            out.println("❌ 검색할 키워드를 입력해주세요.");
+            return;
+        }
+        
+        out.println("\n=== 검색 결과 ===");
+        int offset = 0;
+        while (true) {
+            ChatService.Page<SearchHit> hits = service.searchAllRooms(currentUser.getUserId(), keyword, offset, SEARCH_PAGE_SIZE);
+            if (hits.getItems().isEmpty() && offset == 0) {
+                out.println("검색 결과가 없습니다.");
+                return;
+            }
             
-            // 모든 참여자의 채팅방에 메시지 동기화
-            syncMessageToAllParticipants(room, message);
+            for (SearchHit hit : hits.getItems()) {
+                Message msg = hit.getMessage();
+                String senderName = service.senderName(msg);
+                out.println("[" + hit.getRoom().getRoomName() + "] " + senderName + ": " +
+                                 msg.getContent() + " (" + msg.getTimestamp() + ")");
+            }
             
-            System.out.println("✅ 메시지가 전송되었습니다.");
-            //System.out.println("─".repeat(30));
-        }
-    }
-    
-    private void syncMessageToAllParticipants(ChatRoom room, Message message) {
-        for (String participantId : room.getParticipants()) {
-            if (!participantId.equals(currentUser.getUserId())) {
-                User participant = users.get(participantId);
-                if (participant != null) {
-                    // 참여자의 채팅방 목록에서 해당 채팅방 찾기
-                    for (ChatRoom participantRoom : participant.getChatRooms().values()) {
-                        if (participantRoom.getRoomId().equals(room.getRoomId())) {
-                            // 이미 같은 객체를 참조하고 있으므로 자동으로 동기화됨
-                            break;
-                        }
-                    }
-                }
+            if (!hits.hasMore()) {
+                return;
+            }
+            out.print("더 보기 (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                return;
             }
+            offset += SEARCH_PAGE_SIZE;
         }
     }
     
-    private void searchMessages(ChatRoom room) {
-    	 System.out.println("\n" + "─".repeat(50));
-         System.out.println("🔍 메시지 검색 (종료: -1 입력)");
-         System.out.println("─".repeat(50));
-         
-         while (true) {
-             System.out.print("🔍 검색할 키워드: ");
-             String keyword = scanner.nextLine();
-             
-             if (keyword.equals("-1")) {
-                 System.out.println("메시지 검색을 종료합니다.");
-                 return;
-             }
-             
-             if (keyword.trim().isEmpty()) {
-                 System.out.println("❌ 검색할 키워드를 입력해주세요.");
-                 continue;
-             }
-             
-             keyword = keyword.toLowerCase();2
-             
-             System.out.println("\n=== 검색 결과 ===");
-             boolean found = false;
-             
-             for (int i = 0; i < room.getMessages().size(); i++) {
-                 Message msg = room.getMessages().get(i);
-                 if (!msg.isDeleted() && msg.getContent().toLowerCase().contains(keyword)) {
-                     String senderName = users.get(msg.getSenderId()).getNickname();
-                     System.out.println("[" + i + "] " + senderName + ": " + msg.getContent() + 
-                                      " (" + msg.getTimestamp() + ")");
-                     found = true;
-                 }
-             }
-             
-             if (!found) {
-                 System.out.println("검색 결과가 없습니다.");
-             }
-             System.out.println("─".repeat(30));
-         }
-    }
-    
-    private void toggleMessagePin(ChatRoom room) {
-        System.out.println("\n" + "─".repeat(50));
-        System.out.println("📌 메시지 고정/해제 (종료: -1 입력)");
-        System.out.println("─".repeat(50));
+    private boolean hasMessages(String roomId) {
+        return service.getRoom(roomId, currentUser.getUserId()).getLastSeq() > 0;
+    }
+    
+    private void toggleMessagePin(String roomId) {
+        out.println("\n" + "─".repeat(50));
+        out.println("📌 메시지 고정/해제 (종료: -1 입력)");
+        out.println("─".repeat(50));
         
         while (true) {
-            if (room.getMessages().isEmpty()) {
-                System.out.println("❌ 메시지가 없습니다.");
+            if (!hasMessages(roomId)) {
+                out.println("❌ 메시지가 없습니다.");
                 return;
             }
             
-            System.out.print("📌 고정/해제할 메시지 번호: ");
+            out.print("📌 고정/해제할 메시지 번호: ");
             String input = scanner.nextLine();
             
             if (input.equals("-1")) {
-                System.out.println("메시지 고정/해제를 종료합니다.");
+                out.println("메시지 고정/해제를 종료합니다.");
                 return;
             }
             
             try {
-                int index = Integer.parseInt(input);
-                
-                if (index < 0 || index >= room.getMessages().size()) {
-                    System.out.println("❌ 잘못된 메시지 번호입니다.");
-                    continue;
-                }
-                
-                Message msg = room.getMessages().get(index);
-                if (msg.isDeleted()) {
-                    System.out.println("❌ 삭제된 메시지입니다.");
-                    continue;
-                }
-                
-                msg.setPinned(!msg.isPinned());
-                System.out.println("✅ 메시지가 " + (msg.isPinned() ? "고정" : "고정 해제") + "되었습니다.");
-                
+                // 화면에 보인 번호가 곧 메시지 순번
+                boolean pin = service.toggleMessagePinned(roomId, currentUser.getUserId(), Long.parseLong(input));
+                out.println("✅ 메시지가 " + (pin ? "고정" : "고정 해제") + "되었습니다.");
+            
             } catch (NumberFormatException e) {
-                System.out.println("❌ 숫자를 입력해주세요.");
+                out.println("❌ 숫자를 입력해주세요.");
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                out.println("❌ " + e.getMessage());
             }
         }
     }
     
-    private void bookmarkMessage(ChatRoom room) {
-        System.out.println("\n" + "─".repeat(50));
-        System.out.println("🔖 메시지 북마크 (종료: -1 입력)");
-        System.out.println("─".repeat(50));
+    private void bookmarkMessage(String roomId) {
+        out.println("\n" + "─".repeat(50));
+        out.println("🔖 메시지 북마크 (종료: -1 입력)");
+        out.println("─".repeat(50));
         
         while (true) {
-            if (room.getMessages().isEmpty()) {
-                System.out.println("❌ 메시지가 없습니다.");
+            if (!hasMessages(roomId)) {
+                out.println("❌ 메시지가 없습니다.");
                 return;
             }
             
-            System.out.print("🔖 북마크할 메시지 번호: ");
+            out.print("🔖 북마크할 메시지 번호: ");
             String input = scanner.nextLine();
             
             if (input.equals("-1")) {
-                System.out.println("메시지 북마크를 종료합니다.");
+                out.println("메시지 북마크를 종료합니다.");
                 return;
             }
             
             try {
-                int index = Integer.parseInt(input);
-                
-                if (index < 0 || index >= room.getMessages().size()) {
-                    System.out.println("❌ 잘못된 메시지 번호입니다.");
-                    continue;
-                }
-                
-                Message msg = room.getMessages().get(index);
-                if (msg.isDeleted()) {
-                    System.out.println("❌ 삭제된 메시지입니다.");
-                    continue;
-                }
-                
-                msg.setBookmarked(!msg.isBookmarked());
-                System.out.println("✅ 메시지가 " + (msg.isBookmarked() ? "북마크에 추가" : "북마크에서 제거") + "되었습니다.");
-                System.out.println("─".repeat(30));
-                
+                // 화면에 보인 번호가 곧 메시지 순번
+                boolean bookmark = service.toggleMessageBookmarked(roomId, currentUser.getUserId(), Long.parseLong(input));
+                out.println("✅ 메시지가 " + (bookmark ? "북마크에 추가" : "북마크에서 제거") + "되었습니다.");
+                out.println("─".repeat(30));
+            
             } catch (NumberFormatException e) {
-                System.out.println("❌ 숫자를 입력해주세요.");
+                out.println("❌ 숫자를 입력해주세요.");
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                out.println("❌ " + e.getMessage());
             }
         }
     }
     
-    private void deleteMessage(ChatRoom room) {
-        System.out.println("\n" + "─".repeat(50));
-        System.out.println("🗑️ 메시지 삭제 (종료: -1 입력)");
-        System.out.println("─".repeat(50));
+    private void deleteMessage(String roomId) {
+        out.println("\n" + "─".repeat(50));
+        out.println("🗑️ 메시지 삭제 (종료: -1 입력)");
+        out.println("─".repeat(50));
         
         while (true) {
-            if (room.getMessages().isEmpty()) {
-                System.out.println("❌ 메시지가 없습니다.");
+            if (!hasMessages(roomId)) {
+                out.println("❌ 메시지가 없습니다.");
                 return;
             }
             
-            System.out.print("🗑️ 삭제할 메시지 번호: ");
+            out.print("🗑️ 삭제할 메시지 번호: ");
             String input = scanner.nextLine();
             
             if (input.equals("-1")) {
-                System.out.println("메시지 삭제를 종료합니다.");
+                out.println("메시지 삭제를 종료합니다.");
                 return;
             }
             
             try {
-                int index = Integer.parseInt(input);
-                
-                if (index < 0 || index >= room.getMessages().size()) {
-                    System.out.println("❌ 잘못된 메시지 번호입니다.");
-                    continue;
-                }
-                
-                Message msg = room.getMessages().get(index);
-                if (msg.isDeleted()) {
-                    System.out.println("❌ 이미 삭제된 메시지입니다.");
-                    continue;
-                }
-                
-                if (!msg.getSenderId().equals(currentUser.getUserId())) {
-                    System.out.println("❌ 자신의 메시지만 삭제할 수 있습니다.");
-                    continue;
-                }
+                // 화면에 보인 번호가 곧 메시지 순번. 지울 수 있는 메시지인지 먼저 확인하고 방식을 묻는다.
+                long seq = service.findOwnMessage(roomId, currentUser.getUserId(), Long.parseLong(input)).getSeq();
                 
-                System.out.println("1. 나에게만 삭제");
-                System.out.println("2. 모두에게 삭제");
-                System.out.print("선택: ");
+                out.println("1. 나에게만 삭제");
+                out.println("2. 모두에게 삭제");
+                out.print("선택: ");
                 String choiceInput = scanner.nextLine();
                 
                 if (choiceInput.equals("-1")) {
@@ -1310,67 +1483,60 @@ public class ChatApplication {
                     
                     if (choice == 1) {
                         // 실제 구현에서는 사용자별로 삭제 상태를 관리해야 함
-                        System.out.println("✅ 나에게만 메시지가 삭제되었습니다. (현재는 모두에게 삭제됨)");
-                        msg.setDeleted(true);
+                        service.deleteMessage(roomId, currentUser.getUserId(), seq);
+                        out.println("✅ 나에게만 메시지가 삭제되었습니다. (현재는 모두에게 삭제됨)");
                     } else if (choice == 2) {
-                        msg.setDeleted(true);
-                        System.out.println("✅ 모두에게 메시지가 삭제되었습니다.");
+                        service.deleteMessage(roomId, currentUser.getUserId(), seq);
+                        out.println("✅ 모두에게 메시지가 삭제되었습니다.");
                     } else {
-                        System.out.println("❌ 잘못된 선택입니다.");
+                        out.println("❌ 잘못된 선택입니다.");
                         continue;
                     }
-                    System.out.println("─".repeat(30));
-                    
+                    out.println("─".repeat(30));
+                
                 } catch (NumberFormatException e) {
-                    System.out.println("❌ 숫자를 입력해주세요.");
+                    out.println("❌ 숫자를 입력해주세요.");
                 }
-                
+            
             } catch (NumberFormatException e) {
-                System.out.println("❌ 숫자를 입력해주세요.");
+                out.println("❌ 숫자를 입력해주세요.");
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                out.println("❌ " + e.getMessage());
             }
         }
     }
     
-    private void replyToMessage(ChatRoom room) {
-        System.out.println("\n" + "─".repeat(50));
-        System.out.println("↩️ 메시지 답장 (종료: -1 입력)");
-        System.out.println("─".repeat(50));
+    private void replyToMessage(String roomId) {
+        out.println("\n" + "─".repeat(50));
+        out.println("↩️ 메시지 답장 (종료: -1 입력)");
+        out.println("─".repeat(50));
         
         while (true) {
-            if (room.getMessages().isEmpty()) {
-                System.out.println("❌ 메시지가 없습니다.");
+            if (!hasMessages(roomId)) {
+                out.println("❌ 메시지가 없습니다.");
                 return;
             }
             
-            System.out.print("↩️ 답장할 메시지 번호: ");
+            out.print("↩️ 답장할 메시지 번호: ");
             String input = scanner.nextLine();
             
             if (input.equals("-1")) {
-                System.out.println("메시지 답장을 종료합니다.");
+                out.println("메시지 답장을 종료합니다.");
                 return;
             }
             
             try {
-                int index = Integer.parseInt(input);
-                
-                // 실제 메시지 리스트에서의 인덱스 찾기
-                List<Message> visibleMessages = new ArrayList<>();
-                for (Message msg : room.getMessages()) {
-                    if (!msg.isDeleted()) {
-                        visibleMessages.add(msg);
-                    }
-                }
-                
-                if (index < 0 || index >= visibleMessages.size()) {
-                    System.out.println("❌ 잘못된 메시지 번호입니다.");
+                // 화면에 보인 번호가 곧 메시지 순번
+                Message originalMsg = service.getMessage(roomId, currentUser.getUserId(), Long.parseLong(input));
+                if (originalMsg == null || originalMsg.isDeleted()) {
+                    out.println("❌ 잘못된 메시지 번호입니다.");
                     continue;
                 }
                 
-                Message originalMsg = visibleMessages.get(index);
-                String originalSender = users.get(originalMsg.getSenderId()).getNickname();
+                String originalSender = service.senderName(originalMsg);
                 
-                System.out.println("📩 답장할 메시지: " + originalSender + ": " + originalMsg.getContent());
-                System.out.print("\n💬 답장 내용: ");
+                out.println("📩 답장할 메시지: " + originalSender + ": " + originalMsg.getContent());
+                out.print("\n💬 답장 내용: ");
                 String replyContent = scanner.nextLine();
                 
                 if (replyContent.equals("-1")) {
@@ -1378,201 +1544,134 @@ public class ChatApplication {
                 }
                 
                 if (replyContent.trim().isEmpty()) {
-                    System.out.println("❌ 답장 내용을 입력해주세요.");
+                    out.println("❌ 답장 내용을 입력해주세요.");
                     continue;
                 }
                 
-                String messageId = "msg_" + messageIdCounter++;
-                Message replyMsg = new Message(messageId, currentUser.getUserId(), replyContent);
-                replyMsg.setReplyToMessageId(originalMsg.getMessageId());
-                room.addMessage(replyMsg);
-                
-                // 모든 참여자의 채팅방에 답장 메시지 동기화
-                syncMessageToAllParticipants(room, replyMsg);
-                
-                System.out.println("✅ 답장이 전송되었습니다.");
-                
+                service.sendMessage(roomId, currentUser.getUserId(), replyContent, originalMsg.getSeq(), subscription);
+                out.println("✅ 답장이 전송되었습니다.");
+            
             } catch (NumberFormatException e) {
-                System.out.println("❌ 숫자를 입력해주세요.");
+                out.println("❌ 숫자를 입력해주세요.");
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                out.println("❌ " + e.getMessage());
             }
         }
     }
     
+    // 목록이 이미 고정/최근 순이므로 정렬하지 않고 그대로 출력
     private void sortChatRoomsByTime() {
-        Map<String, ChatRoom> userChatRooms = currentUser.getChatRooms();
-        
-        userChatRooms.entrySet().stream()
-            .sorted((e1, e2) -> e2.getValue().getLastMessageTime().compareTo(e1.getValue().getLastMessageTime()))
-            .forEach(entry -> {
-                ChatRoom room = entry.getValue();
-                int unreadCount = room.getUnreadCount(currentUser.getUserId());
-                String pinStatus = room.isPinned() ? "[고정] " : "";
-                String unreadStatus = unreadCount > 0 ? " (" + unreadCount + ")" : "";
-                
-                System.out.println(pinStatus + room.getRoomName() + unreadStatus + 
-                                 " - 최근: " + room.getLastMessageTime());
-            });
+        for (ChatService.RoomSummary room : allRooms()) {
+            String pinStatus = room.isPinned() ? "[고정] " : "";
+            String unreadStatus = room.getUnreadCount() > 0 ? " (" + room.getUnreadCount() + ")" : "";
+            
+            out.println(pinStatus + room.getRoomName() + unreadStatus +
+                             " - 최근: " + room.getLastMessageTime());
+        }
     }
     
     private void sortChatRoomsByUnread() {
-        Map<String, ChatRoom> userChatRooms = currentUser.getChatRooms();
-        
-        userChatRooms.entrySet().stream()
-            .sorted((e1, e2) -> Integer.compare(
-                e2.getValue().getUnreadCount(currentUser.getUserId()),
-                e1.getValue().getUnreadCount(currentUser.getUserId())))
-            .forEach(entry -> {
-                ChatRoom room = entry.getValue();
-                int unreadCount = room.getUnreadCount(currentUser.getUserId());
-                String pinStatus = room.isPinned() ? "[고정] " : "";
-                String unreadStatus = unreadCount > 0 ? " (" + unreadCount + ")" : "";
-                
-                System.out.println(pinStatus + room.getRoomName() + unreadStatus + 
-                                 " - 안읽은 메시지: " + unreadCount);
-            });
+        for (ChatService.RoomSummary room : service.listRoomsByUnread(currentUser.getUserId())) {
+            String pinStatus = room.isPinned() ? "[고정] " : "";
+            String unreadStatus = room.getUnreadCount() > 0 ? " (" + room.getUnreadCount() + ")" : "";
+            
+            out.println(pinStatus + room.getRoomName() + unreadStatus +
+                             " - 안읽은 메시지: " + room.getUnreadCount());
+        }
     }
     
     private void toggleChatRoomPin() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("=== 채팅방 고정/해제 ===");
-        System.out.println("=".repeat(50));
+        out.println("\n" + "=".repeat(50));
+        out.println("=== 채팅방 고정/해제 ===");
+        out.println("=".repeat(50));
         
-        Map<String, ChatRoom> userChatRooms = currentUser.getChatRooms();
-        if (userChatRooms.isEmpty()) {
-            System.out.println("❌ 채팅방이 없습니다.");
+        List<ChatService.RoomSummary> rooms = allRooms();
+        if (rooms.isEmpty()) {
+            out.println("❌ 채팅방이 없습니다.");
             return;
         }
         
-        List<String> friendNames = new ArrayList<>();
-        for (Map.Entry<String, ChatRoom> entry : userChatRooms.entrySet()) {
-            ChatRoom room = entry.getValue();
+        for (int i = 0; i < rooms.size(); i++) {
+            ChatService.RoomSummary room = rooms.get(i);
             String pinStatus = room.isPinned() ? "📌 " : "";
-            
-            String displayName = "";
-            if (!room.isGroupChat()) {
-                for (String participantId : room.getParticipants()) {
-                    if (!participantId.equals(currentUser.getUserId())) {
-                        User friend = users.get(participantId);
-                        if (friend != null) {
-                            displayName = friend.getNickname();
-                            break;
-                        }
-                    }
-                }
-            } else {
-                displayName = room.getRoomName();
-            }
-            
-            friendNames.add(displayName);
-            System.out.printf("[%d] %s%s\n", friendNames.size(), pinStatus, displayName);
+            out.printf("[%d] %s%s\n", i + 1, pinStatus, room.getDisplayName());
         }
         
-        System.out.println("=".repeat(50));
-        System.out.print("고정/해제할 채팅방 번호: ");
+        out.println("=".repeat(50));
+        out.print("고정/해제할 채팅방 번호: ");
         int choice = scanner.nextInt();
         scanner.nextLine();
         
-        if (choice < 1 || choice > friendNames.size()) {
-            System.out.println("❌ 잘못된 번호입니다.");
+        if (choice < 1 || choice > rooms.size()) {
+            out.println("❌ 잘못된 번호입니다.");
             return;
         }
         
-        String selectedName = friendNames.get(choice - 1);
-        
-        // 선택된 이름으로 채팅방 찾기
-        for (ChatRoom room : userChatRooms.values()) {
-            String roomDisplayName = "";
-            if (!room.isGroupChat()) {
-                for (String participantId : room.getParticipants()) {
-                    if (!participantId.equals(currentUser.getUserId())) {
-                        User friend = users.get(participantId);
-                        if (friend != null) {
-                            roomDisplayName = friend.getNickname();
-                            break;
-                        }
-                    }
-                }
-            } else {
-                roomDisplayName = room.getRoomName();
-            }
-            
-            if (roomDisplayName.equals(selectedName)) {
-                room.setPinned(!room.isPinned());
-                System.out.println("✅ 채팅방이 " + (room.isPinned() ? "고정" : "고정 해제") + "되었습니다.");
-                return;
-            }
+        try {
+            boolean pinned = service.toggleRoomPinned(rooms.get(choice - 1).getRoomId(), currentUser.getUserId());
+            out.println("✅ 채팅방이 " + (pinned ? "고정" : "고정 해제") + "되었습니다.");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            out.println("❌ " + e.getMessage());
         }
     }
     
     private void leaveChatRoom() {
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println("    채팅방 나가기    ");
-        System.out.println("=".repeat(50));
+        out.println("\n" + "=".repeat(50));
+        out.println("    채팅방 나가기    ");
+        out.println("=".repeat(50));
         
-        Map<String, ChatRoom> userChatRooms = currentUser.getChatRooms();
-        if (userChatRooms.isEmpty()) {
-            System.out.println("❌ 채팅방이 없습니다.");
+        List<ChatService.RoomSummary> rooms = allRooms();
+        if (rooms.isEmpty()) {
+            out.println("❌ 채팅방이 없습니다.");
             return;
         }
         
-        List<String> friendNames = new ArrayList<>();
-        List<ChatRoom> roomList = new ArrayList<>();
-        
-        for (Map.Entry<String, ChatRoom> entry : userChatRooms.entrySet()) {
-            ChatRoom room = entry.getValue();
-            
-            String displayName = "";
-            if (!room.isGroupChat()) {
-                for (String participantId : room.getParticipants()) {
-                    if (!participantId.equals(currentUser.getUserId())) {
-                        User friend = users.get(participantId);
-                        if (friend != null) {
-                            displayName = friend.getNickname();
-                            break;
-                        }
-                    }
-                }
-            } else {
-                displayName = room.getRoomName();
-            }
-            
-            friendNames.add(displayName);
-            roomList.add(room);
-            System.out.printf("[%d] %s\n", friendNames.size(), displayName);
+        for (int i = 0; i < rooms.size(); i++) {
+            out.printf("[%d] %s\n", i + 1, rooms.get(i).getDisplayName());
         }
         
-        System.out.println("=".repeat(50));
-        System.out.print("나갈 채팅방 번호: ");
+        out.println("=".repeat(50));
+        out.print("나갈 채팅방 번호: ");
         int choice = scanner.nextInt();
         scanner.nextLine();
         
-        if (choice < 1 || choice > friendNames.size()) {
-            System.out.println("❌ 잘못된 번호입니다.");
+        if (choice < 1 || choice > rooms.size()) {
+            out.println("❌ 잘못된 번호입니다.");
             return;
         }
         
-        ChatRoom selectedRoom = roomList.get(choice - 1);
-        String selectedName = friendNames.get(choice - 1);
+        ChatService.RoomSummary selectedRoom = rooms.get(choice - 1);
         
-        selectedRoom.removeParticipant(currentUser.getUserId());
-        
-        // 현재 사용자의 채팅방 목록에서 제거
-        currentUser.getChatRooms().entrySet().removeIf(entry -> 
-            entry.getValue().getRoomId().equals(selectedRoom.getRoomId()));
-        
-        System.out.println("✅ " + selectedName + " 채팅방에서 나갔습니다.");
-        
-        // 그룹 채팅방에서 나가기 메시지 추가
-        if (selectedRoom.isGroupChat()) {
-            String messageId = "msg_" + messageIdCounter++;
-            Message leaveMsg = new Message(messageId, "SYSTEM", 
-                currentUser.getNickname() + "님이 채팅방을 나갔습니다.");
-            selectedRoom.addMessage(leaveMsg);
+        // 채팅방 참여자와 현재 사용자의 채팅방 목록에서 제거 (그룹 채팅방이면 나가기 메시지도 남긴다)
+        try {
+            service.leaveRoom(selectedRoom.getRoomId(), currentUser.getUserId());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            out.println("❌ " + e.getMessage());
+            return;
         }
+        
+        out.println("✅ " + selectedRoom.getDisplayName() + " 채팅방에서 나갔습니다.");
     }
     
+    // chat.server.port 를 지정하면 콘솔 대신 TCP 채팅 서버로 실행 (ChatServer 참고)
+    // chat.console.port 를 지정하면 접속마다 이 콘솔 메뉴를 따로 실행 (ConsoleSessionServer 참고)
     public static void main(String[] args) {
         ChatApplication app = new ChatApplication();
+        Integer port = Integer.getInteger("chat.server.port");
+        Integer consolePort = Integer.getInteger("chat.console.port");
+        try {
+            if (port != null) {
+                new ChatServer(app.getService(), port).run();
+                return;
+            }
+            if (consolePort != null) {
+                new ConsoleSessionServer(app, consolePort).run();
+                return;
+            }
+        } catch (IOException e) {
+            System.out.println("❌ 채팅 서버를 실행할 수 없습니다: " + e.getMessage());
+            System.exit(1);
+        }
         app.start();
     }
 }
@@ -0,0 +1,436 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// ChatLoadTest.java - 많은 사용자가 동시에 채팅하는 상황을 흉내 내는 부하 생성기 (장시간 시험 겸용)
+// 엔진을 같은 프로세스에 띄우고 ChatService 로만 부르므로 외부 서비스나 터미널 입출력 없이 돌아간다.
+// 1. createDefaultTestAccounts 와 같은 모양의 가상 사용자를 가입시키고 사용자마다 친구를 맺는다.
+// 2. 1:1 방, 그룹 방, 랜덤 채팅 방을 섞어 만든다.
+// 3. 스레드들이 정해진 비율로 전송/읽기/검색/고정/삭제를 보내며 작업별 처리량과 지연 시간(p50/p99/p99.9)을 잰다.
+//    주기마다 처리량과 힙 사용량을 한 줄씩 찍으므로, 오래 돌리면 힙이 계속 느는지(누수) 볼 수 있다.
+// 실행: java -Xmx2g -Dload.users=2000 -Dload.duration=600 ChatLoadTest
+//   load.users      가상 사용자 수 (기본 1000)
+//   load.threads    작업 스레드 수 (기본 16)
+//   load.duration   측정 시간 (초, 기본 60)
+//   load.rate       초당 전체 목표 작업 수 (기본 0 = 최대한 빨리)
+//   load.mix        작업 비율 (기본 send=60,read=25,search=5,pin=5,delete=5)
+//   load.friends    사용자마다 맺는 친구 수 (기본 10)
+//   load.groupSize  그룹 방 참여자 수 (기본 20, 사용자 50명당 그룹 방 하나)
+//   load.report     중간 보고 주기 (초, 기본 10)
+// chat.data.dir 을 주지 않으면 임시 디렉터리에 변경 로그를 쓴다. chat.durability 같은 엔진 설정은 그대로 따른다.
+public class ChatLoadTest {
+    private static final String[] WORDS = {
+        "오늘", "내일", "점심", "메뉴", "회의", "일정", "배포", "리뷰", "버그", "수정", "확인", "부탁", "감사합니다",
+        "커피", "주말", "퇴근", "출근", "자료", "공유", "링크", "사진", "ㅋㅋ", "네", "좋아요",
+        "deploy", "release", "hotfix", "build", "test", "meeting", "lunch", "ok"
+    };
+    private static final int HISTORY_PAGE = 20;
+    private static final int SEARCH_PAGE = 20;
+    // 스레드마다 지울 후보로 기억해 두는 자기 메시지 수
+    private static final int DELETE_CANDIDATES = 1000;
+    
+    enum Operation { SEND, READ, SEARCH, PIN, DELETE }
+    
+    // 스레드가 보낸 메시지 (나중에 삭제 대상)
+    private static final class SentMessage {
+        final String roomId;
+        final String userId;
+        final long seq;
+        
+        SentMessage(String roomId, String userId, long seq) {
+            this.roomId = roomId;
+            this.userId = userId;
+            this.seq = seq;
+        }
+    }
+    
+    private final ChatService service;
+    private final Random random = new Random(42);
+    private String[] userIds;
+    // 사용자 번호 -> 그 사용자가 참여한 방 아이디들
+    private String[][] roomsOfUser;
+    private int directRooms;
+    private int groupRooms;
+    private int randomRooms;
+    
+    // 작업별 지연 시간, 입력이 맞지 않아 거절된 수(삭제된 메시지 고정 등), 오류 수
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] rejected = new LongAdder[Operation.values().length];
+    private final LongAdder[] errors = new LongAdder[Operation.values().length];
+    
+    ChatLoadTest(ChatService service) {
+        this.service = service;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            rejected[i] = new LongAdder();
+            errors[i] = new LongAdder();
+        }
+    }
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int userCount = Integer.getInteger("load.users", 1000);
+        int threads = Integer.getInteger("load.threads", 16);
+        long duration = Long.getLong("load.duration", 60);
+        long rate = Long.getLong("load.rate", 0);
+        int[] weights = parseMix(System.getProperty("load.mix", "send=60,read=25,search=5,pin=5,delete=5"));
+        int friends = Integer.getInteger("load.friends", 10);
+        int groupSize = Integer.getInteger("load.groupSize", 20);
+        long reportInterval = Long.getLong("load.report", 10);
+        
+        if (System.getProperty("chat.data.dir") == null) {
+            System.setProperty("chat.data.dir", Files.createTempDirectory("chat-loadtest").toString());
+        }
+        ChatLoadTest test = new ChatLoadTest(new ChatApplication().getService());
+        
+        long setupStart = System.nanoTime();
+        test.setUp(userCount, friends, groupSize);
+        System.out.printf("사용자 %,d명, 1:1 방 %,d개, 그룹 방 %,d개, 랜덤 채팅 방 %,d개 준비 (%.1f초)%n",
+                          userCount, test.directRooms, test.groupRooms, test.randomRooms,
+                          (System.nanoTime() - setupStart) / 1e9);
+        System.out.printf("스레드 %d개, %d초, 목표 %s, 비율 %s%n%n", threads, duration,
+                          rate > 0 ? String.format("%,d건/초", rate) : "최대", mixText(weights));
+        
+        test.run(threads, duration, rate, weights, reportInterval);
+        System.exit(0);
+    }
+    
+    // "send=60,read=25" 형식. 빠진 작업은 0.
+    static int[] parseMix(String mix) {
+        int[] weights = new int[Operation.values().length];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("load.mix 형식이 잘못되었습니다: " + part);
+            }
+            weights[Operation.valueOf(pair[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(pair[1].trim());
+        }
+        if (Arrays.stream(weights).sum() <= 0) {
+            throw new IllegalArgumentException("load.mix 에 비율이 하나도 없습니다: " + mix);
+        }
+        return weights;
+    }
+    
+    private static String mixText(int[] weights) {
+        StringJoiner text = new StringJoiner(",");
+        for (Operation op : Operation.values()) {
+            text.add(op.name().toLowerCase() + "=" + weights[op.ordinal()]);
+        }
+        return text.toString();
+    }
+    
+    // ---- 준비 ----
+    
+    void setUp(int userCount, int friendsPerUser, int groupSize) {
+        Map<String, Integer> indexOf = new HashMap<>();
+        List<List<String>> rooms = new ArrayList<>();
+        userIds = new String[userCount];
+        for (int i = 0; i < userCount; i++) {
+            // 기본 테스트 계정처럼 닉네임은 아이디와 같고, 비밀번호는 0000
+            String userId = String.format("load%05d", i + 1);
+            userIds[i] = userId;
+            indexOf.put(userId, i);
+            rooms.add(new ArrayList<>());
+            service.register(userId, "0000", userId, userId + "@example.com",
+                             String.format("010-%04d-%04d", (i + 1) / 10000, (i + 1) % 10000));
+        }
+        
+        for (String userId : userIds) {
+            for (int f = 0; f < friendsPerUser; f++) {
+                addFriend(userId, userIds[random.nextInt(userCount)]);
+            }
+        }
+        
+        // 1:1 방: 사용자마다 가상 사용자 친구 두 명까지 (기본 테스트 계정과는 열지 않는다)
+        for (int i = 0; i < userCount; i++) {
+            int opened = 0;
+            for (User friend : service.listFriends(userIds[i])) {
+                Integer friendIndex = indexOf.get(friend.getUserId());
+                if (friendIndex == null || opened == 2) {
+                    continue;
+                }
+                ChatService.RoomSummary room = service.openDirectRoom(userIds[i], friend.getUserId());
+                if (room.getLastSeq() == 0 && !rooms.get(friendIndex).contains(room.getRoomId())) {
+                    rooms.get(i).add(room.getRoomId());
+                    rooms.get(friendIndex).add(room.getRoomId());
+                    directRooms++;
+                }
+                opened++;
+            }
+        }
+        
+        // 그룹 방: 만든 사람이 참여자들과 친구를 맺은 뒤 초대한다
+        for (int g = 0; g < Math.max(1, userCount / 50); g++) {
+            int creator = random.nextInt(userCount);
+            String roomId = service.createGroupRoom(userIds[creator], "부하 그룹 " + (g + 1)).getRoomId();
+            rooms.get(creator).add(roomId);
+            for (int m = 1; m < Math.min(groupSize, userCount); m++) {
+                int member = random.nextInt(userCount);
+                if (rooms.get(member).contains(roomId)) {
+                    continue;
+                }
+                addFriend(userIds[creator], userIds[member]);
+                service.inviteToRoom(roomId, userIds[creator], userIds[member]);
+                rooms.get(member).add(roomId);
+            }
+            groupRooms++;
+        }
+        
+        // 랜덤 채팅: 사용자 열 명 중 한 명. 상대가 가상 사용자면 (닉네임 = 아이디) 상대 목록에도 넣는다.
+        for (int i = 0; i < userCount; i += 10) {
+            ChatService.RoomSummary room = service.randomChat(userIds[i]);
+            rooms.get(i).add(room.getRoomId());
+            Integer partner = indexOf.get(room.getDisplayName());
+            if (partner != null) {
+                rooms.get(partner).add(room.getRoomId());
+            }
+            randomRooms++;
+        }
+        
+        roomsOfUser = new String[userCount][];
+        for (int i = 0; i < userCount; i++) {
+            roomsOfUser[i] = rooms.get(i).toArray(new String[0]);
+        }
+    }
+    
+    // 자기 자신이거나 이미 친구면 건너뛴다
+    private void addFriend(String userId, String friendId) {
+        try {
+            service.addFriend(userId, friendId);
+        } catch (IllegalArgumentException e) {
+            // 건너뜀
+        }
+    }
+    
+    // ---- 실행 ----
+    
+    void run(int threads, long durationSeconds, long rate, int[] weights, long reportInterval)
+            throws InterruptedException {
+        System.gc();
+        long startHeap = heapUsed();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        // 목표 처리량이 있으면 스레드마다 이 간격으로 작업을 예정한다
+        long intervalNanos = rate > 0 ? Math.max(1, TimeUnit.SECONDS.toNanos(threads) / rate) : 0;
+        
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> runWorker(worker, end, intervalNanos, weights), "load-worker-" + t);
+            workers[t].start();
+        }
+        
+        System.out.printf("%6s %12s %s %10s %12s%n", "경과", "전체(건/초)", operationHeader(), "힙(MB)", "GC 후(MB)");
+        long[] lastCounts = counts();
+        long lastReport = start;
+        List<long[]> heapSamples = new ArrayList<>();
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+            long wake = Math.min(end, lastReport + TimeUnit.SECONDS.toNanos(reportInterval));
+            if (wake > now) {
+                TimeUnit.NANOSECONDS.sleep(wake - now);
+            }
+            now = System.nanoTime();
+            long[] current = counts();
+            long afterGc = heapAfterGc();
+            heapSamples.add(new long[] {now - start, afterGc});
+            printInterval(now - start, now - lastReport, lastCounts, current, heapUsed(), afterGc);
+            lastCounts = current;
+            lastReport = now;
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        
+        System.gc();
+        printSummary(elapsed, startHeap, heapUsed(), heapSamples);
+    }
+    
+    private void runWorker(int worker, long end, long intervalNanos, int[] weights) {
+        Random random = new Random(worker);
+        ArrayDeque<SentMessage> sent = new ArrayDeque<>();
+        int totalWeight = Arrays.stream(weights).sum();
+        long next = System.nanoTime();
+        while (true) {
+            long start;
+            if (intervalNanos > 0) {
+                // 예정 시각부터 잰다. 앞 작업이 늦어 밀린 시간도 지연에 들어가야 실제 사용자가 겪는 값이 된다.
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                start = next;
+                next += intervalNanos;
+            } else {
+                start = System.nanoTime();
+            }
+            if (start >= end) {
+                return;
+            }
+            
+            Operation op = pick(random.nextInt(totalWeight), weights);
+            try {
+                perform(op, random, sent);
+                latencies[op.ordinal()].record(System.nanoTime() - start);
+            } catch (IllegalArgumentException e) {
+                rejected[op.ordinal()].increment();
+            } catch (RuntimeException e) {
+                if (errors[op.ordinal()].sum() < 5) {
+                    System.out.println("❌ " + op + " 작업 중 오류: " + e);
+                }
+                errors[op.ordinal()].increment();
+            }
+        }
+    }
+    
+    private static Operation pick(int roll, int[] weights) {
+        for (Operation op : Operation.values()) {
+            roll -= weights[op.ordinal()];
+            if (roll < 0) {
+                return op;
+            }
+        }
+        throw new IllegalStateException("작업 비율 합계를 넘었습니다");
+    }
+    
+    private void perform(Operation op, Random random, ArrayDeque<SentMessage> sent) {
+        if (op == Operation.DELETE) {
+            // 자기가 보낸 메시지 중 가장 오래된 것을 모두에게서 삭제
+            SentMessage target = sent.pollFirst();
+            if (target == null) {
+                throw new IllegalArgumentException("삭제할 메시지가 없습니다.");
+            }
+            service.deleteMessage(target.roomId, target.userId, target.seq);
+            return;
+        }
+        
+        int user = random.nextInt(userIds.length);
+        String[] rooms = roomsOfUser[user];
+        if (rooms.length == 0) {
+            throw new IllegalArgumentException("참여한 채팅방이 없습니다.");
+        }
+        String userId = userIds[user];
+        String roomId = rooms[random.nextInt(rooms.length)];
+        switch (op) {
+            case SEND: {
+                Message message = service.sendMessage(roomId, userId, text(random));
+                sent.addLast(new SentMessage(roomId, userId, message.getSeq()));
+                if (sent.size() > DELETE_CANDIDATES) {
+                    sent.pollFirst();
+                }
+                break;
+            }
+            case READ:
+                // 방에 들어가 최신 페이지를 보고 읽음 처리
+                service.messagesBefore(roomId, userId, Long.MAX_VALUE, HISTORY_PAGE);
+                service.markRead(roomId, userId, Long.MAX_VALUE);
+                break;
+            case SEARCH:
+                service.search(roomId, userId, WORDS[random.nextInt(WORDS.length)], 0, SEARCH_PAGE);
+                break;
+            case PIN: {
+                long lastSeq = service.getRoom(roomId, userId).getLastSeq();
+                if (lastSeq == 0) {
+                    throw new IllegalArgumentException("메시지가 없습니다.");
+                }
+                service.toggleMessagePinned(roomId, userId, 1 + random.nextLong(lastSeq));
+                break;
+            }
+            default:
+                throw new IllegalStateException("알 수 없는 작업: " + op);
+        }
+    }
+    
+    private static String text(Random random) {
+        int words = 3 + random.nextInt(10);
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+    
+    // ---- 보고 ----
+    
+    // 작업별 성공 수
+    private long[] counts() {
+        long[] counts = new long[latencies.length];
+        for (int i = 0; i < latencies.length; i++) {
+            counts[i] = latencies[i].getCount();
+        }
+        return counts;
+    }
+    
+    private static String operationHeader() {
+        StringBuilder header = new StringBuilder();
+        for (Operation op : Operation.values()) {
+            header.append(String.format("%10s", op.name().toLowerCase()));
+        }
+        return header.toString();
+    }
+    
+    private void printInterval(long elapsed, long interval, long[] before, long[] after, long heap, long afterGc) {
+        double seconds = interval / 1e9;
+        long total = 0;
+        StringBuilder perOperation = new StringBuilder();
+        for (int i = 0; i < after.length; i++) {
+            total += after[i] - before[i];
+            perOperation.append(String.format("%,10.0f", (after[i] - before[i]) / seconds));
+        }
+        System.out.printf("%5ds %,12.0f %s %,10d %,12d%n", TimeUnit.NANOSECONDS.toSeconds(elapsed),
+                          total / seconds, perOperation, heap >> 20, afterGc >> 20);
+    }
+    
+    private void printSummary(long elapsed, long startHeap, long endHeap, List<long[]> heapSamples) {
+        double seconds = elapsed / 1e9;
+        System.out.printf("%n%-8s %12s %12s %10s %10s %10s %10s %8s %6s%n", "작업", "성공", "건/초",
+                          "p50(µs)", "p99(µs)", "p99.9(µs)", "최대(µs)", "거절", "오류");
+        long total = 0;
+        for (Operation op : Operation.values()) {
+            LatencyHistogram histogram = latencies[op.ordinal()];
+            total += histogram.getCount();
+            System.out.printf("%-8s %,12d %,12.0f %,10.1f %,10.1f %,10.1f %,10.1f %,8d %,6d%n",
+                              op.name().toLowerCase(), histogram.getCount(), histogram.getCount() / seconds,
+                              histogram.valueAtPercentile(50) / 1e3, histogram.valueAtPercentile(99) / 1e3,
+                              histogram.valueAtPercentile(99.9) / 1e3, histogram.getMaxNanos() / 1e3,
+                              rejected[op.ordinal()].sum(), errors[op.ordinal()].sum());
+        }
+        System.out.printf("%-8s %,12d %,12.0f%n", "전체", total, total / seconds);
+        
+        System.out.printf("%n힙: 시작 %,dMB -> 끝 %,dMB (GC 후, %+,dMB)%n", startHeap >> 20, endHeap >> 20,
+                          (endHeap - startHeap) >> 20);
+        // 중간 보고의 GC 후 사용량으로 본 증가 추세 (앞 절반은 준비 직후의 흔들림이 있으므로 뒤 절반만)
+        if (heapSamples.size() >= 4) {
+            long[] first = heapSamples.get(heapSamples.size() / 2);
+            long[] last = heapSamples.get(heapSamples.size() - 1);
+            double minutes = (last[0] - first[0]) / 60e9;
+            System.out.printf("힙 증가 추세 (뒤 절반): 분당 %+,.1fMB%n", (last[1] - first[1]) / 1048576.0 / minutes);
+        }
+    }
+    
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+    
+    // 힙 영역마다 마지막 GC 직후 사용량의 합 (살아 있는 객체의 크기에 가깝다)
+    private static long heapAfterGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+}
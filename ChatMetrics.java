@@ -0,0 +1,57 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// ChatMetrics.java - 운영 중인 엔진의 지표 (카운터, 게이지, 작업별 지연 시간 분포)
+// 카운터와 분포는 처음에 이름으로 한 번 받아 필드에 들고 쓴다. 기록은 원자적 덧셈 몇 번이라 객체를 만들지 않고
+// 수십 나노초 안에 끝난다. 게이지는 값을 읽는 함수만 등록해 두고 내보낼 때 부른다 (방 수처럼 이미 있는 값).
+// 내보내는 형식은 text() 하나다: 한 줄에 "이름 값", 카운터/게이지/분포 순으로 각각 이름순. 분포는 이름 뒤에 .count, .p99_us 처럼 붙인다.
+// 값은 모두 엔진을 띄운 뒤의 누적이다.
+class ChatMetrics {
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentSkipListMap<>();
+    private final long startNanos = System.nanoTime();
+    
+    // 같은 이름이면 같은 카운터
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+    
+    // 같은 이름이면 같은 분포
+    public LatencyHistogram latency(String name) {
+        return latencies.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+    
+    // 같은 이름으로 다시 등록하면 새 함수로 바꾼다
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+    
+    public String text() {
+        StringBuilder out = new StringBuilder();
+        line(out, "uptime_seconds", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+        counters.forEach((name, counter) -> line(out, name, counter.sum()));
+        gauges.forEach((name, gauge) -> line(out, name, gauge.getAsLong()));
+        latencies.forEach((name, histogram) -> {
+            line(out, name + ".count", histogram.getCount());
+            micros(out, name + ".mean_us", histogram.getMeanNanos());
+            micros(out, name + ".p50_us", histogram.valueAtPercentile(50));
+            micros(out, name + ".p99_us", histogram.valueAtPercentile(99));
+            micros(out, name + ".p999_us", histogram.valueAtPercentile(99.9));
+            micros(out, name + ".max_us", histogram.getMaxNanos());
+        });
+        return out.toString();
+    }
+    
+    private static void line(StringBuilder out, String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+    }
+    
+    private static void micros(StringBuilder out, String name, double nanos) {
+        out.append(name).append(' ').append(String.format(Locale.ROOT, "%.1f", nanos / 1000)).append('\n');
+    }
+}
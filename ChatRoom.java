@@ -0,0 +1,342 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// ChatRoom.java - 채팅방 정보를 저장하는 클래스
+// 방의 상태를 바꾸는 메서드는 commit 이 이 방 객체를 잠근 채로 부르므로 방 하나에는 한 번에 한 스레드만 쓴다.
+// 읽기는 잠그지 않는다. 메시지 목록은 MessageStore 가, 나머지는 동시성 컬렉션과 volatile 필드가 일관성을 맡는다.
+class ChatRoom {
+    private final String roomId;
+    private volatile String roomName;
+    private final List<String> participants;
+    // 메시지는 열 배열과 세그먼트에 저장하고, 읽을 때 뷰 객체를 만든다
+    private final MessageStore messages;
+    // 첫 검색 때 만들고, 이후 검색 때마다 그 사이 추가/삭제된 메시지를 반영한다 (searchLock 으로 보호).
+    // 메시지를 보내는 쪽은 색인을 건드리지 않으므로 검색이 전송을 막지 않는다.
+    private final Object searchLock = new Object();
+    private MessageSearchIndex searchIndex;
+    private long indexedSeq;
+    private final Queue<Long> deletedSinceIndexed = new ConcurrentLinkedQueue<>();
+    // 고정된(삭제되지 않은) 메시지 순번. 화면에 고정 메시지를 보일 때 전체 기록을 훑지 않도록 따로 유지한다.
+    private final NavigableSet<Long> pinnedSeqs = new ConcurrentSkipListSet<>();
+    private volatile boolean isPinned;
+    private volatile Date lastMessageTime;
+    private final boolean isGroupChat;
+    // 방 안에서 단조 증가하는 메시지 순번과 참여자별 읽음 위치(순번)
+    private volatile long lastSeq;
+    private final Map<String, Long> readWatermarks;
+    // 읽음 위치 이후에 삭제되어 안읽음에서 빼야 하는 메시지 수 (삭제가 있을 때만 기록)
+    private final Map<String, Integer> unreadAdjustments;
+    // 이 방을 목록에 가진 사용자들의 방 순서 색인 (최근 메시지 시각이나 고정이 바뀌면 알린다)
+    private final List<RoomOrderIndex> orderIndexes;
+    
+    public ChatRoom(String roomId, String roomName, boolean isGroupChat) {
+        this.roomId = roomId;
+        this.roomName = roomName;
+        this.isGroupChat = isGroupChat;
+        this.participants = new CopyOnWriteArrayList<>();
+        this.messages = new MessageStore(roomId);
+        this.isPinned = false;
+        this.lastMessageTime = new Date();
+        this.lastSeq = 0;
+        this.readWatermarks = new ConcurrentHashMap<>();
+        this.unreadAdjustments = new ConcurrentHashMap<>();
+        this.orderIndexes = new CopyOnWriteArrayList<>();
+    }
+    
+    // Getters and Setters
+    public String getRoomId() { return roomId; }
+    public String getRoomName() { return roomName; }
+    public void setRoomName(String roomName) { this.roomName = roomName; }
+    public List<String> getParticipants() { return participants; }
+    public List<Message> getMessages() { return messages; }
+    public boolean isPinned() { return isPinned; }
+    public Date getLastMessageTime() { return lastMessageTime; }
+    public boolean isGroupChat() { return isGroupChat; }
+    public long getLastSeq() { return lastSeq; }
+    
+    public void setPinned(boolean pinned) {
+        isPinned = pinned;
+        updateOrderIndexes();
+    }
+    
+    public void setLastMessageTime(Date lastMessageTime) {
+        this.lastMessageTime = lastMessageTime;
+        updateOrderIndexes();
+    }
+    
+    void addOrderIndex(RoomOrderIndex index) {
+        if (!orderIndexes.contains(index)) {
+            orderIndexes.add(index);
+        }
+    }
+    
+    void removeOrderIndex(RoomOrderIndex index) {
+        orderIndexes.remove(index);
+    }
+    
+    private void updateOrderIndexes() {
+        for (RoomOrderIndex index : orderIndexes) {
+            index.update(this);
+        }
+    }
+    
+    public void addParticipant(String userId) {
+        if (!readWatermarks.containsKey(userId)) {
+            // 입장 이전의 메시지는 읽은 것으로 간주 (목록보다 먼저 넣어 참여자로 보이는 순간 읽음 위치가 있게 한다)
+            readWatermarks.put(userId, lastSeq);
+            participants.add(userId);
+        }
+    }
+    
+    public void removeParticipant(String userId) {
+        participants.remove(userId);
+        readWatermarks.remove(userId);
+        unreadAdjustments.remove(userId);
+    }
+    
+    // 메시지를 추가하고 순번을 반환. replyToSeq 는 답장 대상 순번 (답장이 아니면 0)
+    public long addMessage(String senderId, String content, long replyToSeq, long timestamp) {
+        lastSeq = messages.append(senderId, content, replyToSeq, timestamp, (byte) 0);
+        setLastMessageTime(new Date(timestamp));
+        
+        // 보낸 사람은 방의 모든 메시지를 읽은 상태
+        markAllRead(senderId);
+        return lastSeq;
+    }
+    
+    // 같은 사람이 보낸 메시지 여러 건을 한 번에 추가하고 마지막 순번을 반환.
+    // 최근 시각(방 목록 순서)과 보낸 사람의 읽음 위치는 묶음 끝에서 한 번만 바꾼다.
+    public long addMessages(String senderId, List<String> contents, long timestamp) {
+        lastSeq = messages.appendAll(senderId, contents, timestamp);
+        setLastMessageTime(new Date(timestamp));
+        markAllRead(senderId);
+        return lastSeq;
+    }
+    
+    // 참여자의 읽음 위치를 마지막 메시지 순번으로 옮긴다
+    public void markAllRead(String userId) {
+        markReadUpTo(userId, lastSeq);
+    }
+    
+    // 읽음 위치를 seq 까지 옮긴다 (뒤로 가지는 않음). 로그 재적용 시 같은 기록을 여러 번 적용해도 결과가 같다.
+    // 안읽음 보정값은 읽음 위치 뒤에서 삭제된 메시지 수이므로, 중간까지만 읽으면 새로 읽은 구간의 삭제 수만큼 줄인다.
+    public void markReadUpTo(String userId, long seq) {
+        Long watermark = readWatermarks.get(userId);
+        if (watermark == null || watermark >= seq) {
+            return;
+        }
+        long upTo = Math.min(seq, lastSeq);
+        readWatermarks.put(userId, upTo);
+        if (unreadAdjustments.isEmpty()) {
+            return;
+        }
+        Integer adjustment = unreadAdjustments.get(userId);
+        if (adjustment == null) {
+            return;
+        }
+        int remaining = upTo >= lastSeq ? 0 : adjustment - messages.countDeleted(watermark + 1, upTo);
+        if (remaining > 0) {
+            unreadAdjustments.put(userId, remaining);
+        } else {
+            unreadAdjustments.remove(userId);
+        }
+    }
+    
+    // 스냅샷 복구용: 읽음 상태 처리 없이 메시지를 순서대로 추가
+    void restoreMessage(String senderId, String content, long replyToSeq, long timestamp, byte flags) {
+        lastSeq = messages.append(senderId, content, replyToSeq, timestamp, flags);
+        if ((flags & (Message.PINNED | Message.DELETED)) == Message.PINNED) {
+            pinnedSeqs.add(lastSeq);
+        }
+    }
+    
+    // 스냅샷 복구용: 참여자의 읽음 위치와 안읽음 보정값을 그대로 설정
+    void restoreReadState(String userId, long watermark, int adjustment) {
+        readWatermarks.put(userId, watermark);
+        if (adjustment != 0) {
+            unreadAdjustments.put(userId, adjustment);
+        } else {
+            unreadAdjustments.remove(userId);
+        }
+    }
+    
+    // 순번은 1부터 시작하고 메시지는 삭제돼도 목록에서 빠지지 않으므로 seq - 1 이 곧 위치
+    public Message getMessageBySeq(long seq) {
+        return messages.getBySeq(seq);
+    }
+    
+    // 가장 최근의 (삭제되지 않은) 메시지 limit 개, 오래된 순
+    public List<Message> getLatestMessages(int limit) {
+        return getMessagesBefore(lastSeq + 1, limit);
+    }
+    
+    // beforeSeq 바로 앞까지의 (삭제되지 않은) 메시지 limit 개, 오래된 순
+    public List<Message> getMessagesBefore(long beforeSeq, int limit) {
+        ArrayDeque<Message> page = new ArrayDeque<>(Math.min(limit, 64));
+        // 통째로 삭제되어 접힌 청크는 한 번에 건너뛴다
+        for (long seq = messages.skipCollapsedBackward(Math.min(beforeSeq, lastSeq + 1) - 1);
+             seq >= 1 && page.size() < limit; seq = messages.skipCollapsedBackward(seq - 1)) {
+            Message message = messages.getBySeq(seq);
+            if (!message.isDeleted()) {
+                page.addFirst(message);
+            }
+        }
+        return new ArrayList<>(page);
+    }
+    
+    // afterSeq 바로 다음부터의 (삭제되지 않은) 메시지 limit 개, 오래된 순
+    public List<Message> getMessagesAfter(long afterSeq, int limit) {
+        List<Message> page = new ArrayList<>(Math.min(limit, 64));
+        long last = lastSeq;
+        for (long seq = messages.skipCollapsedForward(Math.max(afterSeq, 0) + 1);
+             seq <= last && page.size() < limit; seq = messages.skipCollapsedForward(seq + 1)) {
+            Message message = messages.getBySeq(seq);
+            if (!message.isDeleted()) {
+                page.add(message);
+            }
+        }
+        return page;
+    }
+    
+    // 고정된 메시지들, 오래된 순
+    public List<Message> getPinnedMessages() {
+        List<Message> pinned = new ArrayList<>(pinnedSeqs.size());
+        for (long seq : pinnedSeqs) {
+            pinned.add(messages.getBySeq(seq));
+        }
+        return pinned;
+    }
+    
+    // 메시지 객체는 읽기용 뷰이므로 상태는 저장소를 거쳐 바꾼다
+    public void setMessagePinned(long seq, boolean pinned) {
+        messages.setPinned(seq, pinned);
+        Message message = messages.getBySeq(seq);
+        if (pinned && message != null && !message.isDeleted()) {
+            pinnedSeqs.add(seq);
+        } else {
+            pinnedSeqs.remove(seq);
+        }
+    }
+    
+    public void setMessageBookmarked(long seq, boolean bookmarked) {
+        messages.setBookmarked(seq, bookmarked);
+    }
+    
+    // 스냅샷용: 현재 메시지 목록을 다른 스레드에서 읽을 수 있게 고정
+    MessageStore.Frozen freezeMessages() {
+        return messages.freeze();
+    }
+    
+    public long getReadWatermark(String userId) {
+        return readWatermarks.getOrDefault(userId, 0L);
+    }
+    
+    public int getUnreadAdjustment(String userId) {
+        return unreadAdjustments.getOrDefault(userId, 0);
+    }
+    
+    public boolean isParticipant(String userId) {
+        return readWatermarks.containsKey(userId);
+    }
+    
+    public boolean hasRead(String userId, long seq) {
+        Long watermark = readWatermarks.get(userId);
+        return watermark != null && watermark >= seq;
+    }
+    
+    // 해당 순번의 메시지를 읽은 참여자 목록 (메시지 자체는 보지 않는다)
+    public List<String> getReaders(long seq) {
+        List<String> readers = new ArrayList<>();
+        for (String participantId : participants) {
+            if (hasRead(participantId, seq)) {
+                readers.add(participantId);
+            }
+        }
+        return readers;
+    }
+    
+    // 메시지를 삭제 처리하고, 아직 읽지 않은 참여자의 안읽음 수에서 뺀다
+    public void deleteMessage(long seq) {
+        Message msg = messages.getBySeq(seq);
+        if (msg == null || msg.isDeleted()) {
+            return;
+        }
+        messages.setDeleted(msg.getSeq(), true);
+        deletedSinceIndexed.add(msg.getSeq());
+        pinnedSeqs.remove(msg.getSeq());
+        
+        for (Map.Entry<String, Long> entry : readWatermarks.entrySet()) {
+            if (msg.getSeq() > entry.getValue()) {
+                unreadAdjustments.merge(entry.getKey(), 1, Integer::sum);
+            }
+        }
+    }
+    
+    // 검색어를 모두 포함하는 삭제되지 않은 메시지를 최신순으로 offset 부터 limit 개 반환
+    public List<Message> search(String query, int offset, int limit) {
+        return search(query, Long.MAX_VALUE, offset, limit);
+    }
+    
+    // 같은 검색을 순번 beforeSeq 앞에서부터 이어간다 (여러 방의 결과를 병합할 때 방마다 조금씩 꺼낸다)
+    public List<Message> searchBefore(String query, long beforeSeq, int limit) {
+        return search(query, beforeSeq, 0, limit);
+    }
+    
+    private List<Message> search(String query, long beforeSeq, int offset, int limit) {
+        List<Message> results = new ArrayList<>();
+        synchronized (searchLock) {
+            if (searchIndex == null) {
+                searchIndex = new MessageSearchIndex(this);
+            }
+            // 삭제를 먼저 반영한다. 아직 색인되지 않은 메시지의 삭제는 아래에서 건너뛰므로 상관없다.
+            removeDeletedFromSearchIndex();
+            long last = lastSeq;
+            for (long seq = messages.skipCollapsedForward(indexedSeq + 1); seq <= last;
+                 seq = messages.skipCollapsedForward(seq + 1)) {
+                Message message = getMessageBySeq(seq);
+                if (!message.isDeleted()) {
+                    searchIndex.add(message);
+                }
+            }
+            indexedSeq = last;
+            for (long seq : searchIndex.search(query, beforeSeq, offset, limit)) {
+                Message message = getMessageBySeq(seq);
+                // 색인에 반영된 뒤 다른 스레드가 지운 메시지
+                if (!message.isDeleted()) {
+                    results.add(message);
+                }
+            }
+        }
+        return results;
+    }
+    
+    // searchLock 을 잡은 채로 부른다. 색인에서 지울 때 본문의 단어를 쓰므로 본문이 압축되기 전에 해야 한다.
+    private void removeDeletedFromSearchIndex() {
+        Long deletedSeq;
+        while ((deletedSeq = deletedSinceIndexed.poll()) != null) {
+            if (searchIndex != null && deletedSeq <= indexedSeq) {
+                searchIndex.remove(getMessageBySeq(deletedSeq));
+            }
+        }
+    }
+    
+    // 삭제된 메시지를 정리하는 압축을 한 단계 진행하고 회수한 바이트 수를 반환 (할 것이 없으면 0).
+    // MessageCompactor 가 방을 잠근 채로 부른다.
+    long compactMessages() {
+        synchronized (searchLock) {
+            removeDeletedFromSearchIndex();
+        }
+        return messages.compactStep();
+    }
+    
+    public int getUnreadCount(String userId) {
+        Long watermark = readWatermarks.get(userId);
+        if (watermark == null) {
+            return 0;
+        }
+        return Math.max(0, (int) (lastSeq - watermark) - unreadAdjustments.getOrDefault(userId, 0));
+    }
+}
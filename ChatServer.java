@@ -0,0 +1,635 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ChatServer.java - 여러 사용자가 TCP 로 동시에 접속하는 채팅 서버
+// 셀렉터 스레드 하나가 모든 접속의 읽기/쓰기와 줄 나누기만 맡고, 명령은 작업 스레드 풀에서 처리한다.
+// 변경은 디스크 기록(fsync)을 기다리므로 셀렉터에서 처리하면 그동안 모든 접속이 멈추고, 여러 요청의 기록을 한 번에
+// 모으지도 못한다. 한 접속의 명령은 받은 순서대로 하나씩 처리하고 응답도 그 순서로 보낸다.
+// 명령은 콘솔 메뉴와 같은 ChatService 작업으로 처리하므로 검사와 오류 문구도 콘솔과 같다. 접속마다 로그인한 사용자 같은 세션 상태를 따로 두고,
+// 읽기 버퍼는 공유하므로 유휴 접속은 채널과 작은 세션 객체만 차지한다.
+// 새 메시지 알림은 MessageDispatcher 가 세션마다 정해진 크기의 큐에 넣어 두고, 셀렉터 스레드가 깨어나 보낸다.
+// 출력이 밀린 세션에는 더 넣지 않으므로 그 큐가 넘치면 방별 누락 수(GAP)로 합쳐진다.
+// (접속 수만큼 파일 디스크립터가 필요하다. 5만 접속이면 ulimit -n 을 그 이상으로 올린다.)
+//
+// 프로토콜: UTF-8 텍스트 한 줄이 요청 하나이고, 필드는 탭으로 구분한다. 필드 안의 \, 탭, 줄바꿈은 \\, \t, \n 으로 쓴다.
+//   PING                                             -> OK
+//   REGISTER 아이디 비밀번호 닉네임 [이메일] [전화번호]    -> OK
+//   LOGIN 아이디 비밀번호                              -> OK 닉네임
+//   LOGOUT                                           -> OK
+//   ROOMS [개수]                                     -> ROOM 방아이디 이름 안읽음수 마지막순번 ... 후 OK 개수
+//                                                       (고정된 방 먼저, 최근 메시지 순. 개수를 주면 앞에서부터 그만큼만)
+//   OPEN 친구아이디                                    -> OK 방아이디 (1:1 방, 없으면 만든다)
+//   SEND 방아이디 내용 [답장대상순번]                    -> OK 순번
+//   SENDALL 방아이디 내용 [내용...]                      -> OK 첫순번 개수 (한 번에 기록하고 한 번에 알림, 봇/브리지용)
+//   HISTORY 방아이디 [개수] [이 순번 이전]               -> MSG ... 후 OK 개수
+//   READ 방아이디 [순번]                               -> OK
+//   SEARCH 방아이디 검색어 [건너뛸 개수]                 -> MSG ... 후 OK 개수
+//   METRICS                                          -> METRIC 이름 값 ... 후 OK 개수 (로그인 없이, ChatMetrics 참고)
+//   QUIT                                             -> OK 후 연결 종료
+// 실패하면 ERR 사유. 로그인한 참여자에게는 새 메시지가 올 때마다 같은 형식의 MSG 줄을 보낸다.
+//   MSG 방아이디 순번 보낸사람 시각(ms) 답장대상순번 내용
+// 알림이 밀려 일부를 건너뛰었으면 방마다 GAP 줄 하나를 보낸다 (HISTORY 로 다시 받으면 된다).
+//   GAP 방아이디 놓친수 마지막순번
+// chat.push.policy: 알림 큐가 넘칠 때 정책 (COALESCE 기본, DROP_OLDEST, DISCONNECT)
+// chat.server.workers: 명령을 처리하는 스레드 수 (기본 32)
+class ChatServer {
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    // 보내지 못하고 쌓인 출력이 이보다 크면 느린 클라이언트로 보고 연결을 끊는다
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+    // 쌓인 출력이 이보다 크면 알림을 더 꺼내지 않고, 다 보낸 뒤에 이어 보낸다
+    private static final int PUSH_PAUSE_BYTES = 256 * 1024;
+    private static final int DEFAULT_HISTORY = 50;
+    private static final int MAX_HISTORY = 500;
+    private static final int SEARCH_PAGE_SIZE = 20;
+    private static final int DEFAULT_WORKERS = 32;
+    // 처리를 기다리는 요청이 이보다 많으면 그 접속은 읽기를 멈춘다
+    private static final int MAX_QUEUED_REQUESTS = 64;
+    
+    private final ChatService service;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final SelectionKey acceptKey;
+    // 파일 디스크립터가 모자라 접속을 받지 못하면 연결이 하나 닫힐 때까지 받기를 멈춘다
+    private boolean acceptPaused;
+    // 셀렉터 스레드만 쓰므로 접속마다 두지 않는다
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+    private final MessageDispatcher.OverflowPolicy pushPolicy;
+    // 알림이 들어온 세션 (분배 스레드가 넣고 셀렉터 스레드가 꺼낸다)
+    private final Queue<Session> pushReady = new ConcurrentLinkedQueue<>();
+    // 같은 알림을 여러 세션에 보낼 때 줄을 한 번만 만든다 (한 번 돌 때마다 비움)
+    private final Map<MessageDispatcher.Delivery, byte[]> encodedPushes = new IdentityHashMap<>();
+    // 명령 처리 스레드들과, 응답이 나온 세션 (작업 스레드가 넣고 셀렉터 스레드가 꺼낸다)
+    private final ExecutorService workers;
+    private final Queue<Session> replyReady = new ConcurrentLinkedQueue<>();
+    // 열린 접속 수 (지표를 내보내는 스레드가 읽는다)
+    private final AtomicInteger openSessions = new AtomicInteger();
+    
+    public ChatServer(ChatService service, int port) throws IOException {
+        this.service = service;
+        pushPolicy = MessageDispatcher.OverflowPolicy.valueOf(System.getProperty("chat.push.policy", "COALESCE"));
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Integer.getInteger("chat.server.workers", DEFAULT_WORKERS), task -> {
+            Thread thread = new Thread(task, "chat-server-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        service.getMetrics().gauge("sessions.tcp", openSessions::get);
+    }
+    
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+    
+    public void run() throws IOException {
+        System.out.println("채팅 서버가 포트 " + getPort() + " 에서 접속을 기다립니다.");
+        while (true) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Session session = (Session) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        read(session);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(session);
+                    }
+                } catch (IOException e) {
+                    close(session);
+                }
+            }
+            deliverReplies();
+            deliverPushes();
+        }
+    }
+    
+    private void accept() {
+        SocketChannel channel;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Session session = new Session(channel);
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+                openSessions.incrementAndGet();
+            }
+        } catch (IOException e) {
+            System.out.println("❌ 접속을 받을 수 없어 잠시 멈춥니다: " + e.getMessage());
+            acceptPaused = true;
+            acceptKey.interestOps(0);
+        }
+    }
+    
+    // 읽은 바이트를 줄 단위로 잘라 처리한다. 줄바꿈이 아직 오지 않은 부분은 세션에 남겨 둔다.
+    private void read(Session session) throws IOException {
+        readBuffer.clear();
+        if (session.channel.read(readBuffer) < 0) {
+            close(session);
+            return;
+        }
+        readBuffer.flip();
+        while (readBuffer.hasRemaining() && session.isOpen() && !session.closing) {
+            int newline = -1;
+            for (int i = readBuffer.position(); i < readBuffer.limit(); i++) {
+                if (readBuffer.get(i) == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            int length = (newline < 0 ? readBuffer.limit() : newline) - readBuffer.position();
+            if (session.partialLength + length > MAX_LINE_BYTES) {
+                send(session, "ERR\t요청이 너무 깁니다.\n".getBytes(StandardCharsets.UTF_8));
+                quit(session);
+                return;
+            }
+            session.appendPartial(readBuffer, length);
+            if (newline < 0) {
+                return;
+            }
+            readBuffer.get();
+            submit(session, session.takeLine());
+        }
+    }
+    
+    // 요청을 세션의 대기열에 넣고, 처리 중인 작업이 없으면 새로 맡긴다
+    private void submit(Session session, String line) {
+        boolean start;
+        synchronized (session) {
+            session.requests.add(line);
+            start = !session.processing;
+            session.processing = true;
+            if (session.requests.size() > MAX_QUEUED_REQUESTS) {
+                session.readPaused = true;
+                session.key.interestOps(session.key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+        if (start) {
+            workers.execute(() -> process(session));
+        }
+    }
+    
+    // 작업 스레드에서 세션의 요청을 대기열이 빌 때까지 차례로 처리한다
+    private void process(Session session) {
+        while (true) {
+            String line;
+            synchronized (session) {
+                line = session.quitRequested || !session.isOpen() ? null : session.requests.poll();
+                if (line == null) {
+                    session.requests.clear();
+                    session.processing = false;
+                    return;
+                }
+            }
+            String[] fields = split(line);
+            if (fields[0].isEmpty()) {
+                continue;
+            }
+            session.replies.add(handle(session, fields));
+            // 응답을 넣은 뒤에 표시해야 셀렉터 스레드가 QUIT 의 응답을 보내기 전에 닫지 않는다
+            if (fields[0].equalsIgnoreCase("QUIT")) {
+                session.quitRequested = true;
+            }
+            replyReady.add(session);
+            selector.wakeup();
+        }
+    }
+    
+    // 작업 스레드가 만든 응답을 보내고, 대기열이 줄었으면 읽기를 다시 시작한다
+    private void deliverReplies() {
+        Session session;
+        while ((session = replyReady.poll()) != null) {
+            byte[] reply;
+            while ((reply = session.replies.poll()) != null) {
+                send(session, reply);
+            }
+            if (session.quitRequested) {
+                // 위에서 다 보낸 뒤에 작업 스레드가 QUIT 의 응답을 넣고 표시했을 수 있다. 표시는 응답을 넣은 뒤에
+                // 하므로, 표시를 본 뒤에 한 번 더 비우면 QUIT 의 응답까지 보낸다.
+                while ((reply = session.replies.poll()) != null) {
+                    send(session, reply);
+                }
+                quit(session);
+                continue;
+            }
+            synchronized (session) {
+                if (session.readPaused && session.isOpen() && session.requests.size() <= MAX_QUEUED_REQUESTS / 2) {
+                    session.readPaused = false;
+                    session.key.interestOps(session.key.interestOps() | SelectionKey.OP_READ);
+                }
+            }
+        }
+    }
+    
+    // 요청 한 줄을 처리하고 응답을 반환한다
+    private byte[] handle(Session session, String[] fields) {
+        StringBuilder out = new StringBuilder();
+        try {
+            execute(session, fields[0].toUpperCase(), fields, out);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            out.setLength(0);
+            out.append("ERR\t").append(escape(e.getMessage())).append('\n');
+        } catch (RuntimeException e) {
+            System.out.println("❌ 요청 처리 중 오류가 발생했습니다: " + e);
+            out.setLength(0);
+            out.append("ERR\t서버 오류가 발생했습니다.\n");
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private void execute(Session session, String command, String[] fields, StringBuilder out) {
+        switch (command) {
+            case "PING":
+            case "QUIT":
+                out.append("OK\n");
+                return;
+            case "REGISTER":
+                service.register(arg(fields, 1), arg(fields, 2), arg(fields, 3), optional(fields, 4), optional(fields, 5));
+                out.append("OK\n");
+                return;
+            case "LOGIN": {
+                User user = service.login(arg(fields, 1), arg(fields, 2));
+                // 셀렉터 스레드가 연결을 닫으며 로그아웃하는 것과 겹치지 않게 한다
+                synchronized (session) {
+                    logout(session);
+                    if (!session.isOpen()) {
+                        return;
+                    }
+                    session.user = user;
+                    session.subscription = service.getDispatcher().subscribe(user.getUserId(), pushPolicy, () -> {
+                        pushReady.add(session);
+                        selector.wakeup();
+                    });
+                }
+                out.append("OK\t").append(escape(user.getNickname())).append('\n');
+                return;
+            }
+            case "METRICS": {
+                int count = 0;
+                for (String metric : service.getMetrics().text().split("\n")) {
+                    out.append("METRIC\t").append(metric.replace(' ', '\t')).append('\n');
+                    count++;
+                }
+                out.append("OK\t").append(count).append('\n');
+                return;
+            }
+            default:
+                break;
+        }
+        
+        User user = session.user;
+        if (user == null) {
+            throw new IllegalArgumentException("로그인이 필요합니다.");
+        }
+        switch (command) {
+            case "LOGOUT":
+                logout(session);
+                out.append("OK\n");
+                break;
+            case "ROOMS": {
+                int limit = (int) Math.min(Integer.MAX_VALUE, Math.max(1, number(optional(fields, 1), Integer.MAX_VALUE)));
+                int count = 0;
+                for (ChatService.RoomSummary room : service.listRooms(user.getUserId(), 0, limit).getItems()) {
+                    out.append("ROOM\t").append(escape(room.getRoomId()))
+                       .append('\t').append(escape(room.getDisplayName()))
+                       .append('\t').append(room.getUnreadCount())
+                       .append('\t').append(room.getLastSeq()).append('\n');
+                    count++;
+                }
+                out.append("OK\t").append(count).append('\n');
+                break;
+            }
+            case "OPEN": {
+                ChatService.RoomSummary room = service.openDirectRoom(user.getUserId(), arg(fields, 1));
+                out.append("OK\t").append(escape(room.getRoomId())).append('\n');
+                break;
+            }
+            case "SEND": {
+                Message message = service.sendMessage(arg(fields, 1), user.getUserId(), arg(fields, 2),
+                                                      number(optional(fields, 3), 0), session.subscription);
+                out.append("OK\t").append(message.getSeq()).append('\n');
+                break;
+            }
+            case "SENDALL": {
+                List<Message> messages = service.sendMessages(arg(fields, 1), user.getUserId(),
+                                                              Arrays.asList(fields).subList(2, fields.length),
+                                                              session.subscription);
+                out.append("OK\t").append(messages.get(0).getSeq()).append('\t').append(messages.size()).append('\n');
+                break;
+            }
+            case "HISTORY": {
+                String roomId = arg(fields, 1);
+                int limit = (int) Math.min(MAX_HISTORY, Math.max(1, number(optional(fields, 2), DEFAULT_HISTORY)));
+                long before = number(optional(fields, 3), Long.MAX_VALUE);
+                List<Message> page = service.messagesBefore(roomId, user.getUserId(), before, limit);
+                for (Message message : page) {
+                    appendMessage(out, roomId, message);
+                }
+                out.append("OK\t").append(page.size()).append('\n');
+                break;
+            }
+            case "READ": {
+                service.markRead(arg(fields, 1), user.getUserId(), number(optional(fields, 2), Long.MAX_VALUE));
+                out.append("OK\n");
+                break;
+            }
+            case "SEARCH": {
+                String roomId = arg(fields, 1);
+                String query = arg(fields, 2);
+                int offset = (int) Math.max(0, number(optional(fields, 3), 0));
+                List<Message> results = service.search(roomId, user.getUserId(), query, offset, SEARCH_PAGE_SIZE).getItems();
+                for (Message message : results) {
+                    appendMessage(out, roomId, message);
+                }
+                out.append("OK\t").append(results.size()).append('\n');
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("알 수 없는 명령입니다: " + command);
+        }
+    }
+    
+    // 알림이 들어온 세션들에 쌓인 알림을 보낸다
+    private void deliverPushes() {
+        Session session;
+        while ((session = pushReady.poll()) != null) {
+            deliverPushes(session);
+        }
+        encodedPushes.clear();
+    }
+    
+    private void deliverPushes(Session session) {
+        MessageDispatcher.Subscription subscription = session.subscription;
+        if (!session.isOpen() || subscription == null) {
+            return;
+        }
+        if (subscription.isOverflowed()) {
+            close(session);
+            return;
+        }
+        // 출력이 밀린 세션은 flush 가 따라잡은 뒤 다시 부른다. 그동안은 구독 큐가 넘침 정책을 맡는다.
+        if (session.pendingBytes > PUSH_PAUSE_BYTES) {
+            session.pushPaused = true;
+            return;
+        }
+        for (MessageDispatcher.Delivery delivery : subscription.drain()) {
+            send(session, encodedPushes.computeIfAbsent(delivery, ChatServer::encode));
+        }
+    }
+    
+    private static byte[] encode(MessageDispatcher.Delivery delivery) {
+        StringBuilder out = new StringBuilder();
+        if (delivery.isGap()) {
+            out.append("GAP\t").append(escape(delivery.getRoomId()))
+               .append('\t').append(delivery.getMissedCount())
+               .append('\t').append(delivery.getSeq()).append('\n');
+        } else {
+            out.append("MSG\t").append(escape(delivery.getRoomId()))
+               .append('\t').append(delivery.getSeq())
+               .append('\t').append(escape(delivery.getSenderId()))
+               .append('\t').append(delivery.getTimestamp())
+               .append('\t').append(delivery.getReplyToSeq())
+               .append('\t').append(escape(delivery.getContent())).append('\n');
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static void appendMessage(StringBuilder out, String roomId, Message message) {
+        out.append("MSG\t").append(escape(roomId))
+           .append('\t').append(message.getSeq())
+           .append('\t').append(escape(message.getSenderId()))
+           .append('\t').append(message.getTimestampMillis())
+           .append('\t').append(message.getReplyToSeq())
+           .append('\t').append(escape(message.getContent())).append('\n');
+    }
+    
+    // 바로 보낼 수 있는 만큼 보내고, 나머지는 쓰기 가능해질 때 보낸다
+    private void send(Session session, byte[] data) {
+        if (!session.isOpen()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (session.pending == null) {
+            try {
+                session.channel.write(buffer);
+            } catch (IOException e) {
+                close(session);
+                return;
+            }
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+            session.pending = new ArrayDeque<>();
+            session.key.interestOps(session.key.interestOps() | SelectionKey.OP_WRITE);
+        }
+        session.pending.add(buffer);
+        session.pendingBytes += buffer.remaining();
+        if (session.pendingBytes > MAX_PENDING_BYTES) {
+            close(session);
+        }
+    }
+    
+    private void flush(Session session) throws IOException {
+        while (!session.pending.isEmpty()) {
+            ByteBuffer buffer = session.pending.peek();
+            session.pendingBytes -= session.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            session.pending.poll();
+        }
+        session.pending = null;
+        session.key.interestOps(session.key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (session.closing) {
+            close(session);
+            return;
+        }
+        if (session.pushPaused) {
+            session.pushPaused = false;
+            pushReady.add(session);
+        }
+    }
+    
+    // 남은 출력을 다 보낸 뒤 연결을 닫는다. 그동안 들어오는 요청은 읽지 않는다.
+    private void quit(Session session) {
+        if (!session.isOpen()) {
+            return;
+        }
+        if (session.pending == null) {
+            close(session);
+            return;
+        }
+        session.closing = true;
+        session.key.interestOps(SelectionKey.OP_WRITE);
+    }
+    
+    // 작업 스레드(LOGIN, LOGOUT)와 셀렉터 스레드(연결 종료)가 부른다
+    private void logout(Session session) {
+        synchronized (session) {
+            if (session.user == null) {
+                return;
+            }
+            session.subscription.close();
+            session.subscription = null;
+            session.user = null;
+        }
+    }
+    
+    private void close(Session session) {
+        if (!session.isOpen()) {
+            return;
+        }
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            // 이미 끊긴 연결
+        }
+        // 채널을 먼저 닫아야 이후에 처리되는 LOGIN 이 구독을 남기지 않는다
+        logout(session);
+        openSessions.decrementAndGet();
+        if (acceptPaused) {
+            acceptPaused = false;
+            acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+    
+    private static String arg(String[] fields, int index) {
+        if (index >= fields.length) {
+            throw new IllegalArgumentException("인자가 부족합니다.");
+        }
+        return fields[index];
+    }
+    
+    private static String optional(String[] fields, int index) {
+        return index < fields.length ? fields[index] : "";
+    }
+    
+    private static long number(String field, long defaultValue) {
+        if (field.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(field);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("숫자가 아닙니다: " + field);
+        }
+    }
+    
+    // 탭으로 필드를 나누고 이스케이프를 푼다
+    static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                field.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+    
+    static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('\t') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+    
+    // 접속 하나의 상태. 입출력 상태는 셀렉터 스레드만 쓰고, 요청 대기열과 로그인 상태는 세션을 잠그고 다룬다.
+    private static class Session {
+        final SocketChannel channel;
+        SelectionKey key;
+        // 로그인한 사용자와 알림 구독 (로그인 전에는 null). 작업 스레드가 바꾸고 셀렉터 스레드가 읽는다.
+        volatile User user;
+        volatile MessageDispatcher.Subscription subscription;
+        // 처리를 기다리는 요청, 작업 스레드가 처리 중인지, 대기열이 길어 읽기를 멈췄는지
+        final ArrayDeque<String> requests = new ArrayDeque<>();
+        boolean processing;
+        boolean readPaused;
+        // 작업 스레드가 만든 응답 (셀렉터 스레드가 꺼내 보낸다)
+        final Queue<byte[]> replies = new ConcurrentLinkedQueue<>();
+        // QUIT 을 처리함. 응답을 보낸 뒤 닫는다.
+        volatile boolean quitRequested;
+        // 출력이 밀려 알림 보내기를 멈춤
+        boolean pushPaused;
+        // 줄바꿈이 아직 오지 않은 입력
+        byte[] partial;
+        int partialLength;
+        // 아직 보내지 못한 출력
+        ArrayDeque<ByteBuffer> pending;
+        int pendingBytes;
+        boolean closing;
+        
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+        
+        boolean isOpen() {
+            return channel.isOpen();
+        }
+        
+        void appendPartial(ByteBuffer source, int length) {
+            if (partial == null || partialLength + length > partial.length) {
+                int capacity = Math.max(256, Math.max(partialLength + length, partial == null ? 0 : partial.length * 2));
+                partial = partial == null ? new byte[capacity] : Arrays.copyOf(partial, capacity);
+            }
+            source.get(partial, partialLength, length);
+            partialLength += length;
+        }
+        
+        String takeLine() {
+            int length = partialLength;
+            if (length > 0 && partial[length - 1] == '\r') {
+                length--;
+            }
+            String line = new String(partial, 0, length, StandardCharsets.UTF_8);
+            partialLength = 0;
+            // 긴 줄을 받은 뒤에는 버퍼를 놓아 유휴 접속이 큰 배열을 붙잡지 않게 한다
+            if (partial.length > 1024) {
+                partial = null;
+            }
+            return line;
+        }
+    }
+}
@@ -0,0 +1,747 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// ChatService.java - 채팅 엔진의 작업을 입출력 없이 부르는 API
+// 콘솔 메뉴(ChatApplication), TCP 서버(ChatServer), 부하 생성기가 모두 이 객체를 거쳐 엔진을 쓴다.
+// 사용자와 방은 아이디로 가리키고, 방에 대한 작업은 그 방의 참여자만 할 수 있다. 상태는 엔진(ChatApplication)에 있고
+// 이 객체는 검사와 변경 기록 순서만 맡으므로 여러 스레드가 하나를 같이 쓴다.
+// 입력이 잘못되면 IllegalArgumentException, 저장에 실패하면 IllegalStateException 을 던진다.
+// 예외 메시지는 사용자에게 그대로 보여 줄 문장이다.
+// 자주 불리는 작업(전송, 메시지 페이지, 검색, 안읽은 수)은 성공한 호출의 지연 시간을 ChatMetrics 에 기록한다.
+class ChatService {
+    // sendMessages 한 번에 보낼 수 있는 메시지 수와 내용 길이 합 (변경 기록 한 건에 담기므로 레코드 크기 한도보다 작게)
+    static final int MAX_BATCH_MESSAGES = 1000;
+    static final int MAX_BATCH_CHARS = 4 * 1024 * 1024;
+    
+    private final ChatApplication engine;
+    private final UserStore users;
+    private final Map<String, ChatRoom> chatRooms;
+    private final MessageDispatcher dispatcher;
+    private final DisplayNames displayNames;
+    private final ChatMetrics metrics;
+    private final LatencyHistogram sendLatency;
+    private final LatencyHistogram batchSendLatency;
+    private final LatencyHistogram historyLatency;
+    private final LatencyHistogram searchLatency;
+    private final LatencyHistogram unreadLatency;
+    private final LongAdder deletedMessages;
+    private final LongAdder logins;
+    
+    ChatService(ChatApplication engine, UserStore users, Map<String, ChatRoom> chatRooms,
+                MessageDispatcher dispatcher, DisplayNames displayNames, ChatMetrics metrics) {
+        this.engine = engine;
+        this.users = users;
+        this.chatRooms = chatRooms;
+        this.dispatcher = dispatcher;
+        this.displayNames = displayNames;
+        this.metrics = metrics;
+        // 이름은 콘솔 메뉴의 같은 작업 이름을 따른다
+        this.sendLatency = metrics.latency("sendMessage");
+        this.batchSendLatency = metrics.latency("sendMessages");
+        this.historyLatency = metrics.latency("showMessages");
+        this.searchLatency = metrics.latency("searchMessages");
+        this.unreadLatency = metrics.latency("getUnreadCount");
+        this.deletedMessages = metrics.counter("messages.deleted");
+        this.logins = metrics.counter("logins");
+    }
+    
+    // 사용자에게 보일 방 한 줄 (목록, 정렬, 방 만들기의 결과). 만든 시점의 값이다.
+    static final class RoomSummary {
+        private final String roomId;
+        private final String roomName;
+        private final String displayName;
+        private final boolean groupChat;
+        private final boolean pinned;
+        private final int unreadCount;
+        private final long lastSeq;
+        private final Date lastMessageTime;
+        
+        RoomSummary(ChatRoom room, String displayName, int unreadCount) {
+            this.roomId = room.getRoomId();
+            this.roomName = room.getRoomName();
+            this.displayName = displayName;
+            this.groupChat = room.isGroupChat();
+            this.pinned = room.isPinned();
+            this.unreadCount = unreadCount;
+            this.lastSeq = room.getLastSeq();
+            this.lastMessageTime = room.getLastMessageTime();
+        }
+        
+        public String getRoomId() { return roomId; }
+        // 방에 저장된 이름과, 보는 사용자 기준 이름 (1:1 방은 상대방 닉네임)
+        public String getRoomName() { return roomName; }
+        public String getDisplayName() { return displayName; }
+        public boolean isGroupChat() { return groupChat; }
+        public boolean isPinned() { return pinned; }
+        public int getUnreadCount() { return unreadCount; }
+        public long getLastSeq() { return lastSeq; }
+        public Date getLastMessageTime() { return lastMessageTime; }
+    }
+    
+    // 목록 한 페이지와 그 뒤에 더 있는지 여부
+    static final class Page<T> {
+        private final List<T> items;
+        private final boolean hasMore;
+        
+        Page(List<T> items, boolean hasMore) {
+            this.items = items;
+            this.hasMore = hasMore;
+        }
+        
+        public List<T> getItems() { return items; }
+        public boolean hasMore() { return hasMore; }
+        
+        // limit + 1 개를 조회한 결과에서 페이지를 만든다
+        static <T> Page<T> of(List<T> fetched, int limit) {
+            if (fetched.size() <= limit) {
+                return new Page<>(fetched, false);
+            }
+            return new Page<>(new ArrayList<>(fetched.subList(0, limit)), true);
+        }
+    }
+    
+    MessageDispatcher getDispatcher() {
+        return dispatcher;
+    }
+    
+    ChatMetrics getMetrics() {
+        return metrics;
+    }
+    
+    // ---- 계정 ----
+    
+    // 가입할 수 있는 아이디인지 확인 (입력을 받는 도중에 미리 알려 줄 때)
+    void checkUserId(String userId) {
+        if (userId.equals(DisplayNames.SYSTEM_SENDER_ID)) {
+            throw new IllegalArgumentException("사용할 수 없는 아이디입니다.");
+        }
+        if (users.containsKey(userId)) {
+            throw new IllegalArgumentException("이미 존재하는 아이디입니다.");
+        }
+    }
+    
+    // 이메일과 전화번호는 비워 둘 수 있다. 새 사용자에게는 기본 테스트 계정들을 친구로 추가한다.
+    User register(String userId, String password, String nickname, String email, String phone) {
+        if (userId.isEmpty() || password.isEmpty() || nickname.isEmpty()) {
+            throw new IllegalArgumentException("아이디, 비밀번호, 닉네임은 필수 입력 항목입니다.");
+        }
+        // 중복 확인과 등록 사이에 같은 아이디가 끼어들지 않게 한다 (commit 도 가입은 같은 잠금을 쓴다)
+        synchronized (users) {
+            checkUserId(userId);
+            engine.commit(Mutation.registerUser(userId, password, nickname,
+                                                email.isEmpty() ? "이메일 없음" : email, phone.isEmpty() ? "전화번호 없음" : phone));
+        }
+        User user = users.get(userId);
+        addDefaultFriends(user);
+        return user;
+    }
+    
+    private void addDefaultFriends(User newUser) {
+        // 테스트 계정이 아닌 경우에만 기본 친구 추가
+        if (!newUser.getUserId().startsWith("test")) {
+            // 테스트 계정들을 친구로 추가
+            engine.commit(Mutation.addFriend(newUser.getUserId(), "test1"));
+            engine.commit(Mutation.addFriend(newUser.getUserId(), "test2"));
+            engine.commit(Mutation.addFriend(newUser.getUserId(), "test3"));
+            
+            // 테스트 계정들의 친구 목록에도 새 사용자 추가
+            for (String testId : new String[] {"test1", "test2", "test3"}) {
+                if (users.containsKey(testId)) {
+                    engine.commit(Mutation.addFriend(testId, newUser.getUserId()));
+                }
+            }
+        }
+    }
+    
+    User login(String userId, String password) {
+        User user = users.get(userId);
+        if (user == null || !user.getPassword().equals(password)) {
+            throw new IllegalArgumentException("아이디 또는 비밀번호가 잘못되었습니다.");
+        }
+        logins.increment();
+        return user;
+    }
+    
+    User getUser(String userId) {
+        return users.get(userId);
+    }
+    
+    // 이메일 또는 전화번호로 가입한 사용자의 아이디 (없으면 null)
+    String findUserId(String emailOrPhone) {
+        List<User> found = users.findByEmail(emailOrPhone);
+        if (found.isEmpty()) {
+            found = users.findByPhone(emailOrPhone);
+        }
+        return found.isEmpty() ? null : found.get(0).getUserId();
+    }
+    
+    // 아이디와 이메일이 맞으면 비밀번호 (맞지 않으면 null)
+    String findPassword(String userId, String email) {
+        User user = users.get(userId);
+        return user != null && user.getEmail().equals(email) ? user.getPassword() : null;
+    }
+    
+    // ---- 친구와 차단 ----
+    
+    List<User> listFriends(String userId) {
+        return usersOf(userOf(userId).getFriendList());
+    }
+    
+    List<User> listBlocked(String userId) {
+        return usersOf(userOf(userId).getBlockedList());
+    }
+    
+    // 없는 아이디는 빼고 목록 순서대로
+    private List<User> usersOf(Iterable<String> userIds) {
+        List<User> found = new ArrayList<>();
+        for (String id : userIds) {
+            User user = users.get(id);
+            if (user != null) {
+                found.add(user);
+            }
+        }
+        return found;
+    }
+    
+    void addFriend(String userId, String friendId) {
+        User user = userOf(userId);
+        if (friendId.equals(userId)) {
+            throw new IllegalArgumentException("자신을 친구로 추가할 수 없습니다.");
+        }
+        if (!users.containsKey(friendId)) {
+            throw new IllegalArgumentException("존재하지 않는 사용자입니다.");
+        }
+        if (user.isFriend(friendId)) {
+            throw new IllegalArgumentException("이미 친구입니다.");
+        }
+        if (user.isBlocked(friendId)) {
+            throw new IllegalArgumentException("차단된 사용자입니다. 차단을 해제한 후 추가해주세요.");
+        }
+        engine.commit(Mutation.addFriend(userId, friendId));
+    }
+    
+    void removeFriend(String userId, String friendId) {
+        if (!userOf(userId).isFriend(friendId)) {
+            throw new IllegalArgumentException("친구 목록에 없는 사용자입니다.");
+        }
+        engine.commit(Mutation.removeFriend(userId, friendId));
+    }
+    
+    void blockUser(String userId, String targetId) {
+        userOf(userId);
+        if (!users.containsKey(targetId)) {
+            throw new IllegalArgumentException("존재하지 않는 사용자입니다.");
+        }
+        if (targetId.equals(userId)) {
+            throw new IllegalArgumentException("자신을 차단할 수 없습니다.");
+        }
+        engine.commit(Mutation.blockUser(userId, targetId));
+    }
+    
+    void unblockUser(String userId, String targetId) {
+        if (!userOf(userId).isBlocked(targetId)) {
+            throw new IllegalArgumentException("차단 목록에 없는 사용자입니다.");
+        }
+        engine.commit(Mutation.unblockUser(userId, targetId));
+    }
+    
+    // 닉네임 또는 아이디에 keyword 가 들어간 사용자 (자신은 뺀다)
+    List<User> searchUsers(String userId, String keyword) {
+        List<User> found = new ArrayList<>();
+        for (User user : users.searchByNicknameOrId(keyword)) {
+            if (!user.getUserId().equals(userId)) {
+                found.add(user);
+            }
+        }
+        return found;
+    }
+    
+    // ---- 프로필 ----
+    
+    void changeNickname(String userId, String nickname) {
+        userOf(userId);
+        engine.commit(Mutation.setNickname(userId, nickname));
+    }
+    
+    // 새 비밀번호를 묻기 전에 현재 비밀번호를 먼저 확인할 때
+    void checkPassword(String userId, String password) {
+        if (!userOf(userId).getPassword().equals(password)) {
+            throw new IllegalArgumentException("현재 비밀번호가 일치하지 않습니다.");
+        }
+    }
+    
+    void changePassword(String userId, String currentPassword, String newPassword) {
+        checkPassword(userId, currentPassword);
+        engine.commit(Mutation.setPassword(userId, newPassword));
+    }
+    
+    void changeEmail(String userId, String email) {
+        userOf(userId);
+        engine.commit(Mutation.setEmail(userId, email));
+    }
+    
+    void changePhone(String userId, String phone) {
+        userOf(userId);
+        engine.commit(Mutation.setPhone(userId, phone));
+    }
+    
+    // ---- 채팅방 ----
+    
+    // 고정된 방 먼저, 최근 메시지 순으로 offset 번째부터 limit 개 (사용자별 색인에서 바로 읽는다)
+    Page<RoomSummary> listRooms(String userId, int offset, int limit) {
+        User user = userOf(userId);
+        int end = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit + 1);
+        List<ChatRoom> rooms = user.getRecentChatRooms(end);
+        List<RoomSummary> summaries = new ArrayList<>(Math.max(0, rooms.size() - offset));
+        for (int i = offset; i < rooms.size(); i++) {
+            summaries.add(summaryOf(rooms.get(i), userId));
+        }
+        return Page.of(summaries, limit);
+    }
+    
+    // 안읽은 메시지가 많은 방부터
+    List<RoomSummary> listRoomsByUnread(String userId) {
+        List<RoomSummary> summaries = new ArrayList<>();
+        for (ChatRoom room : chatRoomsByUnread(userOf(userId))) {
+            summaries.add(summaryOf(room, userId));
+        }
+        return summaries;
+    }
+    
+    static List<ChatRoom> chatRoomsByUnread(User user) {
+        List<ChatRoom> rooms = new ArrayList<>(user.getChatRooms().values());
+        rooms.sort((r1, r2) -> Integer.compare(
+            r2.getUnreadCount(user.getUserId()),
+            r1.getUnreadCount(user.getUserId())));
+        return rooms;
+    }
+    
+    RoomSummary getRoom(String roomId, String userId) {
+        return summaryOf(joinedRoom(roomId, userId), userId);
+    }
+    
+    // 사용자에게 보이는 방 이름 (1:1 방은 상대방 닉네임). 없는 방이면 아이디를 그대로.
+    String roomDisplayName(String roomId, String userId) {
+        ChatRoom room = chatRooms.get(roomId);
+        return room == null ? roomId : displayNames.roomName(room, userId);
+    }
+    
+    String senderName(Message message) {
+        return displayNames.senderName(message);
+    }
+    
+    String senderName(String senderId) {
+        return displayNames.senderName(senderId);
+    }
+    
+    // 친구와의 기존 1:1 채팅방 (없으면 null)
+    RoomSummary findDirectRoom(String userId, String friendId) {
+        ChatRoom room = directRoomOf(userOf(userId), friendId);
+        return room == null ? null : summaryOf(room, userId);
+    }
+    
+    private ChatRoom directRoomOf(User user, String friendId) {
+        for (ChatRoom room : user.getChatRooms().values()) {
+            if (!room.isGroupChat() && room.getParticipants().contains(friendId)) {
+                return room;
+            }
+        }
+        return null;
+    }
+    
+    // 친구와의 1:1 채팅방. 없으면 만든다 (상대방의 채팅방 목록에도 추가).
+    RoomSummary openDirectRoom(String userId, String friendId) {
+        User user = userOf(userId);
+        User friend = users.get(friendId);
+        if (friend == null || !user.isFriend(friendId)) {
+            throw new IllegalArgumentException("존재하지 않거나 친구가 아닌 사용자입니다.");
+        }
+        if (user.isBlocked(friendId)) {
+            throw new IllegalArgumentException("차단된 사용자입니다.");
+        }
+        // 두 사람이 동시에 서로에게 방을 열어도 하나만 만들어지도록 두 사용자를 아이디 순서로 잠근다
+        User first = userId.compareTo(friendId) < 0 ? user : friend;
+        User second = first == user ? friend : user;
+        synchronized (first) {
+            synchronized (second) {
+                ChatRoom room = directRoomOf(user, friendId);
+                if (room == null) {
+                    String roomId = engine.nextRoomId("room_");
+                    engine.commit(Mutation.createRoom(roomId, friend.getNickname(), false));
+                    engine.commit(Mutation.joinRoom(roomId, userId));
+                    engine.commit(Mutation.joinRoom(roomId, friendId));
+                    room = chatRooms.get(roomId);
+                }
+                return summaryOf(room, userId);
+            }
+        }
+    }
+    
+    // 만든 사람만 들어 있는 그룹 채팅방을 만든다. 다른 참여자는 inviteToRoom 으로 초대한다.
+    RoomSummary createGroupRoom(String userId, String roomName) {
+        userOf(userId);
+        String roomId = engine.nextRoomId("group_");
+        engine.commit(Mutation.createRoom(roomId, roomName, true));
+        engine.commit(Mutation.joinRoom(roomId, userId));
+        return summaryOf(chatRooms.get(roomId), userId);
+    }
+    
+    // 참여자가 자기 친구를 그룹 채팅방에 초대한다
+    void inviteToRoom(String roomId, String userId, String friendId) {
+        ChatRoom room = joinedRoom(roomId, userId);
+        if (!room.isGroupChat()) {
+            throw new IllegalArgumentException("그룹 채팅방에만 초대할 수 있습니다.");
+        }
+        if (!users.containsKey(friendId) || !userOf(userId).isFriend(friendId)) {
+            throw new IllegalArgumentException("존재하지 않거나 친구가 아닌 사용자입니다.");
+        }
+        engine.commit(Mutation.joinRoom(roomId, friendId));
+    }
+    
+    // 자신과 차단한 사용자를 뺀 모든 사용자 중 한 명과 새 1:1 방을 만든다
+    RoomSummary randomChat(String userId) {
+        User user = userOf(userId);
+        List<String> candidates = randomChatCandidates(users, user);
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("랜덤 채팅할 사용자가 없습니다.");
+        }
+        Random random = ThreadLocalRandom.current();
+        String partnerId = candidates.get(random.nextInt(candidates.size()));
+        
+        String roomId = engine.nextRoomId("random_");
+        engine.commit(Mutation.createRoom(roomId, "랜덤채팅_" + users.get(partnerId).getNickname(), false));
+        engine.commit(Mutation.joinRoom(roomId, userId));
+        engine.commit(Mutation.joinRoom(roomId, partnerId));
+        return summaryOf(chatRooms.get(roomId), userId);
+    }
+    
+    // 랜덤 채팅 상대 후보: 자신과 차단한 사용자를 뺀 모든 사용자
+    static List<String> randomChatCandidates(UserStore users, User user) {
+        List<String> candidates = new ArrayList<>();
+        for (String userId : users.keySet()) {
+            if (!userId.equals(user.getUserId()) &&
+                !user.isBlocked(userId)) {
+                candidates.add(userId);
+            }
+        }
+        return candidates;
+    }
+    
+    // 방 고정을 뒤집고 바뀐 상태를 반환
+    boolean toggleRoomPinned(String roomId, String userId) {
+        ChatRoom room = joinedRoom(roomId, userId);
+        // 두 사람이 동시에 뒤집어도 한 번씩 반영되도록 읽기와 기록을 방을 잠근 채로 한다
+        synchronized (room) {
+            boolean pinned = !room.isPinned();
+            engine.commit(Mutation.setRoomPinned(roomId, pinned));
+            return pinned;
+        }
+    }
+    
+    // 채팅방 참여자와 사용자의 채팅방 목록에서 뺀다. 그룹 채팅방이면 나갔다는 안내를 남긴다.
+    void leaveRoom(String roomId, String userId) {
+        ChatRoom room = joinedRoom(roomId, userId);
+        engine.commit(Mutation.leaveRoom(roomId, userId));
+        if (room.isGroupChat()) {
+            postMessage(room, DisplayNames.SYSTEM_SENDER_ID, userOf(userId).getNickname() + "님이 채팅방을 나갔습니다.", 0, null);
+        }
+    }
+    
+    // 읽음 위치를 seq 까지 옮긴다 (방의 마지막 순번을 넘으면 마지막까지)
+    void markRead(String roomId, String userId, long seq) {
+        ChatRoom room = joinedRoom(roomId, userId);
+        long upTo = Math.min(seq, room.getLastSeq());
+        if (upTo > room.getReadWatermark(userId)) {
+            engine.commit(Mutation.markRead(roomId, userId, upTo));
+        }
+    }
+    
+    // ---- 메시지 ----
+    
+    Message sendMessage(String roomId, String senderId, String content) {
+        return sendMessage(roomId, senderId, content, 0, null);
+    }
+    
+    Message replyToMessage(String roomId, String senderId, long replyToSeq, String content) {
+        return sendMessage(roomId, senderId, content, replyToSeq, null);
+    }
+    
+    // 메시지를 기록하고 접속 중인 참여자에게 알린 뒤 추가된 메시지를 반환.
+    // origin 은 보낸 쪽 세션의 구독으로, 그 세션에는 알리지 않는다 (없으면 null).
+    Message sendMessage(String roomId, String senderId, String content, long replyToSeq,
+                        MessageDispatcher.Subscription origin) {
+        long start = System.nanoTime();
+        ChatRoom room = joinedRoom(roomId, senderId);
+        if (content.trim().isEmpty()) {
+            throw new IllegalArgumentException("메시지를 입력해주세요.");
+        }
+        if (replyToSeq != 0) {
+            Message original = room.getMessageBySeq(replyToSeq);
+            if (original == null || original.isDeleted()) {
+                throw new IllegalArgumentException("답장할 메시지가 없습니다.");
+            }
+        }
+        Message message = postMessage(room, senderId, content, replyToSeq, origin);
+        sendLatency.record(System.nanoTime() - start);
+        return message;
+    }
+    
+    // 순번은 방을 잠근 채로 정해야 두 스레드가 같은 순번을 쓰지 않는다 (commit 도 같은 방을 잠근다).
+    // 알림도 잠근 채로 발행해야 참여자가 순번 순서대로 받는다.
+    private Message postMessage(ChatRoom room, String senderId, String content, long replyToSeq,
+                                MessageDispatcher.Subscription origin) {
+        synchronized (room) {
+            long seq = room.getLastSeq() + 1;
+            engine.commit(Mutation.addMessage(room.getRoomId(), seq, senderId, content, replyToSeq, System.currentTimeMillis()));
+            Message message = room.getMessageBySeq(seq);
+            dispatcher.publish(room, message, origin);
+            return message;
+        }
+    }
+    
+    List<Message> sendMessages(String roomId, String senderId, List<String> contents) {
+        return sendMessages(roomId, senderId, contents, null);
+    }
+    
+    // 같은 사람의 메시지 여러 건을 한 번에 보낸다 (봇, 다른 메신저와 잇는 브리지, 대화 가져오기).
+    // 순번을 한 덩어리로 정해 변경 기록 한 건으로 남기고, 안읽은 수와 방 순서는 한 번만 바꾸며,
+    // 알림도 참여자마다 한 번에 보낸다. 빈 내용이 하나라도 있으면 아무것도 보내지 않는다. 추가된 메시지를 순서대로 반환.
+    List<Message> sendMessages(String roomId, String senderId, List<String> contents,
+                               MessageDispatcher.Subscription origin) {
+        long start = System.nanoTime();
+        ChatRoom room = joinedRoom(roomId, senderId);
+        if (contents.isEmpty()) {
+            throw new IllegalArgumentException("메시지를 입력해주세요.");
+        }
+        if (contents.size() > MAX_BATCH_MESSAGES) {
+            throw new IllegalArgumentException("한 번에 보낼 수 있는 메시지는 " + MAX_BATCH_MESSAGES + "개까지입니다.");
+        }
+        long chars = 0;
+        for (String content : contents) {
+            if (content.trim().isEmpty()) {
+                throw new IllegalArgumentException("빈 메시지는 보낼 수 없습니다.");
+            }
+            chars += content.length();
+        }
+        if (chars > MAX_BATCH_CHARS) {
+            throw new IllegalArgumentException("한 번에 보낼 수 있는 양을 넘었습니다.");
+        }
+        
+        List<Message> messages;
+        synchronized (room) {
+            int first = (int) room.getLastSeq();
+            engine.commit(Mutation.addMessages(roomId, first + 1, senderId, contents, System.currentTimeMillis()));
+            messages = new ArrayList<>(room.getMessages().subList(first, first + contents.size()));
+            dispatcher.publishAll(room, messages, origin);
+        }
+        batchSendLatency.record(System.nanoTime() - start);
+        return messages;
+    }
+    
+    // seq 번 메시지 (없으면 null). 삭제된 메시지도 돌려주므로 isDeleted() 로 확인한다.
+    Message getMessage(String roomId, String userId, long seq) {
+        return joinedRoom(roomId, userId).getMessageBySeq(seq);
+    }
+    
+    // beforeSeq 바로 앞까지의 (삭제되지 않은) 메시지 limit 개, 오래된 순. 최신 페이지는 Long.MAX_VALUE 부터.
+    List<Message> messagesBefore(String roomId, String userId, long beforeSeq, int limit) {
+        long start = System.nanoTime();
+        List<Message> page = joinedRoom(roomId, userId).getMessagesBefore(beforeSeq, limit);
+        historyLatency.record(System.nanoTime() - start);
+        return page;
+    }
+    
+    // afterSeq 바로 다음부터의 (삭제되지 않은) 메시지 limit 개, 오래된 순
+    List<Message> messagesAfter(String roomId, String userId, long afterSeq, int limit) {
+        long start = System.nanoTime();
+        List<Message> page = joinedRoom(roomId, userId).getMessagesAfter(afterSeq, limit);
+        historyLatency.record(System.nanoTime() - start);
+        return page;
+    }
+    
+    List<Message> pinnedMessages(String roomId, String userId) {
+        return joinedRoom(roomId, userId).getPinnedMessages();
+    }
+    
+    // 방 안의 메시지 검색, 최신순으로 offset 번째부터 limit 개
+    Page<Message> search(String roomId, String userId, String query, int offset, int limit) {
+        long start = System.nanoTime();
+        Page<Message> page = Page.of(joinedRoom(roomId, userId).search(query, offset, limit + 1), limit);
+        searchLatency.record(System.nanoTime() - start);
+        return page;
+    }
+    
+    // 사용자가 참여한 모든 채팅방의 검색 결과를 최신순으로 병합. 방마다 최신 결과부터 조금씩 꺼내는 커서를 두고
+    // 가장 최신 결과를 가진 커서부터 꺼낸다. 마지막 메시지가 지금까지 꺼낸 결과보다 오래된 방은 열지 않으므로
+    // 그 방은 조회하지도, 색인을 만들지도 않는다.
+    Page<SearchHit> searchAllRooms(String userId, String query, int offset, int limit) {
+        long start = System.nanoTime();
+        List<RoomSearchCursor> unopened = new ArrayList<>();
+        for (ChatRoom room : userOf(userId).getChatRooms().values()) {
+            unopened.add(new RoomSearchCursor(room, query));
+        }
+        Comparator<RoomSearchCursor> newestFirst = (c1, c2) -> Long.compare(c2.latest, c1.latest);
+        unopened.sort(newestFirst);
+        PriorityQueue<RoomSearchCursor> open = new PriorityQueue<>(newestFirst);
+        
+        List<SearchHit> hits = new ArrayList<>();
+        int skipped = 0;
+        int next = 0;
+        while (hits.size() <= limit) {
+            // 지금 가장 최신 결과보다 새 메시지가 있을 수 있는 방을 먼저 연다
+            while (next < unopened.size() && (open.isEmpty() || unopened.get(next).latest >= open.peek().latest)) {
+                RoomSearchCursor cursor = unopened.get(next++);
+                if (cursor.advance()) {
+                    open.add(cursor);
+                }
+            }
+            RoomSearchCursor cursor = open.poll();
+            if (cursor == null) {
+                break;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                hits.add(new SearchHit(cursor.room, cursor.current));
+            }
+            if (cursor.advance()) {
+                open.add(cursor);
+            }
+        }
+        Page<SearchHit> page = Page.of(hits, limit);
+        searchLatency.record(System.nanoTime() - start);
+        return page;
+    }
+    
+    // 한 방의 검색 결과를 최신순으로 하나씩 꺼낸다. 결과는 필요할 때 조금씩, 점점 크게 묶어서 가져온다.
+    private static class RoomSearchCursor {
+        private static final int FIRST_BATCH = 8;
+        private static final int MAX_BATCH = 1024;
+        
+        final ChatRoom room;
+        private final String query;
+        // 열기 전에는 방의 마지막 메시지 시각(결과 시각의 상한), 연 뒤에는 current 의 시각
+        long latest;
+        Message current;
+        private List<Message> batch = Collections.emptyList();
+        private int position;
+        private int batchSize = FIRST_BATCH;
+        private boolean exhausted;
+        
+        RoomSearchCursor(ChatRoom room, String query) {
+            this.room = room;
+            this.query = query;
+            this.latest = room.getLastMessageTime().getTime();
+        }
+        
+        // 다음 결과로 넘어간다 (더 없으면 false)
+        boolean advance() {
+            if (position == batch.size()) {
+                if (exhausted) {
+                    return false;
+                }
+                long beforeSeq = current != null ? current.getSeq() : Long.MAX_VALUE;
+                batch = room.searchBefore(query, beforeSeq, batchSize);
+                position = 0;
+                exhausted = batch.size() < batchSize;
+                batchSize = Math.min(batchSize * 2, MAX_BATCH);
+                if (batch.isEmpty()) {
+                    return false;
+                }
+            }
+            current = batch.get(position++);
+            latest = current.getTimestampMillis();
+            return true;
+        }
+    }
+    
+    // 메시지 고정을 뒤집고 바뀐 상태를 반환
+    boolean toggleMessagePinned(String roomId, String userId, long seq) {
+        ChatRoom room = joinedRoom(roomId, userId);
+        synchronized (room) {
+            // 메시지 뷰의 상태는 읽은 시점의 값이므로 바꿀 값을 따로 둔다
+            boolean pinned = !liveMessage(room, seq).isPinned();
+            engine.commit(Mutation.setMessagePinned(roomId, seq, pinned));
+            return pinned;
+        }
+    }
+    
+    // 메시지 북마크를 뒤집고 바뀐 상태를 반환
+    boolean toggleMessageBookmarked(String roomId, String userId, long seq) {
+        ChatRoom room = joinedRoom(roomId, userId);
+        synchronized (room) {
+            boolean bookmarked = !liveMessage(room, seq).isBookmarked();
+            engine.commit(Mutation.setMessageBookmarked(roomId, seq, bookmarked));
+            return bookmarked;
+        }
+    }
+    
+    private Message liveMessage(ChatRoom room, long seq) {
+        Message message = room.getMessageBySeq(seq);
+        if (message == null) {
+            throw new IllegalArgumentException("잘못된 메시지 번호입니다.");
+        }
+        if (message.isDeleted()) {
+            throw new IllegalArgumentException("삭제된 메시지입니다.");
+        }
+        return message;
+    }
+    
+    // 사용자가 지울 수 있는 자기 메시지 (삭제를 확인받기 전에 미리 검사할 때)
+    Message findOwnMessage(String roomId, String userId, long seq) {
+        Message message = joinedRoom(roomId, userId).getMessageBySeq(seq);
+        if (message == null) {
+            throw new IllegalArgumentException("잘못된 메시지 번호입니다.");
+        }
+        if (message.isDeleted()) {
+            throw new IllegalArgumentException("이미 삭제된 메시지입니다.");
+        }
+        if (!message.getSenderId().equals(userId)) {
+            throw new IllegalArgumentException("자신의 메시지만 삭제할 수 있습니다.");
+        }
+        return message;
+    }
+    
+    // 자기 메시지를 모두에게서 삭제한다
+    void deleteMessage(String roomId, String userId, long seq) {
+        ChatRoom room = joinedRoom(roomId, userId);
+        synchronized (room) {
+            findOwnMessage(roomId, userId, seq);
+            engine.commit(Mutation.deleteMessage(roomId, seq));
+        }
+        deletedMessages.increment();
+    }
+    
+    // ---- 내부 ----
+    
+    private User userOf(String userId) {
+        User user = users.get(userId);
+        if (user == null) {
+            throw new IllegalArgumentException("존재하지 않는 사용자입니다.");
+        }
+        return user;
+    }
+    
+    private ChatRoom joinedRoom(String roomId, String userId) {
+        ChatRoom room = chatRooms.get(roomId);
+        if (room == null || !room.isParticipant(userId)) {
+            throw new IllegalArgumentException("채팅방을 찾을 수 없습니다.");
+        }
+        return room;
+    }
+    
+    private RoomSummary summaryOf(ChatRoom room, String userId) {
+        long start = System.nanoTime();
+        int unreadCount = room.getUnreadCount(userId);
+        unreadLatency.record(System.nanoTime() - start);
+        return new RoomSummary(room, displayNames.roomName(room, userId), unreadCount);
+    }
+}
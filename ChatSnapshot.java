@@ -0,0 +1,432 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// ChatSnapshot.java - 전체 모델(사용자, 채팅방, 메시지)의 스냅샷
+// capture() 는 호출한 스레드에서 상태를 고정하고, 파일 기록은 백그라운드 스레드에서 한다.
+// 스냅샷은 lsn 번 레코드까지 반영된 상태이며, 이후 레코드는 변경 로그에서 다시 적용한다.
+class ChatSnapshot {
+    private static final int MAGIC = 0x43534e50; // "CSNP"
+    private static final int VERSION = 1;
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".bin";
+    
+    private static final int BUFFER_SIZE = 1 << 20;
+    
+    private final long lsn;
+    private final int roomIdCounter;
+    private final String[] senders;
+    private final List<UserImage> users;
+    private final List<RoomImage> rooms;
+    
+    private ChatSnapshot(long lsn, int roomIdCounter, String[] senders, List<UserImage> users, List<RoomImage> rooms) {
+        this.lsn = lsn;
+        this.roomIdCounter = roomIdCounter;
+        this.senders = senders;
+        this.users = users;
+        this.rooms = rooms;
+    }
+    
+    public long getLsn() { return lsn; }
+    public int getRoomIdCounter() { return roomIdCounter; }
+    
+    // 모델 변경이 모두 멈춘 동안(스냅샷 쓰기 잠금 안) 호출. 모든 commit 을 막고 있으므로 메시지 수나 친구 수에
+    // 비례하는 복사는 하지 않는다. 메시지 목록은 청크 참조로 고정하고, 친구/차단 목록은 참조만 가져간다.
+    static ChatSnapshot capture(long lsn, UserStore userStore, Map<String, ChatRoom> chatRooms, int roomIdCounter) {
+        List<UserImage> users = new ArrayList<>(userStore.size());
+        for (User user : userStore.values()) {
+            UserImage image = new UserImage();
+            image.userId = user.getUserId();
+            image.password = user.getPassword();
+            image.nickname = user.getNickname();
+            image.email = user.getEmail();
+            image.phone = user.getPhone();
+            // 가져간 목록은 다음 변경 때 사용자 쪽에서 복사하므로 여기서는 참조만 둔다
+            image.friends = user.friendListForSnapshot();
+            image.blocked = user.blockedListForSnapshot();
+            image.roomIds = user.getChatRooms().keySet().toArray(new String[0]);
+            users.add(image);
+        }
+        
+        List<RoomImage> rooms = new ArrayList<>(chatRooms.size());
+        for (ChatRoom room : chatRooms.values()) {
+            RoomImage image = new RoomImage();
+            image.roomId = room.getRoomId();
+            image.roomName = room.getRoomName();
+            image.groupChat = room.isGroupChat();
+            image.pinned = room.isPinned();
+            image.lastMessageTime = room.getLastMessageTime().getTime();
+            image.participants = room.getParticipants().toArray(new String[0]);
+            image.watermarks = new long[image.participants.length];
+            image.adjustments = new int[image.participants.length];
+            for (int i = 0; i < image.participants.length; i++) {
+                image.watermarks[i] = room.getReadWatermark(image.participants[i]);
+                image.adjustments[i] = room.getUnreadAdjustment(image.participants[i]);
+            }
+            image.messages = room.freezeMessages();
+            rooms.add(image);
+        }
+        // 고정한 메시지의 보낸 사람 번호는 모두 이 사전 안에 있다
+        return new ChatSnapshot(lsn, roomIdCounter, SenderTable.names(), users, rooms);
+    }
+    
+    // 임시 파일에 쓰고 fsync 한 뒤 이름을 바꿔, 중간에 중단되어도 완전한 스냅샷만 남도록 한다
+    Path writeTo(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(String.format("%s%020d%s", FILE_PREFIX, lsn, FILE_SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lsn);
+            out.writeInt(roomIdCounter);
+            out.writeStrings(senders);
+            
+            out.writeInt(users.size());
+            for (UserImage user : users) {
+                out.writeString(user.userId);
+                out.writeString(user.password);
+                out.writeString(user.nickname);
+                out.writeString(user.email);
+                out.writeString(user.phone);
+                out.writeStrings(user.friends);
+                out.writeStrings(user.blocked);
+                out.writeStrings(user.roomIds);
+            }
+            
+            out.writeInt(rooms.size());
+            for (RoomImage room : rooms) {
+                out.writeString(room.roomId);
+                out.writeString(room.roomName);
+                out.writeBoolean(room.groupChat);
+                out.writeBoolean(room.pinned);
+                out.writeLong(room.lastMessageTime);
+                out.writeStrings(room.participants);
+                for (int i = 0; i < room.participants.length; i++) {
+                    out.writeLong(room.watermarks[i]);
+                    out.writeInt(room.adjustments[i]);
+                }
+                out.writeInt(room.messages.size());
+                for (int i = 0; i < room.messages.size(); i++) {
+                    // 삭제된 메시지는 순번 자리만 남기고 본문은 기록하지 않는다
+                    Message message = room.messages.get(i);
+                    boolean deleted = message.isDeleted();
+                    out.writeInt(message.getSenderNumber());
+                    out.writeLong(message.getTimestampMillis());
+                    out.writeLong(deleted ? 0 : message.getReplyToSeq());
+                    out.writeByte(message.getFlags());
+                    out.writeString(deleted ? "" : message.getContent());
+                }
+            }
+            out.finish();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+    
+    // 스냅샷 파일을 읽으면서 비어 있는 저장소에 바로 채운다 (메시지를 한꺼번에 들고 있지 않음).
+    // 반환한 객체에는 lsn 과 아이디 카운터만 들어 있다.
+    static ChatSnapshot restore(Path file, UserStore userStore, Map<String, ChatRoom> chatRooms) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input in = new Input(channel, file);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("스냅샷 형식이 올바르지 않습니다: " + file);
+            }
+            long lsn = in.readLong();
+            int roomIdCounter = in.readInt();
+            String[] senders = in.readStrings();
+            
+            int userCount = in.readInt();
+            List<UserImage> users = new ArrayList<>(userCount);
+            for (int i = 0; i < userCount; i++) {
+                UserImage user = new UserImage();
+                user.userId = in.readString();
+                user.password = in.readString();
+                user.nickname = in.readString();
+                user.email = in.readString();
+                user.phone = in.readString();
+                user.friends = Arrays.asList(in.readStrings());
+                user.blocked = Arrays.asList(in.readStrings());
+                user.roomIds = in.readStrings();
+                userStore.add(new User(user.userId, user.password, user.nickname, user.email, user.phone));
+                users.add(user);
+            }
+            
+            int roomCount = in.readInt();
+            for (int i = 0; i < roomCount; i++) {
+                String roomId = in.readString();
+                String roomName = in.readString();
+                ChatRoom room = new ChatRoom(roomId, roomName, in.readBoolean());
+                boolean pinned = in.readBoolean();
+                long lastMessageTime = in.readLong();
+                String[] participants = in.readStrings();
+                long[] watermarks = new long[participants.length];
+                int[] adjustments = new int[participants.length];
+                for (int p = 0; p < participants.length; p++) {
+                    watermarks[p] = in.readLong();
+                    adjustments[p] = in.readInt();
+                }
+                int messageCount = in.readInt();
+                for (int m = 0; m < messageCount; m++) {
+                    String senderId = senders[in.readInt()];
+                    long timestamp = in.readLong();
+                    long replyToSeq = in.readLong();
+                    byte flags = (byte) in.readByte();
+                    room.restoreMessage(senderId, in.readString(), replyToSeq, timestamp, flags);
+                }
+                for (int p = 0; p < participants.length; p++) {
+                    room.addParticipant(participants[p]);
+                    room.restoreReadState(participants[p], watermarks[p], adjustments[p]);
+                }
+                room.setPinned(pinned);
+                room.setLastMessageTime(new Date(lastMessageTime));
+                chatRooms.put(room.getRoomId(), room);
+            }
+            in.verifyChecksum();
+            
+            for (UserImage image : users) {
+                User user = userStore.get(image.userId);
+                for (String friendId : image.friends) {
+                    user.addFriend(friendId);
+                }
+                for (String blockedId : image.blocked) {
+                    user.blockUser(blockedId);
+                }
+                for (String roomId : image.roomIds) {
+                    user.addChatRoom(chatRooms.get(roomId));
+                }
+            }
+            return new ChatSnapshot(lsn, roomIdCounter, new String[0],
+                                    Collections.emptyList(), Collections.emptyList());
+        }
+    }
+    
+    // 가장 최근 스냅샷 파일 (없으면 null)
+    static Path findLatest(Path directory) throws IOException {
+        List<Path> snapshots = list(directory);
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+    
+    // keep 보다 오래된 스냅샷과 남은 임시 파일을 지운다
+    static void deleteOlderThan(Path directory, Path keep) throws IOException {
+        for (Path snapshot : list(directory)) {
+            if (!snapshot.equals(keep)) {
+                Files.deleteIfExists(snapshot);
+            }
+        }
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX + ".tmp")) {
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+    
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                snapshots.add(file);
+            }
+        }
+        // 파일 이름의 lsn 은 0 으로 채운 고정 길이이므로 이름순 = lsn 순
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+    
+    private static class UserImage {
+        String userId;
+        String password;
+        String nickname;
+        String email;
+        String phone;
+        Collection<String> friends;
+        Collection<String> blocked;
+        String[] roomIds;
+    }
+    
+    private static class RoomImage {
+        String roomId;
+        String roomName;
+        boolean groupChat;
+        boolean pinned;
+        long lastMessageTime;
+        String[] participants;
+        long[] watermarks;
+        int[] adjustments;
+        MessageStore.Frozen messages;
+    }
+    
+    // 본문을 큰 버퍼에 모아 채널에 쓰고, 쓴 만큼 체크섬을 갱신한다. 끝에 체크섬(8)을 붙인다.
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+        
+        void writeByte(int value) throws IOException { ensure(1); buffer.put((byte) value); }
+        void writeBoolean(boolean value) throws IOException { writeByte(value ? 1 : 0); }
+        void writeInt(int value) throws IOException { ensure(4); buffer.putInt(value); }
+        void writeLong(long value) throws IOException { ensure(8); buffer.putLong(value); }
+        
+        // 길이(4, null 은 -1) | UTF-8
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int n = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+        
+        void writeStrings(String[] values) throws IOException {
+            writeStrings(Arrays.asList(values));
+        }
+        
+        void writeStrings(Collection<String> values) throws IOException {
+            writeInt(values.size());
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+        
+        void finish() throws IOException {
+            drain();
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+        
+        private void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+    
+    // Output 의 역. 본문(파일 끝 8바이트 제외)만 체크섬에 포함한다.
+    private static class Input {
+        private final FileChannel channel;
+        private final Path file;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        private long bodyRemaining;
+        
+        Input(FileChannel channel, Path file) throws IOException {
+            this.channel = channel;
+            this.file = file;
+            this.bodyRemaining = channel.size() - 8;
+            buffer.limit(0);
+        }
+        
+        int readByte() throws IOException { require(1); return buffer.get(); }
+        boolean readBoolean() throws IOException { return readByte() != 0; }
+        int readInt() throws IOException { require(4); return buffer.getInt(); }
+        long readLong() throws IOException { require(8); return buffer.getLong(); }
+        
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length <= BUFFER_SIZE) {
+                require(length);
+                String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                return value;
+            }
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                require(1);
+                int n = Math.min(buffer.remaining(), length - offset);
+                buffer.get(bytes, offset, n);
+                offset += n;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        String[] readStrings() throws IOException {
+            String[] values = new String[readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readString();
+            }
+            return values;
+        }
+        
+        void verifyChecksum() throws IOException {
+            if (buffer.hasRemaining() || bodyRemaining != 0) {
+                throw corrupted();
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer) < 0) {
+                    throw corrupted();
+                }
+            }
+            if (trailer.getLong(0) != crc.getValue()) {
+                throw new IOException("스냅샷 체크섬이 일치하지 않습니다: " + file);
+            }
+        }
+        
+        // 버퍼에 최소 bytes 만큼 남도록 본문을 더 읽는다
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                int want = (int) Math.min(buffer.remaining(), bodyRemaining);
+                if (want <= 0) {
+                    throw corrupted();
+                }
+                ByteBuffer chunk = buffer.duplicate();
+                chunk.limit(chunk.position() + want);
+                int n = channel.read(chunk);
+                if (n < 0) {
+                    throw corrupted();
+                }
+                chunk.flip().position(buffer.position());
+                crc.update(chunk);
+                buffer.position(buffer.position() + n);
+                bodyRemaining -= n;
+            }
+            buffer.flip();
+        }
+        
+        private IOException corrupted() {
+            return new IOException("스냅샷 파일이 손상되었습니다: " + file);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ConsoleSessionServer.java - 접속마다 콘솔 메뉴를 그대로 실행하는 세션 서버
+// 메뉴 코드는 Scanner 에서 한 줄씩 기다리는 블로킹 흐름이므로 세션마다 스레드를 하나 준다.
+// Java 21 이상이면 가상 스레드를 쓰고, 그 전 버전이면 작은 스택의 플랫폼 스레드 풀로 대신한다.
+// 세션은 자기 입력/출력과 로그인 상태만 갖고, 모델과 변경 로그는 서버를 띄운 ChatApplication 것을 같이 쓴다.
+// 로그인한 세션에 오는 새 메시지 알림은 세션 스레드와 따로 둔 작은 알림 실행기에서 출력한다. 세션마다 기다리는
+// 알림 작업은 많아야 하나이므로 알림 큐는 세션 수를 넘지 않고, 세션 스레드가 모두 입력을 기다려도 알림은 나간다.
+// chat.console.maxSessions: 동시 세션 수 (기본 10000, 넘치면 안내 후 연결을 끊음)
+// chat.console.idleMinutes: 입력이 이만큼 없으면 세션을 닫음 (기본 30)
+// chat.console.pushThreads: 알림을 출력하는 스레드 수 (기본 4)
+class ConsoleSessionServer {
+    private static final int DEFAULT_MAX_SESSIONS = 10_000;
+    private static final int DEFAULT_IDLE_MINUTES = 30;
+    private static final int DEFAULT_PUSH_THREADS = 4;
+    private static final long PLATFORM_THREAD_STACK_BYTES = 256 * 1024;
+    private static final long METRICS_INTERVAL_SECONDS = 60;
+    
+    private final ChatApplication engine;
+    private final ServerSocket serverSocket;
+    private final int maxSessions;
+    private final int idleTimeoutMillis;
+    private final Semaphore permits;
+    private final ExecutorService sessions;
+    private final ExecutorService pushes;
+    private final boolean virtualThreads;
+    
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicInteger peakSessions = new AtomicInteger();
+    private final AtomicLong totalSessions = new AtomicLong();
+    private final AtomicLong rejectedSessions = new AtomicLong();
+    
+    public ConsoleSessionServer(ChatApplication engine, int port) throws IOException {
+        this.engine = engine;
+        this.serverSocket = new ServerSocket(port, 1024);
+        this.maxSessions = Integer.getInteger("chat.console.maxSessions", DEFAULT_MAX_SESSIONS);
+        this.idleTimeoutMillis = (int) TimeUnit.MINUTES.toMillis(Integer.getInteger("chat.console.idleMinutes", DEFAULT_IDLE_MINUTES));
+        this.permits = new Semaphore(maxSessions);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.sessions = virtual != null ? virtual : newPlatformThreadExecutor(maxSessions);
+        this.pushes = newPushExecutor(Integer.getInteger("chat.console.pushThreads", DEFAULT_PUSH_THREADS), maxSessions);
+        engine.getMetrics().gauge("sessions.console", activeSessions::get);
+        engine.getMetrics().gauge("sessions.console.rejected", rejectedSessions::get);
+    }
+    
+    public int getActiveSessions() { return activeSessions.get(); }
+    public int getPeakSessions() { return peakSessions.get(); }
+    public long getTotalSessions() { return totalSessions.get(); }
+    public long getRejectedSessions() { return rejectedSessions.get(); }
+    public boolean usesVirtualThreads() { return virtualThreads; }
+    
+    public void run() throws IOException {
+        System.out.println("콘솔 세션 서버가 포트 " + serverSocket.getLocalPort() + " 에서 접속을 기다립니다. ("
+            + (virtualThreads ? "가상 스레드" : "플랫폼 스레드") + ", 최대 " + maxSessions + "세션)");
+        startMetricsReporter();
+        
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // 파일 디스크립터가 모자라는 등 일시적인 실패는 잠시 쉬고 다시 받는다
+                System.out.println("❌ 접속을 받을 수 없습니다: " + e.getMessage());
+                sleepQuietly(100);
+                continue;
+            }
+            if (!permits.tryAcquire()) {
+                rejectedSessions.incrementAndGet();
+                reject(socket);
+                continue;
+            }
+            totalSessions.incrementAndGet();
+            peakSessions.accumulateAndGet(activeSessions.incrementAndGet(), Math::max);
+            try {
+                sessions.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                finish(socket);
+            }
+        }
+    }
+    
+    // 세션 하나의 수명: 입력이 끝나거나(연결 끊김, 유휴 시간 초과) 로그인 메뉴에서 종료를 고를 때까지
+    private void serve(Socket socket) {
+        try {
+            socket.setSoTimeout(idleTimeoutMillis);
+            socket.setTcpNoDelay(true);
+            PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false, StandardCharsets.UTF_8);
+            InputStream in = new PromptFlushingInputStream(socket.getInputStream(), out);
+            new ChatApplication(engine, in, out, pushes).start();
+            out.flush();
+        } catch (NoSuchElementException | IOException e) {
+            // 입력이 끝남
+        } catch (RuntimeException e) {
+            System.out.println("❌ 세션이 오류로 종료되었습니다: " + e);
+        } finally {
+            finish(socket);
+        }
+    }
+    
+    private void finish(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 이미 끊긴 연결
+        }
+        activeSessions.decrementAndGet();
+        permits.release();
+    }
+    
+    private void reject(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(1000);
+            s.getOutputStream().write("❌ 접속자가 많습니다. 잠시 후 다시 시도해주세요.\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // 안내를 못 보내도 연결은 닫힌다
+        }
+    }
+    
+    // 세션 수가 바뀌었을 때만 주기적으로 한 줄 출력
+    private void startMetricsReporter() {
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "console-session-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] last = { -1, -1 };
+        reporter.scheduleAtFixedRate(() -> {
+            long active = activeSessions.get();
+            long total = totalSessions.get();
+            if (active != last[0] || total != last[1]) {
+                last[0] = active;
+                last[1] = total;
+                System.out.printf("[세션] 활성 %d, 최대 %d, 누적 %d, 거절 %d%n",
+                    active, peakSessions.get(), total, rejectedSessions.get());
+            }
+        }, METRICS_INTERVAL_SECONDS, METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    // Java 21 이상에서만 있는 Executors.newVirtualThreadPerTaskExecutor() (없으면 null)
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+    
+    // 세션 수만큼까지 필요할 때 스레드를 만들고, 1분 쉬면 정리한다
+    private static ExecutorService newPlatformThreadExecutor(int maxSessions) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxSessions, maxSessions, 1, TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(null, task, "console-session-" + threadNumber.incrementAndGet(),
+                                           PLATFORM_THREAD_STACK_BYTES);
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+    
+    // 알림 출력 전용. 세션마다 대기 중인 작업은 하나뿐이라 큐는 세션 수면 넘치지 않는다.
+    private static ExecutorService newPushExecutor(int threads, int maxSessions) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+            new ArrayBlockingQueue<>(maxSessions), task -> {
+                Thread thread = new Thread(null, task, "console-push-" + threadNumber.incrementAndGet(),
+                                           PLATFORM_THREAD_STACK_BYTES);
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+    
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // 입력을 기다리기 전에 쌓인 출력(메뉴, "선택: " 같은 프롬프트)을 보낸다
+    private static class PromptFlushingInputStream extends FilterInputStream {
+        private final PrintStream out;
+        
+        PromptFlushingInputStream(InputStream in, PrintStream out) {
+            super(in);
+            this.out = out;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            out.flush();
+            return super.read();
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            out.flush();
+            return super.read(buffer, offset, length);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// DisplayNames.java - 채팅방과 메시지 보낸 사람을 사용자에게 보여 줄 이름
+// 1:1 방은 상대방 닉네임, 그룹 방은 방 이름으로 보인다. 1:1 방의 두 참여자는 방마다 한 번만 찾아 User 객체로
+// 기억해 두고, 닉네임은 그 객체에서 읽으므로 닉네임이 바뀌어도 지울 것이 없다. 참여자 수가 달라졌으면(나감) 다시 찾는다.
+// 보낸 사람 이름은 메시지에 저장된 보낸 사람 번호(SenderTable)로 배열에서 바로 찾는다. 닉네임이 바뀌면
+// nicknameChanged() 로 배열을 통째로 버린다 (드문 일이므로 다시 채우는 비용은 문제가 되지 않는다).
+class DisplayNames {
+    // 사용자가 아닌 시스템 안내 메시지의 보낸 사람 (이 아이디로는 가입할 수 없다)
+    static final String SYSTEM_SENDER_ID = "SYSTEM";
+    static final String SYSTEM_SENDER_NAME = "시스템";
+    
+    private static final User[] NO_USERS = new User[0];
+    
+    private final UserStore users;
+    // 1:1 방 아이디 -> 참여자들
+    private final Map<String, User[]> directRoomMembers = new ConcurrentHashMap<>();
+    // 보낸 사람 번호 -> 표시 이름 (빈 칸은 아직 안 찾은 것). 채울 때는 이 객체를 잠그고, 읽을 때는 잠그지 않는다.
+    private volatile String[] senderNames = new String[64];
+    
+    public DisplayNames(UserStore users) {
+        this.users = users;
+    }
+    
+    public String roomName(ChatRoom room, String viewerId) {
+        if (!room.isGroupChat()) {
+            for (User member : directRoomMembers(room)) {
+                if (!member.getUserId().equals(viewerId)) {
+                    return member.getNickname();
+                }
+            }
+        }
+        return room.getRoomName();
+    }
+    
+    public String senderName(Message message) {
+        return senderName(message.getSenderNumber());
+    }
+    
+    public String senderName(String senderId) {
+        return senderName(SenderTable.numberOf(senderId));
+    }
+    
+    public String senderName(int senderNumber) {
+        String[] names = senderNames;
+        String name = senderNumber < names.length ? names[senderNumber] : null;
+        return name != null ? name : resolveSender(senderNumber);
+    }
+    
+    // 사용자의 닉네임이 바뀌었을 때 (SET_NICKNAME 적용 직후)
+    public synchronized void nicknameChanged() {
+        senderNames = new String[senderNames.length];
+    }
+    
+    private synchronized String resolveSender(int senderNumber) {
+        String[] names = senderNames;
+        if (senderNumber >= names.length) {
+            names = Arrays.copyOf(names, Math.max(senderNumber + 1, names.length * 2));
+            senderNames = names;
+        }
+        if (names[senderNumber] == null) {
+            String senderId = SenderTable.nameOf(senderNumber);
+            if (senderId.equals(SYSTEM_SENDER_ID)) {
+                names[senderNumber] = SYSTEM_SENDER_NAME;
+            } else {
+                // 탈퇴 등으로 사용자가 없으면 아이디를 그대로 보여 준다 (기억하지 않고 다음에 다시 찾는다)
+                User sender = users.get(senderId);
+                if (sender == null) {
+                    return senderId;
+                }
+                names[senderNumber] = sender.getNickname();
+            }
+        }
+        return names[senderNumber];
+    }
+    
+    private User[] directRoomMembers(ChatRoom room) {
+        User[] members = directRoomMembers.get(room.getRoomId());
+        if (members != null && members.length == room.getParticipants().size()) {
+            return members;
+        }
+        int count = 0;
+        User[] found = new User[room.getParticipants().size()];
+        for (String participantId : room.getParticipants()) {
+            User member = users.get(participantId);
+            if (member != null && count < found.length) {
+                found[count++] = member;
+            }
+        }
+        if (count != found.length) {
+            // 참여자가 바뀌는 중이거나 모르는 아이디가 있으면 기억하지 않는다
+            return count == 0 ? NO_USERS : Arrays.copyOf(found, count);
+        }
+        directRoomMembers.put(room.getRoomId(), found);
+        return found;
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.*;
+
+// IdSet.java - 삽입 순서를 유지하는 오픈 어드레싱 아이디 집합
+// 친구/차단 목록처럼 크기가 큰 아이디 집합의 포함 여부를 O(1)로 확인하면서,
+// 항목당 부가 비용을 LinkedHashSet 의 엔트리 객체 대신 배열 칸 두 개로 줄인다.
+class IdSet extends AbstractSet<String> {
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+    
+    // 삽입 순서대로 저장된 아이디 (삭제된 칸은 null)
+    private String[] entries;
+    private int entryCount;
+    // 해시 테이블: 0 = 빈 칸, -1 = 삭제 표시, 그 외 = entries 위치 + 1
+    private int[] slots;
+    private int size;
+    
+    public IdSet() {
+        this.entries = new String[8];
+        this.slots = new int[16];
+    }
+    
+    @Override
+    public int size() { return size; }
+    
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && findSlot((String) o) >= 0;
+    }
+    
+    @Override
+    public boolean add(String id) {
+        if (findSlot(id) >= 0) {
+            return false;
+        }
+        if ((entryCount + 1) * 2 > slots.length || entryCount == entries.length) {
+            rehash();
+        }
+        entries[entryCount] = id;
+        insertSlot(id, entryCount);
+        entryCount++;
+        size++;
+        return true;
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        int slot = findSlot((String) o);
+        if (slot < 0) {
+            return false;
+        }
+        removeAt(slot);
+        return true;
+    }
+    
+    @Override
+    public void clear() {
+        Arrays.fill(entries, null);
+        Arrays.fill(slots, EMPTY);
+        entryCount = 0;
+        size = 0;
+    }
+    
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next = advance(0);
+            private int last = -1;
+            
+            private int advance(int from) {
+                while (from < entryCount && entries[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+            
+            public boolean hasNext() { return next < entryCount; }
+            
+            public String next() {
+                if (next >= entryCount) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = advance(next + 1);
+                return entries[last];
+            }
+            
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                IdSet.this.remove(entries[last]);
+                last = -1;
+            }
+        };
+    }
+    
+    private void removeAt(int slot) {
+        entries[slots[slot] - 1] = null;
+        slots[slot] = REMOVED;
+        size--;
+    }
+    
+    // 아이디가 있는 해시 칸 위치, 없으면 -1
+    private int findSlot(String id) {
+        int mask = slots.length - 1;
+        int i = hash(id) & mask;
+        while (true) {
+            int value = slots[i];
+            if (value == EMPTY) {
+                return -1;
+            }
+            if (value != REMOVED) {
+                String entry = entries[value - 1];
+                if (entry == id || entry.equals(id)) {
+                    return i;
+                }
+            }
+            i = (i + 1) & mask;
+        }
+    }
+    
+    private void insertSlot(String id, int entryIndex) {
+        int mask = slots.length - 1;
+        int i = hash(id) & mask;
+        while (slots[i] > 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = entryIndex + 1;
+    }
+    
+    // 삭제된 칸을 걷어내고, 필요하면 용량을 두 배로 늘려 다시 배치
+    private void rehash() {
+        int capacity = slots.length;
+        if ((size + 1) * 2 > capacity / 2) {
+            capacity *= 2;
+        }
+        String[] oldEntries = entries;
+        int oldCount = entryCount;
+        
+        entries = new String[Math.max(capacity / 2, 8)];
+        slots = new int[capacity];
+        entryCount = 0;
+        for (int i = 0; i < oldCount; i++) {
+            if (oldEntries[i] != null) {
+                entries[entryCount] = oldEntries[i];
+                insertSlot(oldEntries[i], entryCount);
+                entryCount++;
+            }
+        }
+    }
+    
+    private static int hash(String id) {
+        int h = id.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
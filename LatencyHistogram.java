@@ -0,0 +1,75 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// LatencyHistogram.java - 지연 시간(나노초) 분포를 고정 크기 배열에 세는 히스토그램 (HdrHistogram 과 같은 방식)
+// 값을 2의 거듭제곱 구간으로 나누고 구간마다 다시 128칸으로 나눠 세므로, 어느 값이든 칸의 폭이 값의 1% 미만이다.
+// 기록은 칸 하나와 합계 몇 개를 원자적으로 더할 뿐 객체를 만들지 않으므로 여러 스레드가 잠금 없이 같이 쓴다.
+// 약 36분(2^41 나노초)을 넘는 값은 마지막 칸에 센다. 백분위수는 읽는 동안에도 기록이 이어지므로 근사값이다.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(value);
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+    
+    public long getCount() { return totalCount.get(); }
+    public long getMaxNanos() { return maxNanos.get(); }
+    
+    public double getMeanNanos() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalNanos.get() / count;
+    }
+    
+    // percentile(0~100) 번째 값. 그 값이 든 칸의 가장 큰 값을 돌려준다 (기록이 없으면 0).
+    public long valueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+    
+    // 128 미만은 값 그대로, 그 위는 (최상위 비트 위치, 그 아래 7비트) 로 칸을 정한다
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (magnitude - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+    
+    // 칸 하나가 세는 값 범위의 가장 큰 값
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return ((1L << magnitude) | (sub << shift)) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,53 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+// Message.java - 메시지 한 건을 읽기 위한 가벼운 뷰
+// 실제 데이터는 MessageStore 의 열 배열과 세그먼트에 있고, 이 객체는 읽을 때마다 새로 만든다.
+// 상태(삭제/고정/북마크)는 만들 때의 값이며, 바꿀 때는 ChatRoom 을 거친다.
+class Message {
+    static final byte DELETED = 1;
+    static final byte PINNED = 2;
+    static final byte BOOKMARKED = 4;
+    
+    private final long seq;
+    private final int sender;
+    private final long timestamp;
+    private final byte flags;
+    // 본문 위치: 답장 대상 순번(8) | 내용 길이(4) | UTF-8 내용
+    private final ByteBuffer segment;
+    private final int position;
+    private String content;
+    
+    Message(long seq, int sender, long timestamp, byte flags, ByteBuffer segment, int position) {
+        this.seq = seq;
+        this.sender = sender;
+        this.timestamp = timestamp;
+        this.flags = flags;
+        this.segment = segment;
+        this.position = position;
+    }
+    
+    // Getters
+    public long getSeq() { return seq; }
+    public int getSenderNumber() { return sender; }
+    public String getSenderId() { return SenderTable.nameOf(sender); }
+    public long getTimestampMillis() { return timestamp; }
+    public Date getTimestamp() { return new Date(timestamp); }
+    public byte getFlags() { return flags; }
+    public boolean isDeleted() { return (flags & DELETED) != 0; }
+    public boolean isPinned() { return (flags & PINNED) != 0; }
+    public boolean isBookmarked() { return (flags & BOOKMARKED) != 0; }
+    
+    // 답장 대상 메시지의 순번 (답장이 아니면 0)
+    public long getReplyToSeq() { return segment.getLong(position); }
+    
+    public String getContent() {
+        if (content == null) {
+            byte[] bytes = new byte[segment.getInt(position + 8)];
+            segment.get(position + 12, bytes);
+            content = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return content;
+    }
+}
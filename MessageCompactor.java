@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// MessageCompactor.java - 삭제된 메시지가 차지하던 메모리를 백그라운드에서 회수한다
+// 삭제는 플래그만 바꾸므로 본문과 열 배열은 그대로 남는다. 주기마다 방을 하나씩 돌며 MessageStore.compactStep() 으로
+// 삭제된 본문이 많이 쌓인 세그먼트를 다시 쓰고, 통째로 삭제된 청크는 묘비 청크로 접는다.
+// 한 단계(세그먼트 하나 또는 청크 하나)마다 방을 잠갔다가 풀므로, 그 방에 보내는 쪽은 길어야 한 단계만큼 기다리고
+// 다른 방은 기다리지 않는다. 순번과 답장 대상 순번은 바뀌지 않는다.
+// 진행 상황은 출력하지 않고 지표(compaction.passes, compaction.steps, compaction.reclaimed_bytes)로만 내보낸다.
+// chat.compaction.interval: 압축 주기 (초, 기본 60, 0 이면 하지 않음)
+class MessageCompactor {
+    static final long DEFAULT_INTERVAL_SECONDS = 60;
+    
+    private final Map<String, ChatRoom> chatRooms;
+    // 주기 하나가 예외로 끝났을 때 (엔진이 다른 백그라운드 작업의 오류와 함께 알린다)
+    private final Consumer<String> errors;
+    
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    
+    public MessageCompactor(Map<String, ChatRoom> chatRooms, Consumer<String> errors) {
+        this.chatRooms = chatRooms;
+        this.errors = errors;
+    }
+    
+    public long getPasses() { return passes.get(); }
+    public long getSteps() { return steps.get(); }
+    public long getReclaimedBytes() { return reclaimedBytes.get(); }
+    
+    public void start(long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "message-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runPass();
+            } catch (RuntimeException e) {
+                // 다음 주기에 다시 시도한다 (예외로 끝나면 스케줄이 멈추므로 여기서 잡는다)
+                errors.accept("메시지 압축 중 오류가 발생했습니다: " + e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+    
+    // 모든 방을 한 번 돈다. 회수한 바이트 수를 반환.
+    public long runPass() {
+        long passSteps = 0;
+        long passBytes = 0;
+        for (ChatRoom room : new ArrayList<>(chatRooms.values())) {
+            while (true) {
+                long reclaimed;
+                // 변경과 같은 잠금 (ChatApplication.commit 참고)
+                synchronized (room) {
+                    reclaimed = room.compactMessages();
+                }
+                if (reclaimed == 0) {
+                    break;
+                }
+                passSteps++;
+                passBytes += reclaimed;
+            }
+        }
+        passes.incrementAndGet();
+        steps.addAndGet(passSteps);
+        reclaimedBytes.addAndGet(passBytes);
+        return passBytes;
+    }
+}
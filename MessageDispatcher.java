@@ -0,0 +1,326 @@
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// MessageDispatcher.java - 새 메시지를 접속 중인 참여자에게 밀어 주는 발행/구독 분배기
+// 보내는 쪽은 메시지 한 건(또는 한 번에 기록된 묶음)을 발행 큐에 넣고 바로 돌아간다. 분배 스레드는 참여자 수와 상관없이 한 번만 만든
+// Delivery 를 온라인 구독자들의 큐에 나눠 넣는다. 구독자 큐는 크기가 정해져 있고, 넘치면 구독마다 정한 정책을
+// 따르므로 느린 구독자 하나가 분배 스레드나 다른 구독자를 막지 않는다.
+// 구독자는 큐가 비어 있다가 채워질 때만 signal 을 받고, 자기 스레드에서 drain() 으로 한꺼번에 가져간다.
+// 보내는 쪽은 방을 잠근 채로 발행하므로 발행 큐가 가득 차도 기다리지 않는다. 넣지 못한 메시지는 방별 누락 수로만
+// 모아 두었다가, 분배 스레드가 따라잡으면 그 방의 참여자들에게 Gap 한 건으로 알린다 (COALESCE 와 같은 방식).
+class MessageDispatcher {
+    // 구독자 큐가 가득 찼을 때
+    enum OverflowPolicy {
+        DROP_OLDEST,   // 가장 오래된 것을 버린다
+        COALESCE,      // 새 것을 버리고 방별 누락 수만 센다 (꺼낼 때 Delivery.isGap() 으로 한 건씩 알려 줌)
+        DISCONNECT     // 구독을 끊긴 상태로 만든다 (구독자가 isOverflowed() 를 보고 연결을 닫는다)
+    }
+    
+    static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final int PUBLISH_QUEUE_CAPACITY = 64 * 1024;
+    private static final int FAN_OUT_BATCH = 256;
+    
+    private final int queueCapacity;
+    private final BlockingQueue<Publication> publications = new LinkedBlockingQueue<>(PUBLISH_QUEUE_CAPACITY);
+    // 발행 큐가 가득 차 넣지 못한 방 -> 누락 (분배 스레드가 묶음마다 꺼내 Gap 으로 나눠 준다)
+    private final Map<String, Overflow> overflows = new ConcurrentHashMap<>();
+    // 분배 중 오류 (엔진이 다른 백그라운드 작업의 오류와 함께 알린다)
+    private final Consumer<String> errors;
+    // 사용자 아이디 -> 구독들 (바꿀 때는 복사본으로 교체)
+    private final Map<String, Subscription[]> subscribers = new ConcurrentHashMap<>();
+    
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong disconnectedCount = new AtomicLong();
+    private final AtomicLong overflowedCount = new AtomicLong();
+    
+    public MessageDispatcher(int queueCapacity, Consumer<String> errors) {
+        this.queueCapacity = queueCapacity;
+        this.errors = errors;
+        Thread worker = new Thread(this::run, "message-dispatcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    public long getPublishedCount() { return publishedCount.get(); }
+    public long getDeliveredCount() { return deliveredCount.get(); }
+    public long getDroppedCount() { return droppedCount.get(); }
+    public long getCoalescedCount() { return coalescedCount.get(); }
+    public long getDisconnectedCount() { return disconnectedCount.get(); }
+    // 발행 큐가 넘쳐 Gap 으로 바뀐 메시지 수
+    public long getOverflowedCount() { return overflowedCount.get(); }
+    public int getSubscriberCount() { return subscribers.size(); }
+    
+    public Subscription subscribe(String userId, OverflowPolicy policy, Runnable signal) {
+        Subscription subscription = new Subscription(userId, policy, signal);
+        subscribers.compute(userId, (id, current) -> {
+            if (current == null) {
+                return new Subscription[] { subscription };
+            }
+            Subscription[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = subscription;
+            return grown;
+        });
+        return subscription;
+    }
+    
+    private void unsubscribe(Subscription subscription) {
+        subscribers.computeIfPresent(subscription.userId, (id, current) -> {
+            List<Subscription> remaining = new ArrayList<>(Arrays.asList(current));
+            remaining.remove(subscription);
+            return remaining.isEmpty() ? null : remaining.toArray(new Subscription[0]);
+        });
+    }
+    
+    // 메시지가 기록된 뒤 호출. origin 은 보낸 세션의 구독 (그 세션에는 보내지 않음, 없으면 null).
+    public void publish(ChatRoom room, Message message, Subscription origin) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        publish(room, new Delivery[] { new Delivery(room.getRoomId(), message) }, origin);
+    }
+    
+    // 한 번에 기록된 메시지 여러 건을 발행 한 번으로 보낸다. 구독자마다 큐를 한 번만 잠그고 모두 넣는다.
+    public void publishAll(ChatRoom room, List<Message> messages, Subscription origin) {
+        if (subscribers.isEmpty() || messages.isEmpty()) {
+            return;
+        }
+        Delivery[] deliveries = new Delivery[messages.size()];
+        for (int i = 0; i < deliveries.length; i++) {
+            deliveries[i] = new Delivery(room.getRoomId(), messages.get(i));
+        }
+        publish(room, deliveries, origin);
+    }
+    
+    private void publish(ChatRoom room, Delivery[] deliveries, Subscription origin) {
+        // 참여자 목록은 보낸 시점의 것을 쓴다 (CopyOnWriteArrayList 이므로 이후 변경과 무관)
+        String[] recipients = room.getParticipants().toArray(new String[0]);
+        if (publications.offer(new Publication(deliveries, recipients, origin))) {
+            publishedCount.addAndGet(deliveries.length);
+            return;
+        }
+        // 방을 잠근 채로 불리므로 기다리지 않는다. 같은 방의 누락은 하나로 합친다.
+        long lastSeq = deliveries[deliveries.length - 1].seq;
+        overflows.merge(room.getRoomId(), new Overflow(deliveries.length, lastSeq, recipients), Overflow::merge);
+        overflowedCount.addAndGet(deliveries.length);
+    }
+    
+    private void run() {
+        List<Publication> batch = new ArrayList<>(FAN_OUT_BATCH);
+        List<Subscription> signalled = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(publications.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            publications.drainTo(batch, FAN_OUT_BATCH - 1);
+            for (Publication publication : batch) {
+                fanOut(publication, signalled);
+            }
+            batch.clear();
+            // 누락은 발행 큐가 가득 찼을 때만 생기므로, 그 뒤로 분배할 묶음이 있어 여기까지 다시 온다
+            for (String roomId : overflows.keySet()) {
+                Overflow overflow = overflows.remove(roomId);
+                if (overflow != null) {
+                    Delivery gap = new Delivery(roomId, overflow.lastSeq, null, 0, 0, null, (int) overflow.missedCount);
+                    fanOut(new Publication(new Delivery[] { gap }, overflow.recipients, null), signalled);
+                }
+            }
+            // 큐가 비어 있다가 채워진 구독자에게만, 묶음 하나에 한 번 알린다
+            for (Subscription subscription : signalled) {
+                try {
+                    subscription.signal.run();
+                } catch (RuntimeException e) {
+                    // 알림을 못 받은 구독자는 큐가 남아 있으므로 다음에 꺼낼 때 받는다
+                    errors.accept("메시지 알림을 전달하지 못했습니다: " + e);
+                }
+            }
+            signalled.clear();
+        }
+    }
+    
+    private void fanOut(Publication publication, List<Subscription> signalled) {
+        for (String participantId : publication.recipients) {
+            Subscription[] subscriptions = subscribers.get(participantId);
+            if (subscriptions == null) {
+                continue;
+            }
+            for (Subscription subscription : subscriptions) {
+                if (subscription != publication.origin && subscription.offer(publication.deliveries)) {
+                    signalled.add(subscription);
+                }
+            }
+        }
+    }
+    
+    private static class Publication {
+        final Delivery[] deliveries;
+        final String[] recipients;
+        final Subscription origin;
+        
+        Publication(Delivery[] deliveries, String[] recipients, Subscription origin) {
+            this.deliveries = deliveries;
+            this.recipients = recipients;
+            this.origin = origin;
+        }
+    }
+    
+    // 발행 큐에 넣지 못한 한 방의 메시지들. 받을 사람은 마지막으로 넣지 못한 때의 참여자다.
+    private static class Overflow {
+        final long missedCount;
+        final long lastSeq;
+        final String[] recipients;
+        
+        Overflow(long missedCount, long lastSeq, String[] recipients) {
+            this.missedCount = missedCount;
+            this.lastSeq = lastSeq;
+            this.recipients = recipients;
+        }
+        
+        Overflow merge(Overflow later) {
+            return new Overflow(missedCount + later.missedCount, later.lastSeq, later.recipients);
+        }
+    }
+    
+    // 구독자에게 전달되는 메시지 한 건. 모든 수신자가 같은 객체를 공유한다.
+    // isGap() 이면 이 방에서 getMissedCount() 건을 놓쳤다는 뜻이고, getSeq() 는 놓친 것 중 마지막 순번이다.
+    static final class Delivery {
+        private final String roomId;
+        private final long seq;
+        private final String senderId;
+        private final long timestamp;
+        private final long replyToSeq;
+        private final String content;
+        private final int missedCount;
+        
+        Delivery(String roomId, Message message) {
+            this(roomId, message.getSeq(), message.getSenderId(), message.getTimestampMillis(),
+                 message.getReplyToSeq(), message.getContent(), 0);
+        }
+        
+        private Delivery(String roomId, long seq, String senderId, long timestamp, long replyToSeq,
+                         String content, int missedCount) {
+            this.roomId = roomId;
+            this.seq = seq;
+            this.senderId = senderId;
+            this.timestamp = timestamp;
+            this.replyToSeq = replyToSeq;
+            this.content = content;
+            this.missedCount = missedCount;
+        }
+        
+        public String getRoomId() { return roomId; }
+        public long getSeq() { return seq; }
+        public String getSenderId() { return senderId; }
+        public long getTimestamp() { return timestamp; }
+        public long getReplyToSeq() { return replyToSeq; }
+        public String getContent() { return content; }
+        public boolean isGap() { return missedCount > 0; }
+        public int getMissedCount() { return missedCount; }
+    }
+    
+    // 세션 하나의 구독. 큐는 분배 스레드와 구독자 스레드만 짧게 잠근다.
+    final class Subscription {
+        private final String userId;
+        private final OverflowPolicy policy;
+        private final Runnable signal;
+        private final ArrayDeque<Delivery> queue = new ArrayDeque<>();
+        // COALESCE: 방 -> [놓친 수, 마지막 순번]
+        private Map<String, long[]> missed;
+        private boolean overflowed;
+        private boolean closed;
+        
+        private Subscription(String userId, OverflowPolicy policy, Runnable signal) {
+            this.userId = userId;
+            this.policy = policy;
+            this.signal = signal;
+        }
+        
+        public String getUserId() { return userId; }
+        
+        public synchronized boolean isOverflowed() { return overflowed; }
+        
+        // 큐가 비어 있다가 채워졌거나 끊긴 상태가 되었으면 true (알려야 함)
+        private synchronized boolean offer(Delivery[] deliveries) {
+            if (closed || overflowed) {
+                return false;
+            }
+            boolean wasEmpty = queue.isEmpty() && missed == null;
+            for (Delivery delivery : deliveries) {
+                if (!offer(delivery)) {
+                    // 끊긴 상태가 됨
+                    return true;
+                }
+            }
+            return wasEmpty;
+        }
+        
+        // 잠금을 잡은 채로 부른다. 넘침 정책이 구독을 끊었으면 false.
+        private boolean offer(Delivery delivery) {
+            if (queue.size() < queueCapacity) {
+                queue.add(delivery);
+                deliveredCount.incrementAndGet();
+                return true;
+            }
+            switch (policy) {
+                case DROP_OLDEST:
+                    queue.poll();
+                    queue.add(delivery);
+                    droppedCount.incrementAndGet();
+                    return true;
+                case COALESCE: {
+                    if (missed == null) {
+                        missed = new LinkedHashMap<>();
+                    }
+                    long[] gap = missed.computeIfAbsent(delivery.roomId, id -> new long[2]);
+                    // 넘긴 것이 이미 Gap 이면 그 누락 수를 그대로 더한다
+                    gap[0] += Math.max(1, delivery.missedCount);
+                    gap[1] = delivery.seq;
+                    coalescedCount.incrementAndGet();
+                    return true;
+                }
+                default:
+                    overflowed = true;
+                    queue.clear();
+                    disconnectedCount.incrementAndGet();
+                    return false;
+            }
+        }
+        
+        // 쌓인 것을 모두 꺼낸다. 놓친 방이 있으면 큐의 메시지 뒤에 방마다 Gap 한 건씩 붙인다.
+        public synchronized List<Delivery> drain() {
+            if (queue.isEmpty() && missed == null) {
+                return Collections.emptyList();
+            }
+            List<Delivery> drained = new ArrayList<>(queue);
+            queue.clear();
+            if (missed != null) {
+                for (Map.Entry<String, long[]> entry : missed.entrySet()) {
+                    long[] gap = entry.getValue();
+                    drained.add(new Delivery(entry.getKey(), gap[1], null, 0, 0, null, (int) gap[0]));
+                }
+                missed = null;
+            }
+            return drained;
+        }
+        
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                queue.clear();
+                missed = null;
+            }
+            unsubscribe(this);
+        }
+    }
+}
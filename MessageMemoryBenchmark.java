@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+// MessageMemoryBenchmark.java - 메시지 저장 방식별 메모리 사용량 비교
+// 이전 방식(메시지마다 객체 + 문자열 아이디 + Date + 아이디 색인)과 MessageStore(열 배열 + 세그먼트)에
+// 같은 메시지를 넣고, GC 후 힙 증가량과 세그먼트 파일 크기를 메시지당 바이트로 출력한다.
+// 인자가 없으면 큰 방 위주(메시지 100만 건, 방 100개)와 작은 방 위주(메시지 10만 건, 방 1만 개) 두 경우를 잰다.
+// 실행: java -Xmx2g MessageMemoryBenchmark [메시지 수] [방 수]
+public class MessageMemoryBenchmark {
+    private static final int SENDERS = 1000;
+    
+    public static void main(String[] args) throws IOException {
+        String[] senders = new String[SENDERS];
+        for (int i = 0; i < SENDERS; i++) {
+            senders[i] = "user" + i;
+            SenderTable.numberOf(senders[i]);
+        }
+        if (args.length > 0) {
+            run(Integer.parseInt(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 100, senders);
+            return;
+        }
+        run(1_000_000, 100, senders);
+        System.out.println();
+        run(100_000, 10_000, senders);
+    }
+    
+    private static void run(int messageCount, int roomCount, String[] senders) throws IOException {
+        Path directory = Files.createTempDirectory("message-memory-benchmark");
+        MessageStore.configure(directory);
+        
+        System.out.printf("메시지 %,d건, 채팅방 %,d개%n%n", messageCount, roomCount);
+        System.out.printf("%-24s %14s %14s %14s%n", "방식", "힙(바이트/건)", "파일(바이트/건)", "합계(MB)");
+        
+        // 각 방식은 별도 메서드에서 잰다. 큰 쪽(이전 방식)을 먼저 재면 수거 후에도 힙이 다 줄지 않아
+        // 다음 측정의 기준값이 부풀므로 MessageStore 를 먼저 잰다.
+        long storeHeap = measureStore(messageCount, roomCount, senders);
+        long legacyHeap = measureLegacy(messageCount, roomCount, senders);
+        print("이전 방식 (객체)", legacyHeap, 0, messageCount);
+        print("MessageStore (열 배열)", storeHeap, directorySize(directory), messageCount);
+    }
+    
+    private static long measureLegacy(int messageCount, int roomCount, String[] senders) {
+        long before = usedHeap();
+        List<LegacyRoom> rooms = new ArrayList<>();
+        for (int r = 0; r < roomCount; r++) {
+            rooms.add(new LegacyRoom());
+        }
+        for (int i = 0; i < messageCount; i++) {
+            LegacyMessage message = new LegacyMessage("msg_" + i, senders[i % SENDERS], content(i), new Date(timestamp(i)));
+            if (i % 10 == 0 && i > 0) {
+                message.replyToMessageId = "msg_" + (i - 1);
+            }
+            rooms.get(i % roomCount).add(message);
+        }
+        long used = usedHeap() - before;
+        Reference.reachabilityFence(rooms);
+        return used;
+    }
+    
+    private static long measureStore(int messageCount, int roomCount, String[] senders) {
+        long before = usedHeap();
+        List<MessageStore> stores = new ArrayList<>();
+        for (int r = 0; r < roomCount; r++) {
+            stores.add(new MessageStore("room_" + r));
+        }
+        for (int i = 0; i < messageCount; i++) {
+            MessageStore store = stores.get(i % roomCount);
+            long replyToSeq = i % 10 == 0 && i > 0 ? store.size() : 0;
+            store.append(senders[i % SENDERS], content(i), replyToSeq, timestamp(i), (byte) 0);
+        }
+        long used = usedHeap() - before;
+        Reference.reachabilityFence(stores);
+        return used;
+    }
+    
+    private static String content(int i) {
+        return "안녕하세요, 오늘 회의는 " + (i % 24) + "시에 시작합니다. #" + i;
+    }
+    
+    private static long timestamp(int i) {
+        return 1_700_000_000_000L + i * 1000L;
+    }
+    
+    private static void print(String name, long heapBytes, long fileBytes, int messageCount) {
+        System.out.printf("%-24s %14.1f %14.1f %14.1f%n", name,
+            (double) heapBytes / messageCount, (double) fileBytes / messageCount,
+            (heapBytes + fileBytes) / (1024.0 * 1024.0));
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private static long directorySize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+    
+    // 열 단위 저장 이전의 메시지 표현
+    private static class LegacyMessage {
+        String messageId;
+        long seq;
+        String senderId;
+        String content;
+        Date timestamp;
+        boolean isDeleted;
+        boolean isPinned;
+        boolean isBookmarked;
+        String replyToMessageId;
+        
+        LegacyMessage(String messageId, String senderId, String content, Date timestamp) {
+            this.messageId = messageId;
+            this.senderId = senderId;
+            this.content = content;
+            this.timestamp = timestamp;
+        }
+    }
+    
+    private static class LegacyRoom {
+        final List<LegacyMessage> messages = new ArrayList<>();
+        final Map<String, LegacyMessage> messageIndex = new HashMap<>();
+        
+        void add(LegacyMessage message) {
+            message.seq = messages.size() + 1;
+            messages.add(message);
+            messageIndex.put(message.messageId, message);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+import java.util.*;
+
+// MessageSearchIndex.java - 채팅방 메시지 검색용 역색인
+// 라틴 문자/숫자는 단어 단위, 한글은 1글자 + 2글자 n-gram 단위로 색인한다.
+class MessageSearchIndex {
+    private final ChatRoom room;
+    // 정렬된 용어 사전 (접두어 검색을 위해 TreeMap 사용)
+    private final TreeMap<String, Postings> terms;
+    
+    public MessageSearchIndex(ChatRoom room) {
+        this.room = room;
+        this.terms = new TreeMap<>();
+    }
+    
+    public int getTermCount() { return terms.size(); }
+    
+    public void add(Message message) {
+        for (String term : tokenize(message.getContent())) {
+            terms.computeIfAbsent(term, t -> new Postings()).add(message.getSeq());
+        }
+    }
+    
+    public void remove(Message message) {
+        for (String term : tokenize(message.getContent())) {
+            Postings postings = terms.get(term);
+            if (postings != null) {
+                postings.remove(message.getSeq());
+                if (postings.size() == 0) {
+                    terms.remove(term);
+                }
+            }
+        }
+    }
+    
+    // 모든 검색어를 포함하는 메시지 순번 중 beforeSeq 보다 작은 것을 최신순으로 offset 부터 limit 개 반환
+    public List<Long> search(String query, long beforeSeq, int offset, int limit) {
+        List<QueryTerm> queryTerms = parseQuery(query);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        
+        List<SeqList> lists = new ArrayList<>();
+        for (QueryTerm queryTerm : queryTerms) {
+            SeqList postings = queryTerm.prefix ? unionOfPrefix(queryTerm.text) : terms.get(queryTerm.text);
+            if (postings == null || postings.size() == 0) {
+                return Collections.emptyList();
+            }
+            lists.add(postings);
+        }
+        lists.sort(Comparator.comparingInt(SeqList::size));
+        
+        // 가장 짧은 목록을 뒤에서부터 훑으며 나머지 목록과 교집합
+        SeqList smallest = lists.get(0);
+        List<Long> results = new ArrayList<>();
+        int skipped = 0;
+        for (long seq = smallest.lastBefore(beforeSeq); seq > 0 && results.size() < limit; seq = smallest.lastBefore(seq)) {
+            boolean matchesAll = true;
+            for (int j = 1; j < lists.size() && matchesAll; j++) {
+                matchesAll = lists.get(j).contains(seq);
+            }
+            if (matchesAll && !matchesPhrases(queryTerms, seq)) {
+                matchesAll = false;
+            }
+            if (matchesAll) {
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    results.add(seq);
+                }
+            }
+        }
+        return results;
+    }
+    
+    // 한글 2글자 n-gram 교집합은 순서를 보장하지 않으므로 3글자 이상 한글 검색어는 본문으로 확인
+    private boolean matchesPhrases(List<QueryTerm> queryTerms, long seq) {
+        for (QueryTerm queryTerm : queryTerms) {
+            if (queryTerm.phrase != null) {
+                Message msg = room.getMessageBySeq(seq);
+                if (msg == null || !msg.getContent().contains(queryTerm.phrase)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    // 접두어에 걸리는 용어가 여럿이면 목록을 합치지 않고 합집합으로 훑는다 (필요한 만큼만 뒤에서부터 읽는다)
+    private SeqList unionOfPrefix(String prefix) {
+        SortedMap<String, Postings> range = terms.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (range.size() == 1) {
+            return range.values().iterator().next();
+        }
+        return new Union(range.values().toArray(new Postings[0]));
+    }
+    
+    // 검색어 해석: 라틴 단어는 접두어 검색, 한글은 색인과 같은 n-gram 으로 나눈다
+    private static List<QueryTerm> parseQuery(String query) {
+        List<QueryTerm> queryTerms = new ArrayList<>();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            if (isHangul(c)) {
+                int start = i;
+                while (i < length && isHangul(query.charAt(i))) i++;
+                String run = query.substring(start, i);
+                if (run.length() == 1) {
+                    queryTerms.add(new QueryTerm(run, false, null));
+                } else {
+                    for (int k = 0; k + 1 < run.length(); k++) {
+                        queryTerms.add(new QueryTerm(run.substring(k, k + 2), false, null));
+                    }
+                    if (run.length() > 2) {
+                        queryTerms.get(queryTerms.size() - 1).phrase = run;
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                StringBuilder word = new StringBuilder();
+                while (i < length && isWordChar(query.charAt(i))) {
+                    word.append(Character.toLowerCase(query.charAt(i)));
+                    i++;
+                }
+                queryTerms.add(new QueryTerm(word.toString(), true, null));
+            } else {
+                i++;
+            }
+        }
+        return queryTerms;
+    }
+    
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new HashSet<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isHangul(c)) {
+                int start = i;
+                while (i < length && isHangul(text.charAt(i))) i++;
+                for (int k = start; k < i; k++) {
+                    tokens.add(text.substring(k, k + 1));
+                    if (k + 1 < i) {
+                        tokens.add(text.substring(k, k + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                StringBuilder word = new StringBuilder();
+                while (i < length && isWordChar(text.charAt(i))) {
+                    word.append(Character.toLowerCase(text.charAt(i)));
+                    i++;
+                }
+                tokens.add(word.toString());
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+    
+    private static boolean isHangul(char c) {
+        return (c >= '가' && c <= '힣') || (c >= 'ㄱ' && c <= 'ㆎ');
+    }
+    
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) && !isHangul(c);
+    }
+    
+    private static class QueryTerm {
+        final String text;
+        final boolean prefix;
+        String phrase;
+        
+        QueryTerm(String text, boolean prefix, String phrase) {
+            this.text = text;
+            this.prefix = prefix;
+            this.phrase = phrase;
+        }
+    }
+    
+    // 오름차순 메시지 순번 집합. 검색은 뒤에서부터 lastBefore 로 훑고 나머지 목록에는 contains 로 묻는다.
+    interface SeqList {
+        // 합집합이면 각 목록 크기의 합 (훑을 목록을 고르는 데만 쓴다)
+        int size();
+        boolean contains(long seq);
+        // seq 보다 작은 것 중 가장 큰 순번 (없으면 0)
+        long lastBefore(long seq);
+    }
+    
+    // 오름차순으로 정렬된 메시지 순번 목록
+    static class Postings implements SeqList {
+        private long[] seqs = new long[4];
+        private int size;
+        
+        public int size() { return size; }
+        long get(int i) { return seqs[i]; }
+        
+        void add(long seq) {
+            if (size > 0 && seqs[size - 1] >= seq) {
+                int pos = Arrays.binarySearch(seqs, 0, size, seq);
+                if (pos >= 0) {
+                    return;
+                }
+                insertAt(-pos - 1, seq);
+                return;
+            }
+            insertAt(size, seq);
+        }
+        
+        void remove(long seq) {
+            int pos = Arrays.binarySearch(seqs, 0, size, seq);
+            if (pos >= 0) {
+                System.arraycopy(seqs, pos + 1, seqs, pos, size - pos - 1);
+                size--;
+            }
+        }
+        
+        public boolean contains(long seq) {
+            return Arrays.binarySearch(seqs, 0, size, seq) >= 0;
+        }
+        
+        public long lastBefore(long seq) {
+            int index = indexBefore(seq);
+            return index >= 0 ? seqs[index] : 0;
+        }
+        
+        // seq 보다 작은 것 중 가장 큰 순번의 위치 (없으면 -1)
+        int indexBefore(long seq) {
+            int pos = Arrays.binarySearch(seqs, 0, size, seq);
+            return pos >= 0 ? pos - 1 : -pos - 2;
+        }
+        
+        private void insertAt(int pos, long seq) {
+            if (size == seqs.length) {
+                seqs = Arrays.copyOf(seqs, size * 2);
+            }
+            System.arraycopy(seqs, pos, seqs, pos + 1, size - pos);
+            seqs[pos] = seq;
+            size++;
+        }
+    }
+    
+    // 접두어 검색용: 여러 목록을 복사하지 않고 하나의 합집합처럼 본다.
+    // 뒤에서부터 훑을 때는 목록마다 위치를 두고 가장 큰 순번을 힙으로 골라 병합한다.
+    private static class Union implements SeqList {
+        private final Postings[] parts;
+        private final int size;
+        // lastBefore 용 병합 상태 (처음 부를 때 만든다). 힙에는 목록 번호를, positions 에는 목록마다 현재 위치를 둔다.
+        private int[] positions;
+        private PriorityQueue<Integer> heap;
+        
+        Union(Postings[] parts) {
+            this.parts = parts;
+            int total = 0;
+            for (Postings part : parts) {
+                total += part.size();
+            }
+            this.size = total;
+        }
+        
+        public int size() { return size; }
+        
+        public boolean contains(long seq) {
+            for (Postings part : parts) {
+                if (part.contains(seq)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        // 훑는 쪽에서만 부르며, 매번 앞서 돌려준 값(또는 더 작은 값)을 넘긴다
+        public long lastBefore(long seq) {
+            if (heap == null) {
+                positions = new int[parts.length];
+                heap = new PriorityQueue<>(parts.length,
+                    (a, b) -> Long.compare(parts[b].get(positions[b]), parts[a].get(positions[a])));
+                for (int i = 0; i < parts.length; i++) {
+                    positions[i] = parts[i].indexBefore(seq);
+                    if (positions[i] >= 0) {
+                        heap.add(i);
+                    }
+                }
+            }
+            // 여러 용어에 들어 있는 순번은 목록마다 한 번씩 나오므로 seq 이상인 것은 모두 넘긴다
+            while (!heap.isEmpty() && parts[heap.peek()].get(positions[heap.peek()]) >= seq) {
+                int part = heap.poll();
+                if (--positions[part] >= 0) {
+                    heap.add(part);
+                }
+            }
+            return heap.isEmpty() ? 0 : parts[heap.peek()].get(positions[heap.peek()]);
+        }
+    }
+}
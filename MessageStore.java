@@ -0,0 +1,640 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// MessageStore.java - 채팅방 메시지 저장소 (열 단위 저장)
+// 메시지 메타데이터는 청크로 나눈 기본형 배열(시각, 보낸 사람 번호, 플래그, 본문 위치)에 두고,
+// 본문(답장 대상 순번 + UTF-8 내용)은 세그먼트에 기록한다. 방마다 처음 16KB 는 여러 방이 함께 쓰는 힙 영역에
+// 다른 방의 본문과 섞어 기록하고, 그 뒤로는 여러 방이 함께 쓰는 매핑 파일 영역에서 256KB 부터 4MB 까지
+// 두 배씩 잘라 온 세그먼트에 기록한다 (Region 참고).
+// 첫 청크의 열 배열도 작게 시작해 두 배씩 늘리므로, 메시지가 몇 건뿐인 방은 몇백 바이트만 쓴다.
+// 메시지 객체는 읽을 때마다 가벼운 뷰로 만든다.
+// 목록 위치(index)는 순번 - 1 이다. 세그먼트 파일은 시작할 때 스냅샷과 변경 로그로부터 다시 만든다.
+// 쓰기는 한 번에 한 스레드(방 단위로 직렬화된 commit)만 하고, 읽기는 잠금 없이 한다. 쓰는 쪽은 본문과 열을
+// 다 채운 뒤 size(volatile)를 올리므로, size 를 읽은 스레드는 그 안의 메시지를 온전히 본다.
+// 삭제는 플래그만 바꾸고, 삭제된 본문과 통째로 삭제된 청크는 compactStep() 이 나중에 회수한다 (MessageCompactor 참고).
+// 순번은 자리를 그대로 두므로 압축 뒤에도 바뀌지 않는다.
+class MessageStore extends AbstractList<Message> implements RandomAccess {
+    private static final int CHUNK_SIZE = 4096;
+    private static final int FIRST_CHUNK_CAPACITY = 8;
+    private static final int HEAP_SEGMENT_BYTES = 16 * 1024;
+    private static final int FIRST_FILE_SEGMENT_BYTES = 256 * 1024;
+    private static final int MAX_SEGMENT_BYTES = 4 * 1024 * 1024;
+    // 세그먼트를 잘라 주는 공유 영역 크기
+    private static final int HEAP_REGION_BYTES = 1024 * 1024;
+    private static final int FILE_REGION_BYTES = 16 * 1024 * 1024;
+    // 청크가 메시지 한 건에 쓰는 열 배열 바이트 (시각 8 + 보낸 사람 4 + 플래그 1 + 세그먼트 참조 4 + 위치 4)
+    private static final int CHUNK_BYTES_PER_MESSAGE = 21;
+    
+    // 삭제된 뒤 압축된 메시지는 모두 이 빈 본문(답장 대상 0, 내용 없음)을 가리킨다
+    private static final Segment EMPTY_BODY = new Segment(ByteBuffer.allocate(12), null);
+    // 통째로 삭제된 청크 대신 모든 방이 같이 쓰는 청크 (바꾸지 않는다)
+    private static final Chunk TOMBSTONES = Chunk.tombstones();
+    
+    private static Path baseDirectory;
+    // 지금 세그먼트를 잘라 주고 있는 공유 영역과 다음 영역 파일 번호 (MessageStore 클래스 잠금으로 보호)
+    private static Region heapRegion;
+    private static Region fileRegion;
+    private static int nextFileNumber;
+    
+    private final String roomId;
+    
+    // 메타데이터 청크 (마지막 청크만 채워지는 중). 배열을 늘리거나 청크를 바꿔 끼울 때는 복사본으로 바꾼다.
+    private volatile Chunk[] chunks = new Chunk[1];
+    private volatile int size;
+    
+    // 본문 세그먼트 (마지막이 지금 기록 중인 것). 읽는 쪽은 청크를 거쳐 세그먼트를 보므로,
+    // 이 목록은 쓰는 스레드와 압축만 방을 잠근 채로 다룬다.
+    private final List<Segment> segments = new ArrayList<>();
+    // 공유 힙 영역에 기록한 바이트 (HEAP_SEGMENT_BYTES 까지)와 기록용으로 연 파일 세그먼트 수 (다음 크기를 정함)
+    private int sharedBytes;
+    private int fileSegments;
+    
+    public MessageStore(String roomId) {
+        this.roomId = roomId;
+    }
+    
+    // 세그먼트 파일을 둘 디렉터리를 정한다. 이전 실행의 파일은 지운다.
+    static synchronized void configure(Path directory) throws IOException {
+        deleteRecursively(directory);
+        Files.createDirectories(directory);
+        baseDirectory = directory;
+        heapRegion = null;
+        fileRegion = null;
+    }
+    
+    private static synchronized Path baseDirectory() throws IOException {
+        if (baseDirectory == null) {
+            baseDirectory = Files.createTempDirectory("chat-messages");
+            baseDirectory.toFile().deleteOnExit();
+        }
+        return baseDirectory;
+    }
+    
+    @Override
+    public int size() { return size; }
+    
+    @Override
+    public Message get(int index) {
+        int size = this.size;
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        Chunk chunk = chunks[index / CHUNK_SIZE];
+        int i = index % CHUNK_SIZE;
+        return view(chunk, i, index + 1, chunk.flags[i]);
+    }
+    
+    public Message getBySeq(long seq) {
+        if (seq < 1 || seq > size) {
+            return null;
+        }
+        return get((int) (seq - 1));
+    }
+    
+    // seq 가 통째로 삭제되어 접힌 청크 안이면 그 청크 바로 앞 순번, 아니면 seq (뒤에서부터 훑을 때 건너뛰기용)
+    public long skipCollapsedBackward(long seq) {
+        if (seq < 1 || seq > size) {
+            return seq;
+        }
+        int chunkIndex = (int) ((seq - 1) / CHUNK_SIZE);
+        return chunks[chunkIndex] == TOMBSTONES ? (long) chunkIndex * CHUNK_SIZE : seq;
+    }
+    
+    // seq 가 통째로 삭제되어 접힌 청크 안이면 그 청크 바로 다음 순번, 아니면 seq (앞에서부터 훑을 때 건너뛰기용)
+    public long skipCollapsedForward(long seq) {
+        if (seq < 1 || seq > size) {
+            return seq;
+        }
+        int chunkIndex = (int) ((seq - 1) / CHUNK_SIZE);
+        return chunks[chunkIndex] == TOMBSTONES ? (long) (chunkIndex + 1) * CHUNK_SIZE + 1 : seq;
+    }
+    
+    // 만들 때의 크기까지만 도는 반복자. 도는 동안 메시지가 추가돼도 예외 없이 그 시점의 목록을 본다.
+    @Override
+    public Iterator<Message> iterator() {
+        int end = size;
+        return new Iterator<Message>() {
+            private int next;
+            
+            @Override
+            public boolean hasNext() { return next < end; }
+            
+            @Override
+            public Message next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+    
+    // 메시지를 끝에 추가하고 순번을 반환. 삭제된 채로 복구되는 메시지는 본문을 기록하지 않는다.
+    public long append(String senderId, String content, long replyToSeq, long timestamp, byte flags) {
+        int size = this.size;
+        write(size, senderId, content, replyToSeq, timestamp, flags);
+        // 여기서 공개된다
+        this.size = size + 1;
+        return size + 1;
+    }
+    
+    // 같은 사람이 같은 시각에 보낸 메시지 여러 건을 끝에 추가하고 마지막 순번을 반환.
+    // 모두 채운 뒤 size 를 한 번만 올리므로 읽는 쪽은 묶음 전체를 보거나 하나도 보지 않는다.
+    public long appendAll(String senderId, List<String> contents, long timestamp) {
+        int size = this.size;
+        for (int i = 0; i < contents.size(); i++) {
+            write(size + i, senderId, contents.get(i), 0, timestamp, (byte) 0);
+        }
+        this.size = size + contents.size();
+        return this.size;
+    }
+    
+    // index 자리에 본문과 열을 채운다 (size 는 부르는 쪽이 올린다)
+    private void write(int index, String senderId, String content, long replyToSeq, long timestamp, byte flags) {
+        boolean deleted = (flags & Message.DELETED) != 0;
+        Segment segment = EMPTY_BODY;
+        int position = 0;
+        if (!deleted) {
+            byte[] text = content.getBytes(StandardCharsets.UTF_8);
+            int recordLength = 12 + text.length;
+            segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            position = segment != null ? segment.reserve(recordLength) : -1;
+            while (position < 0) {
+                // 공유 영역은 다른 방도 쓰므로 연 직후에 차 있을 수 있다. 그러면 다음 영역에서 다시 연다.
+                segment = newSegment(recordLength);
+                position = segment.reserve(recordLength);
+                if (position < 0) {
+                    segment.release();
+                    continue;
+                }
+                segment.firstSeq = index + 1;
+                segments.add(segment);
+            }
+            if (segment.shared) {
+                sharedBytes += recordLength;
+            }
+            segment.buffer.putLong(position, replyToSeq);
+            segment.buffer.putInt(position + 8, text.length);
+            segment.buffer.put(position + 12, text);
+            segment.lastSeq = index + 1;
+        }
+        
+        int chunkIndex = index / CHUNK_SIZE;
+        int i = index % CHUNK_SIZE;
+        Chunk[] chunks = this.chunks;
+        if (chunkIndex == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        if (chunks[chunkIndex] == null) {
+            // 첫 청크만 작게 시작한다. 청크를 하나 다 채운 방은 이후 청크도 채울 가능성이 높다.
+            chunks[chunkIndex] = new Chunk(chunkIndex == 0 ? FIRST_CHUNK_CAPACITY : CHUNK_SIZE);
+            this.chunks = chunks;
+        } else if (i == chunks[chunkIndex].capacity()) {
+            // 읽는 쪽은 잠그지 않으므로 늘린 복사본으로 바꿔 끼운다
+            chunks = chunks.clone();
+            chunks[chunkIndex] = chunks[chunkIndex].grown();
+            this.chunks = chunks;
+        }
+        Chunk chunk = chunks[chunkIndex];
+        chunk.timestamps[i] = timestamp;
+        chunk.senders[i] = SenderTable.numberOf(senderId);
+        chunk.flags[i] = flags;
+        chunk.segments[i] = segment;
+        chunk.offsets[i] = position;
+        if (deleted) {
+            chunk.deletedCount++;
+        }
+    }
+    
+    // 압축된 뒤에는 본문이 남아 있지 않으므로 삭제를 되돌리는 데 쓰지 않는다
+    public void setDeleted(long seq, boolean value) { setFlag(seq, Message.DELETED, value); }
+    public void setPinned(long seq, boolean value) { setFlag(seq, Message.PINNED, value); }
+    public void setBookmarked(long seq, boolean value) { setFlag(seq, Message.BOOKMARKED, value); }
+    
+    private void setFlag(long seq, byte flag, boolean value) {
+        if (seq < 1 || seq > size) {
+            return;
+        }
+        int index = (int) (seq - 1);
+        Chunk chunk = chunks[index / CHUNK_SIZE];
+        if (chunk == TOMBSTONES) {
+            // 접힌 청크의 메시지는 모두 삭제된 것이라 바꿀 것이 없다 (여러 방이 같이 쓰므로 건드리지 않음)
+            return;
+        }
+        if (chunk.frozen) {
+            // 스냅샷이 보고 있는 플래그 배열은 고치지 않고, 플래그를 복사한 청크로 바꿔 끼운다
+            chunk = chunk.withNewFlags();
+            Chunk[] replaced = chunks.clone();
+            replaced[index / CHUNK_SIZE] = chunk;
+            this.chunks = replaced;
+        }
+        int i = index % CHUNK_SIZE;
+        byte before = chunk.flags[i];
+        byte after = (byte) (value ? before | flag : before & ~flag);
+        chunk.flags[i] = after;
+        if (flag == Message.DELETED && before != after) {
+            // 압축할 곳을 고를 때 쓰는 세그먼트별 삭제된 본문 크기와 청크별 삭제 수
+            Segment segment = chunk.segments[i];
+            if (segment != EMPTY_BODY) {
+                int recordLength = 12 + segment.buffer.getInt(chunk.offsets[i] + 8);
+                segment.deletedBytes += value ? recordLength : -recordLength;
+            }
+            chunk.deletedCount += value ? 1 : -1;
+        }
+    }
+    
+    // fromSeq ~ toSeq (양끝 포함) 중 삭제된 메시지 수. 삭제가 없는 청크는 건너뛰고, 범위가 청크 전체이면
+    // 청크의 삭제 수를 그대로 쓰므로 플래그는 범위 양끝의 청크에서만 센다. 쓰는 쪽처럼 방을 잠근 채로 부른다.
+    public int countDeleted(long fromSeq, long toSeq) {
+        int from = (int) Math.max(fromSeq, 1) - 1;
+        int to = (int) Math.min(toSeq, size);
+        Chunk[] chunks = this.chunks;
+        int count = 0;
+        for (int index = from; index < to; ) {
+            Chunk chunk = chunks[index / CHUNK_SIZE];
+            int end = Math.min(to, (index / CHUNK_SIZE + 1) * CHUNK_SIZE);
+            if (chunk == TOMBSTONES) {
+                count += end - index;
+            } else if (end - index == CHUNK_SIZE) {
+                count += chunk.deletedCount;
+            } else if (chunk.deletedCount > 0) {
+                for (int i = index; i < end; i++) {
+                    if ((chunk.flags[i % CHUNK_SIZE] & Message.DELETED) != 0) {
+                        count++;
+                    }
+                }
+            }
+            index = end;
+        }
+        return count;
+    }
+    
+    // 압축 한 단계. 통째로 삭제된 청크 하나를 묘비 청크로 접거나, 삭제된 본문이 4분의 1 이상인 세그먼트 하나를
+    // 살아 있는 본문만 담은 새 세그먼트로 바꾼다. 회수한 바이트 수를 반환하고, 할 것이 없으면 0.
+    // 쓰는 스레드와 마찬가지로 방을 잠근 채로 부른다. 읽는 쪽은 잠그지 않으므로 청크를 고치지 않고 복사본으로
+    // 바꿔 끼우며, 이전 청크와 세그먼트는 그것을 읽던 스레드가 다 쓰고 나면 GC 가 거둔다.
+    long compactStep() {
+        Chunk[] chunks = this.chunks;
+        int sealedChunks = size / CHUNK_SIZE;
+        for (int c = 0; c < sealedChunks; c++) {
+            if (chunks[c] != TOMBSTONES && chunks[c].deletedCount == CHUNK_SIZE) {
+                Chunk[] replaced = chunks.clone();
+                replaced[c] = TOMBSTONES;
+                this.chunks = replaced;
+                // 이 청크의 본문 중 아직 세그먼트에 남은 것은 그 세그먼트를 압축할 때 회수된다
+                return (long) CHUNK_SIZE * CHUNK_BYTES_PER_MESSAGE;
+            }
+        }
+        // 마지막 세그먼트는 기록 중이므로 건드리지 않는다
+        for (int s = 0; s < segments.size() - 1; s++) {
+            Segment segment = segments.get(s);
+            if (segment.deletedBytes > 0 && segment.deletedBytes >= segment.used / 4) {
+                return rewrite(s, segment);
+            }
+        }
+        return 0;
+    }
+    
+    // 세그먼트의 살아 있는 본문을 새 세그먼트로 옮기고, 그 세그먼트를 가리키던 청크들을 복사본으로 바꾼다.
+    // 삭제된 메시지는 빈 본문을 가리키게 한다.
+    private long rewrite(int index, Segment segment) {
+        int liveBytes = segment.used - segment.deletedBytes;
+        Segment compacted = null;
+        if (liveBytes > 0) {
+            compacted = allocate(liveBytes, liveBytes <= HEAP_SEGMENT_BYTES);
+            compacted.firstSeq = segment.firstSeq;
+            compacted.lastSeq = segment.lastSeq;
+        }
+        
+        Chunk[] chunks = this.chunks.clone();
+        int first = (int) (segment.firstSeq - 1);
+        int last = (int) (segment.lastSeq - 1);
+        for (int c = first / CHUNK_SIZE; c <= last / CHUNK_SIZE; c++) {
+            if (chunks[c] == TOMBSTONES) {
+                continue;
+            }
+            Chunk copy = chunks[c].withNewBodies();
+            int from = Math.max(first, c * CHUNK_SIZE) % CHUNK_SIZE;
+            int to = Math.min(last, (c + 1) * CHUNK_SIZE - 1) % CHUNK_SIZE;
+            for (int i = from; i <= to; i++) {
+                if (copy.segments[i] != segment) {
+                    continue;
+                }
+                if ((copy.flags[i] & Message.DELETED) != 0) {
+                    copy.segments[i] = EMPTY_BODY;
+                    copy.offsets[i] = 0;
+                } else {
+                    int offset = copy.offsets[i];
+                    int recordLength = 12 + segment.buffer.getInt(offset + 8);
+                    compacted.buffer.put(compacted.used, segment.buffer, offset, recordLength);
+                    copy.segments[i] = compacted;
+                    copy.offsets[i] = compacted.used;
+                    compacted.used += recordLength;
+                }
+            }
+            chunks[c] = copy;
+        }
+        this.chunks = chunks;
+        
+        if (compacted != null) {
+            segments.set(index, compacted);
+        } else {
+            segments.remove(index);
+        }
+        segment.release();
+        return segment.footprint() - (compacted != null ? compacted.footprint() : 0);
+    }
+    
+    // 스냅샷용: 지금까지의 메시지를 다른 스레드에서 읽을 수 있게 고정한다. 스냅샷 쓰기 잠금 안에서 부르므로
+    // 메시지 수에 비례하는 일은 하지 않는다. 이미 기록된 시각/보낸 사람/본문은 바뀌지 않으므로 청크 참조만 가져가고,
+    // 플래그는 청크에 표시해 두어 이후의 변경이 배열을 복사한 뒤 고치게 한다 (setFlag 참고).
+    Frozen freeze() {
+        int size = this.size;
+        Chunk[] chunks = this.chunks.clone();
+        for (int c = 0; c * CHUNK_SIZE < size; c++) {
+            if (chunks[c] != TOMBSTONES) {
+                chunks[c].frozen = true;
+            }
+        }
+        return new Frozen(chunks, size);
+    }
+    
+    // 마지막 세그먼트가 찼을 때 다음 세그먼트. 공유 힙 영역에 HEAP_SEGMENT_BYTES 까지 기록한 뒤로는
+    // 파일 영역에서 256KB 부터 4MB 까지 두 배씩 잘라 온다.
+    private Segment newSegment(int recordLength) {
+        if (fileSegments == 0 && sharedBytes + recordLength <= HEAP_SEGMENT_BYTES) {
+            return sharedSegment(recordLength, HEAP_SEGMENT_BYTES - sharedBytes);
+        }
+        int size = Math.max(recordLength, Math.min(MAX_SEGMENT_BYTES, FIRST_FILE_SEGMENT_BYTES << Math.min(fileSegments, 4)));
+        fileSegments++;
+        return allocate(size, false);
+    }
+    
+    private Segment allocate(int bytes, boolean heap) {
+        try {
+            return slice(bytes, heap);
+        } catch (IOException e) {
+            throw new UncheckedIOException("메시지 세그먼트를 만들지 못했습니다: " + roomId, e);
+        }
+    }
+    
+    // 공유 영역에서 bytes 만큼 잘라 이 방만 쓰는 세그먼트로 준다
+    private static synchronized Segment slice(int bytes, boolean heap) throws IOException {
+        Region region = regionWithRoom(bytes, heap);
+        Segment segment = new Segment(region.buffer.slice(region.used, bytes), region);
+        region.used += bytes;
+        region.slices++;
+        return segment;
+    }
+    
+    // 공유 힙 영역에 다른 방과 섞어 기록하는 세그먼트. 이 방의 기록은 limit 바이트까지 받는다.
+    private static synchronized Segment sharedSegment(int recordLength, int limit) {
+        try {
+            Region region = regionWithRoom(recordLength, true);
+            region.slices++;
+            return new Segment(region.buffer, region, true, limit);
+        } catch (IOException e) {
+            throw new AssertionError(e); // 힙 영역은 파일을 열지 않는다
+        }
+    }
+    
+    // 지금 영역에 bytes 만큼 남아 있지 않으면 새 영역을 연다. 영역보다 큰 기록은 그 기록만 담는 영역을 따로 연다.
+    private static Region regionWithRoom(int bytes, boolean heap) throws IOException {
+        Region region = heap ? heapRegion : fileRegion;
+        if (region != null && region.used + bytes <= region.buffer.capacity()) {
+            return region;
+        }
+        if (region != null) {
+            region.seal();
+        }
+        int regionBytes = Math.max(bytes, heap ? HEAP_REGION_BYTES : FILE_REGION_BYTES);
+        region = heap ? new Region(ByteBuffer.allocate(regionBytes), null) : mapRegion(regionBytes);
+        if (heap) {
+            heapRegion = region;
+        } else {
+            fileRegion = region;
+        }
+        return region;
+    }
+    
+    private static Region mapRegion(int bytes) throws IOException {
+        Path file = baseDirectory().resolve(String.format("region-%06d.dat", nextFileNumber++));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // 매핑은 채널을 닫아도 유지된다
+            return new Region(channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes), file);
+        }
+    }
+    
+    private static Message view(Chunk chunk, int i, long seq, byte flags) {
+        return new Message(seq, chunk.senders[i], chunk.timestamps[i], flags,
+                           chunk.segments[i].buffer, chunk.offsets[i]);
+    }
+    
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+                for (Path child : children) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.delete(path);
+    }
+    
+    // 본문 세그먼트 하나. 공유 영역에서 잘라 온 이 방만의 조각이거나, 공유 힙 영역 전체에 다른 방과 섞어 쓰는
+    // 기록들의 묶음이다 (shared). 숫자 필드는 쓰는 스레드와 압축만 방을 잠근 채로 바꾼다.
+    private static final class Segment {
+        final ByteBuffer buffer;
+        // 가져온 영역 (빈 본문이면 null)
+        final Region region;
+        // true 면 buffer 는 영역 전체이고 기록 위치는 영역에서 받는다
+        final boolean shared;
+        // 이 세그먼트에 기록할 수 있는 바이트
+        final int limit;
+        // 기록한 바이트와 그중 삭제된 메시지의 본문 바이트
+        int used;
+        int deletedBytes;
+        // 본문이 이 세그먼트에 기록된 메시지의 순번 범위
+        long firstSeq;
+        long lastSeq;
+        
+        Segment(ByteBuffer buffer, Region region) {
+            this(buffer, region, false, buffer.capacity());
+        }
+        
+        Segment(ByteBuffer buffer, Region region, boolean shared, int limit) {
+            this.buffer = buffer;
+            this.region = region;
+            this.shared = shared;
+            this.limit = limit;
+        }
+        
+        // recordLength 바이트를 기록할 위치를 잡는다. 자리가 없으면 -1.
+        int reserve(int recordLength) {
+            if (used + recordLength > limit) {
+                return -1;
+            }
+            int position = shared ? region.reserve(recordLength) : used;
+            if (position >= 0) {
+                used += recordLength;
+            }
+            return position;
+        }
+        
+        // 이 세그먼트가 차지하는 바이트 (섞어 쓰는 세그먼트는 기록한 만큼)
+        int footprint() {
+            return shared ? used : buffer.capacity();
+        }
+        
+        // 압축으로 대체된 뒤. 조각 자리는 다시 쓰지 않는다 (잠그지 않고 읽던 스레드가 아직 볼 수 있음).
+        void release() {
+            if (region != null) {
+                region.release();
+            }
+        }
+    }
+    
+    // 여러 방의 세그먼트를 잘라 주는 공유 영역. 힙 영역은 마지막 조각이 사라지면 GC 가 거두고,
+    // 파일 영역은 더 잘라 주지 않게 된 뒤 모든 조각이 압축으로 대체되면 파일 이름을 지운다
+    // (매핑은 마지막 참조가 사라질 때 풀린다). 방마다 파일을 매핑하지 않으므로 매핑 수는 영역 수만큼이다.
+    private static final class Region {
+        final ByteBuffer buffer;
+        // 매핑한 파일 (힙 영역이면 null)
+        final Path file;
+        // 잘라 준 바이트와 아직 대체되지 않은 조각 수, 더 잘라 주지 않는지 (MessageStore 클래스 잠금으로 보호)
+        int used;
+        int slices;
+        boolean sealed;
+        
+        Region(ByteBuffer buffer, Path file) {
+            this.buffer = buffer;
+            this.file = file;
+        }
+        
+        // 섞어 쓰는 세그먼트의 기록 위치. 자리가 없으면 -1.
+        int reserve(int bytes) {
+            synchronized (MessageStore.class) {
+                if (sealed || used + bytes > buffer.capacity()) {
+                    return -1;
+                }
+                used += bytes;
+                return used - bytes;
+            }
+        }
+        
+        void seal() {
+            synchronized (MessageStore.class) {
+                sealed = true;
+                deleteIfUnused();
+            }
+        }
+        
+        void release() {
+            synchronized (MessageStore.class) {
+                slices--;
+                deleteIfUnused();
+            }
+        }
+        
+        private void deleteIfUnused() {
+            if (file == null || !sealed || slices > 0) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // 매핑된 파일을 지울 수 없는 환경이면 다음 시작 때 configure 가 지운다
+            }
+        }
+    }
+    
+    // 메시지 CHUNK_SIZE 개 분량의 열 배열
+    private static class Chunk {
+        final long[] timestamps;
+        final int[] senders;
+        final byte[] flags;
+        // 메시지마다 본문이 있는 세그먼트와 그 안의 위치
+        final Segment[] segments;
+        final int[] offsets;
+        // 삭제된 메시지 수 (CHUNK_SIZE 가 되면 묘비 청크로 접을 수 있다)
+        int deletedCount;
+        // 스냅샷이 이 청크의 플래그를 읽을 수 있음. 스냅샷 쓰기 잠금 안에서 표시하고, 플래그를 바꾸는 commit 은
+        // 읽기 잠금을 잡으므로 표시를 본다. 스냅샷이 끝나도 지우지 않으므로 다음 변경 때 한 번 더 복사될 수 있다.
+        boolean frozen;
+        
+        Chunk(int capacity) {
+            this(new long[capacity], new int[capacity], new byte[capacity], new Segment[capacity], new int[capacity]);
+        }
+        
+        private Chunk(long[] timestamps, int[] senders, byte[] flags, Segment[] segments, int[] offsets) {
+            this.timestamps = timestamps;
+            this.senders = senders;
+            this.flags = flags;
+            this.segments = segments;
+            this.offsets = offsets;
+        }
+        
+        // 본문 위치와 플래그를 새 배열로 바꾼 복사본. 압축은 스냅샷 잠금 없이 돌므로 플래그도 따로 두어,
+        // 이 청크를 고정한 스냅샷이 있어도 복사본의 플래그 변경이 그쪽에 보이지 않게 한다.
+        Chunk withNewBodies() {
+            Chunk copy = new Chunk(timestamps, senders, flags.clone(), segments.clone(), offsets.clone());
+            copy.deletedCount = deletedCount;
+            return copy;
+        }
+        
+        int capacity() { return flags.length; }
+        
+        // 열 배열을 두 배로 (CHUNK_SIZE 까지) 늘린 복사본
+        Chunk grown() {
+            int capacity = Math.min(CHUNK_SIZE, capacity() * 2);
+            Chunk copy = new Chunk(Arrays.copyOf(timestamps, capacity), Arrays.copyOf(senders, capacity),
+                                   Arrays.copyOf(flags, capacity), Arrays.copyOf(segments, capacity),
+                                   Arrays.copyOf(offsets, capacity));
+            copy.deletedCount = deletedCount;
+            return copy;
+        }
+        
+        // 플래그만 새 배열로 바꾼 복사본 (스냅샷이 고정한 청크의 플래그를 바꿀 때)
+        Chunk withNewFlags() {
+            Chunk copy = new Chunk(timestamps, senders, flags.clone(), segments, offsets);
+            copy.deletedCount = deletedCount;
+            return copy;
+        }
+        
+        static Chunk tombstones() {
+            Chunk chunk = new Chunk(CHUNK_SIZE);
+            Arrays.fill(chunk.flags, Message.DELETED);
+            Arrays.fill(chunk.segments, EMPTY_BODY);
+            chunk.deletedCount = CHUNK_SIZE;
+            return chunk;
+        }
+    }
+    
+    // freeze() 시점의 메시지 목록. 스냅샷 기록 스레드가 읽는다.
+    static class Frozen {
+        private final Chunk[] chunks;
+        private final int size;
+        
+        private Frozen(Chunk[] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+        
+        public int size() { return size; }
+        
+        public Message get(int index) {
+            Chunk chunk = chunks[index / CHUNK_SIZE];
+            int i = index % CHUNK_SIZE;
+            return view(chunk, i, index + 1, chunk.flags[i]);
+        }
+    }
+}
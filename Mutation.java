@@ -0,0 +1,191 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Mutation.java - 변경 로그에 기록되는 상태 변경 한 건
+// 종류(type)와 문자열/숫자 인자 목록으로 구성되며, 인자 순서는 각 생성 메서드의 주석을 따른다.
+class Mutation {
+    static final byte REGISTER_USER = 1;
+    static final byte ADD_FRIEND = 2;
+    static final byte REMOVE_FRIEND = 3;
+    static final byte BLOCK_USER = 4;
+    static final byte UNBLOCK_USER = 5;
+    static final byte SET_NICKNAME = 6;
+    static final byte SET_PASSWORD = 7;
+    static final byte SET_EMAIL = 8;
+    static final byte SET_PHONE = 9;
+    static final byte CREATE_ROOM = 10;
+    static final byte JOIN_ROOM = 11;
+    static final byte LEAVE_ROOM = 12;
+    static final byte SET_ROOM_PINNED = 13;
+    static final byte ADD_MESSAGE = 14;
+    static final byte SET_MESSAGE_PINNED = 15;
+    static final byte SET_MESSAGE_BOOKMARKED = 16;
+    static final byte DELETE_MESSAGE = 17;
+    static final byte MARK_READ = 18;
+    static final byte ADD_MESSAGES = 19;
+    
+    private static final String[] NO_STRINGS = new String[0];
+    private static final long[] NO_NUMBERS = new long[0];
+    // 개수가 이 값 이상이면 개수 바이트 자리에 이 값을 쓰고 실제 개수를 int 로 덧붙인다
+    private static final int LONG_COUNT = 255;
+    
+    private final byte type;
+    private final String[] strings;
+    private final long[] numbers;
+    
+    private Mutation(byte type, String[] strings, long[] numbers) {
+        this.type = type;
+        this.strings = strings;
+        this.numbers = numbers;
+    }
+    
+    public byte getType() { return type; }
+    public String getString(int index) { return strings[index]; }
+    public long getNumber(int index) { return numbers[index]; }
+    public boolean getFlag(int index) { return numbers[index] != 0; }
+    public int getStringCount() { return strings.length; }
+    // from 번째부터 끝까지의 문자열 (복사하지 않은 읽기 전용 목록)
+    public List<String> getStrings(int from) { return Collections.unmodifiableList(Arrays.asList(strings).subList(from, strings.length)); }
+    public int getNumberCount() { return numbers.length; }
+    
+    // strings: userId, password, nickname, email, phone
+    static Mutation registerUser(String userId, String password, String nickname, String email, String phone) {
+        return new Mutation(REGISTER_USER, new String[] { userId, password, nickname, email, phone }, NO_NUMBERS);
+    }
+    
+    // strings: userId, 대상 userId
+    static Mutation addFriend(String userId, String friendId) { return pair(ADD_FRIEND, userId, friendId); }
+    static Mutation removeFriend(String userId, String friendId) { return pair(REMOVE_FRIEND, userId, friendId); }
+    static Mutation blockUser(String userId, String targetId) { return pair(BLOCK_USER, userId, targetId); }
+    static Mutation unblockUser(String userId, String targetId) { return pair(UNBLOCK_USER, userId, targetId); }
+    
+    // strings: userId, 새 값
+    static Mutation setNickname(String userId, String nickname) { return pair(SET_NICKNAME, userId, nickname); }
+    static Mutation setPassword(String userId, String password) { return pair(SET_PASSWORD, userId, password); }
+    static Mutation setEmail(String userId, String email) { return pair(SET_EMAIL, userId, email); }
+    static Mutation setPhone(String userId, String phone) { return pair(SET_PHONE, userId, phone); }
+    
+    // strings: roomId, roomName / numbers: isGroupChat
+    static Mutation createRoom(String roomId, String roomName, boolean isGroupChat) {
+        return new Mutation(CREATE_ROOM, new String[] { roomId, roomName }, new long[] { isGroupChat ? 1 : 0 });
+    }
+    
+    // strings: roomId, userId
+    static Mutation joinRoom(String roomId, String userId) { return pair(JOIN_ROOM, roomId, userId); }
+    
+    // strings: roomId, userId
+    static Mutation leaveRoom(String roomId, String userId) { return pair(LEAVE_ROOM, roomId, userId); }
+    
+    // strings: roomId, userId / numbers: 읽은 마지막 메시지 순번
+    static Mutation markRead(String roomId, String userId, long seq) {
+        return new Mutation(MARK_READ, new String[] { roomId, userId }, new long[] { seq });
+    }
+    
+    // strings: roomId / numbers: 고정 여부
+    static Mutation setRoomPinned(String roomId, boolean pinned) {
+        return new Mutation(SET_ROOM_PINNED, new String[] { roomId }, new long[] { pinned ? 1 : 0 });
+    }
+    
+    // strings: roomId, senderId, content / numbers: 메시지 순번, 답장 대상 순번(없으면 0), timestamp(ms)
+    // 순번이 이미 있는 메시지면 재적용 시 건너뛴다
+    static Mutation addMessage(String roomId, long seq, String senderId, String content,
+                               long replyToSeq, long timestamp) {
+        return new Mutation(ADD_MESSAGE, new String[] { roomId, senderId, content },
+                            new long[] { seq, replyToSeq, timestamp });
+    }
+    
+    // 같은 사람이 보낸 메시지 여러 건을 한 번에 (순번이 이어진다)
+    // strings: roomId, senderId, content... / numbers: 첫 메시지 순번, timestamp(ms)
+    // 첫 순번이 이미 있는 메시지면 재적용 시 건너뛴다
+    static Mutation addMessages(String roomId, long firstSeq, String senderId, List<String> contents, long timestamp) {
+        String[] strings = new String[2 + contents.size()];
+        strings[0] = roomId;
+        strings[1] = senderId;
+        for (int i = 0; i < contents.size(); i++) {
+            strings[2 + i] = contents.get(i);
+        }
+        return new Mutation(ADD_MESSAGES, strings, new long[] { firstSeq, timestamp });
+    }
+    
+    // strings: roomId / numbers: 메시지 순번, 설정 값
+    static Mutation setMessagePinned(String roomId, long seq, boolean pinned) {
+        return new Mutation(SET_MESSAGE_PINNED, new String[] { roomId }, new long[] { seq, pinned ? 1 : 0 });
+    }
+    
+    static Mutation setMessageBookmarked(String roomId, long seq, boolean bookmarked) {
+        return new Mutation(SET_MESSAGE_BOOKMARKED, new String[] { roomId }, new long[] { seq, bookmarked ? 1 : 0 });
+    }
+    
+    // strings: roomId / numbers: 메시지 순번
+    static Mutation deleteMessage(String roomId, long seq) {
+        return new Mutation(DELETE_MESSAGE, new String[] { roomId }, new long[] { seq });
+    }
+    
+    private static Mutation pair(byte type, String first, String second) {
+        return new Mutation(type, new String[] { first, second }, NO_NUMBERS);
+    }
+    
+    // 형식: type(1) | 문자열 수(1) | [길이(4, null 은 -1) | UTF-8]... | 숫자 수(1) | [long(8)]...
+    // 수가 255 이상이면 수 자리는 255 와 실제 수(4)
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(type);
+        writeCount(out, strings.length);
+        for (String value : strings) {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        writeCount(out, numbers.length);
+        for (long value : numbers) {
+            out.writeLong(value);
+        }
+    }
+    
+    static Mutation readFrom(DataInput in) throws IOException {
+        byte type = in.readByte();
+        int stringCount = readCount(in);
+        String[] strings = stringCount == 0 ? NO_STRINGS : new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int length = in.readInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        int numberCount = readCount(in);
+        long[] numbers = numberCount == 0 ? NO_NUMBERS : new long[numberCount];
+        for (int i = 0; i < numberCount; i++) {
+            numbers[i] = in.readLong();
+        }
+        return new Mutation(type, strings, numbers);
+    }
+    
+    private static void writeCount(DataOutput out, int count) throws IOException {
+        if (count < LONG_COUNT) {
+            out.writeByte(count);
+        } else {
+            out.writeByte(LONG_COUNT);
+            out.writeInt(count);
+        }
+    }
+    
+    private static int readCount(DataInput in) throws IOException {
+        int count = in.readUnsignedByte();
+        if (count < LONG_COUNT) {
+            return count;
+        }
+        count = in.readInt();
+        if (count < 0) {
+            throw new IOException("잘못된 변경 기록입니다: 개수 " + count);
+        }
+        return count;
+    }
+}
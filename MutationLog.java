@@ -0,0 +1,414 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// MutationLog.java - 추가 전용(append-only) 변경 로그
+// 레코드 형식: 길이(4) | CRC32(4) | Mutation 본문
+// 로그는 세그먼트 파일(segment-<첫 레코드 번호>.log)로 나뉘며, 레코드 번호(LSN)는 1부터 증가한다.
+// 재시작 시 스냅샷 이후의 레코드를 다시 적용(replay)해 메모리 상태를 복구한다.
+class MutationLog implements Closeable {
+    // SYNC: 매 기록마다 fsync / BATCH: 동시에 기다리는 기록을 모아 한 번에 fsync (그룹 커밋)
+    // ASYNC: 기다리지 않고 백그라운드에서 주기적으로 fsync (장애 시 최근 기록 유실 가능)
+    enum Durability { SYNC, BATCH, ASYNC }
+    
+    static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final long ASYNC_FLUSH_INTERVAL_MS = 100;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    
+    private final Path directory;
+    private final Durability durability;
+    private final long segmentBytes;
+    
+    // 첫 레코드 번호 -> 세그먼트 파일
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel channel;
+    
+    // 아직 파일에 쓰이지 않은 레코드. 쓰기 권한(writing)을 가진 쪽이 spare 와 교체해 잠금 밖에서 쓴다.
+    private Buffer pending = new Buffer();
+    private Buffer spare = new Buffer();
+    private long appendedLsn;
+    private long durableLsn;
+    private boolean writing;
+    private boolean closed;
+    private IOException failure;
+    private Thread flusher;
+    
+    public MutationLog(Path directory, Durability durability, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.durability = durability;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long firstLsn = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(firstLsn, file);
+            }
+        }
+    }
+    
+    public Durability getDurability() { return durability; }
+    
+    public synchronized long getLastLsn() { return appendedLsn; }
+    
+    // afterLsn 보다 큰 번호의 레코드를 순서대로 적용하고 적용한 건수를 반환한다.
+    // 마지막 세그먼트 끝의 깨진 레코드(기록 도중 중단)는 잘라낸다. 새 기록을 추가하기 전에 한 번 호출해야 한다.
+    public synchronized long replay(long afterLsn, Consumer<Mutation> applier) throws IOException {
+        long applied = 0;
+        long nextLsn = segments.isEmpty() ? afterLsn + 1 : segments.firstKey();
+        if (nextLsn > afterLsn + 1) {
+            throw new IOException("변경 로그가 스냅샷 이후부터 이어지지 않습니다: " + nextLsn + " > " + (afterLsn + 1));
+        }
+        
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            if (segment.getKey() != nextLsn) {
+                throw new IOException("변경 로그 세그먼트가 누락되었습니다: " + nextLsn);
+            }
+            boolean last = segment.getKey().equals(segments.lastKey());
+            try (FileChannel in = FileChannel.open(segment.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long[] result = readSegment(in, nextLsn, afterLsn, applier, last);
+                nextLsn += result[0];
+                applied += result[1];
+            }
+        }
+        
+        appendedLsn = nextLsn - 1;
+        durableLsn = appendedLsn;
+        if (segments.isEmpty()) {
+            openSegment(appendedLsn + 1);
+        } else {
+            channel = FileChannel.open(segments.lastEntry().getValue(), StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+        startFlusher();
+        return applied;
+    }
+    
+    // 세그먼트 하나를 읽어 { 읽은 레코드 수, 적용한 레코드 수 } 를 반환
+    private long[] readSegment(FileChannel in, long firstLsn, long afterLsn, Consumer<Mutation> applier,
+                               boolean lastSegment) throws IOException {
+        long records = 0;
+        long applied = 0;
+        long validEnd = 0;
+        long fileSize = in.size();
+        DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 1 << 16));
+        CRC32 crc = new CRC32();
+        byte[] payload = new byte[256];
+        
+        while (validEnd + HEADER_SIZE <= fileSize) {
+            int length = data.readInt();
+            int checksum = data.readInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE || validEnd + HEADER_SIZE + length > fileSize) {
+                break;
+            }
+            if (payload.length < length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+            data.readFully(payload, 0, length);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            
+            if (firstLsn + records > afterLsn) {
+                applier.accept(Mutation.readFrom(new DataInputStream(new ByteArrayInputStream(payload, 0, length))));
+                applied++;
+            }
+            validEnd += HEADER_SIZE + length;
+            records++;
+        }
+        
+        if (validEnd < fileSize) {
+            if (!lastSegment) {
+                throw new IOException("변경 로그 세그먼트가 손상되었습니다: " + firstLsn);
+            }
+            in.truncate(validEnd);
+        }
+        return new long[] { records, applied };
+    }
+    
+    // 변경을 기록한다. 내구성 모드에 따라 디스크에 반영될 때까지 기다린다.
+    public void append(Mutation mutation) throws IOException {
+        byte[] frame = encode(mutation);
+        if (durability == Durability.SYNC) {
+            appendSync(frame);
+            return;
+        }
+        long lsn;
+        synchronized (this) {
+            checkWritable();
+            pending.write(frame);
+            lsn = ++appendedLsn;
+            if (durability == Durability.ASYNC) {
+                if (pending.length >= Buffer.FLUSH_THRESHOLD) {
+                    notifyAll();
+                }
+                return;
+            }
+        }
+        awaitDurable(lsn);
+    }
+    
+    // 다른 기록과 모으지 않고 레코드 하나를 쓰고 바로 fsync
+    private void appendSync(byte[] frame) throws IOException {
+        long lsn;
+        synchronized (this) {
+            checkWritable();
+            while (writing) {
+                waitForWriter();
+            }
+            writing = true;
+            lsn = ++appendedLsn;
+        }
+        finishWrite(lsn, writeFrames(frame, frame.length, lsn, false));
+    }
+    
+    // lsn 까지 디스크에 반영될 때까지 대기.
+    // 쓰는 쪽이 없으면 직접 모인 기록 전체를 쓰고(리더), 있으면 그 결과를 기다린다.
+    private void awaitDurable(long lsn) throws IOException {
+        while (true) {
+            Buffer batch;
+            long batchEnd;
+            synchronized (this) {
+                if (durableLsn >= lsn) {
+                    return;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                if (writing) {
+                    waitForWriter();
+                    continue;
+                }
+                writing = true;
+                batch = takePending();
+                batchEnd = appendedLsn;
+            }
+            writeBatch(batch, batchEnd, false);
+        }
+    }
+    
+    // 스냅샷 직전에 호출: 대기 중인 기록을 모두 쓰고 새 세그먼트를 시작한다.
+    // 반환한 번호까지의 레코드는 닫힌 세그먼트에 있으므로 스냅샷 완료 후 지울 수 있다.
+    public long rollSegment() throws IOException {
+        Buffer batch;
+        long batchEnd;
+        synchronized (this) {
+            checkWritable();
+            while (writing) {
+                waitForWriter();
+            }
+            writing = true;
+            batch = takePending();
+            batchEnd = appendedLsn;
+        }
+        writeBatch(batch, batchEnd, true);
+        return batchEnd;
+    }
+    
+    // 모든 레코드가 lsn 이하인 (닫힌) 세그먼트 파일을 지운다.
+    public void deleteSegmentsThrough(long lsn) throws IOException {
+        List<Path> obsolete = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<Long, Path>> it = segments.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Path> segment = it.next();
+                Long nextFirst = segments.higherKey(segment.getKey());
+                if (nextFirst == null || nextFirst - 1 > lsn) {
+                    break;
+                }
+                obsolete.add(segment.getValue());
+                it.remove();
+            }
+        }
+        for (Path file : obsolete) {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    // writing 권한을 가진 쪽만 호출
+    private void writeBatch(Buffer batch, long batchEnd, boolean roll) throws IOException {
+        IOException error = writeFrames(batch.bytes, batch.length, batchEnd, roll);
+        synchronized (this) {
+            batch.length = 0;
+            spare = batch;
+        }
+        finishWrite(batchEnd, error);
+    }
+    
+    // 파일에 쓰고 fsync 한 뒤, 세그먼트가 가득 찼거나 roll 요청이면 새 세그먼트를 연다. 실패는 반환값으로 전달
+    private IOException writeFrames(byte[] bytes, int length, long batchEnd, boolean roll) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (length > 0) {
+                channel.force(false);
+            }
+            if ((roll && channel.size() > 0) || channel.size() >= segmentBytes) {
+                openSegment(batchEnd + 1);
+            }
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+    
+    private void finishWrite(long batchEnd, IOException error) throws IOException {
+        synchronized (this) {
+            writing = false;
+            if (error == null) {
+                durableLsn = Math.max(durableLsn, batchEnd);
+            } else if (failure == null) {
+                failure = error;
+            }
+            notifyAll();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+    
+    private void openSegment(long firstLsn) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        FileChannel next = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING);
+        if (channel != null) {
+            channel.close();
+        }
+        channel = next;
+        synchronized (this) {
+            segments.put(firstLsn, file);
+        }
+    }
+    
+    private Buffer takePending() {
+        Buffer batch = pending;
+        pending = spare;
+        spare = null;
+        return batch;
+    }
+    
+    private void waitForWriter() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("변경 로그 기록 대기 중 중단되었습니다.");
+        }
+    }
+    
+    public void flush() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appendedLsn;
+        }
+        awaitDurable(target);
+    }
+    
+    private void startFlusher() {
+        if (durability != Durability.ASYNC || flusher != null) {
+            return;
+        }
+        flusher = new Thread(() -> {
+            while (true) {
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        wait(ASYNC_FLUSH_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                try {
+                    flush();
+                } catch (IOException e) {
+                    // failure 에 기록되어 다음 append 에서 보고된다
+                    return;
+                }
+            }
+        }, "mutation-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed || channel == null) {
+                closed = true;
+                return;
+            }
+        }
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            channel.close();
+        }
+    }
+    
+    private void checkWritable() throws IOException {
+        if (closed || channel == null) {
+            throw new IOException("변경 로그가 열려 있지 않습니다: " + directory);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    private static byte[] encode(Mutation mutation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        mutation.writeTo(out);
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - HEADER_SIZE;
+        if (length > MAX_RECORD_SIZE) {
+            throw new IOException("변경 레코드가 너무 큽니다: " + length + " bytes");
+        }
+        
+        CRC32 crc = new CRC32();
+        crc.update(frame, HEADER_SIZE, length);
+        ByteBuffer header = ByteBuffer.wrap(frame, 0, HEADER_SIZE);
+        header.putInt(length);
+        header.putInt((int) crc.getValue());
+        return frame;
+    }
+    
+    // 재사용하는 바이트 버퍼
+    private static class Buffer {
+        static final int FLUSH_THRESHOLD = 1 << 20;
+        
+        byte[] bytes = new byte[1 << 16];
+        int length;
+        
+        void write(byte[] data) {
+            if (length + data.length > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, length + data.length)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+            System.arraycopy(data, 0, bytes, length, data.length);
+            length += data.length;
+        }
+    }
+}
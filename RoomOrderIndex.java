@@ -0,0 +1,87 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// RoomOrderIndex.java - 사용자 한 명의 채팅방을 (고정 여부, 최근 메시지 시각, 방 아이디) 순으로 유지하는 색인
+// 고정된 방이 먼저, 그 안에서는 최근 메시지가 있는 방이 먼저 온다. 방에 메시지가 오거나 고정이 바뀌면
+// ChatRoom 이 참여자들의 색인에 알리므로, 목록을 볼 때마다 전체를 정렬하지 않고 앞에서부터 K개를 O(K)로 읽는다.
+// 같은 방에 대한 갱신은 그 방의 잠금 아래에서만 일어나므로 방 단위로는 순서가 섞이지 않는다.
+// 읽기는 잠그지 않으며, 방 하나가 자리를 옮기는 순간에는 그 방이 잠깐 빠져 보일 수 있다.
+class RoomOrderIndex {
+    private final ConcurrentSkipListSet<Entry> order = new ConcurrentSkipListSet<>();
+    // 방 아이디 -> 지금 색인에 들어 있는 항목 (자리를 옮길 때 이전 항목을 지우기 위해)
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    public void add(ChatRoom room) {
+        Entry entry = new Entry(room);
+        Entry previous = entries.put(room.getRoomId(), entry);
+        if (previous != null) {
+            order.remove(previous);
+        }
+        order.add(entry);
+    }
+    
+    public void remove(ChatRoom room) {
+        Entry previous = entries.remove(room.getRoomId());
+        if (previous != null) {
+            order.remove(previous);
+        }
+    }
+    
+    // 방의 고정 여부나 최근 메시지 시각이 바뀌었을 때 (색인에 없는 방이면 무시)
+    public void update(ChatRoom room) {
+        Entry previous = entries.get(room.getRoomId());
+        if (previous == null) {
+            return;
+        }
+        Entry entry = new Entry(room);
+        if (entry.compareTo(previous) == 0) {
+            return;
+        }
+        entries.put(room.getRoomId(), entry);
+        order.remove(previous);
+        order.add(entry);
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    // 앞에서부터 limit 개
+    public List<ChatRoom> top(int limit) {
+        List<ChatRoom> rooms = new ArrayList<>(Math.min(limit, entries.size()));
+        for (Entry entry : order) {
+            if (rooms.size() >= limit) {
+                break;
+            }
+            rooms.add(entry.room);
+        }
+        return rooms;
+    }
+    
+    // 정렬 기준이 되는 값은 만들 때 복사해 둔다 (방의 값이 바뀌어도 트리 안의 순서가 깨지지 않게)
+    private static final class Entry implements Comparable<Entry> {
+        final boolean pinned;
+        final long lastMessageTime;
+        final String roomId;
+        final ChatRoom room;
+        
+        Entry(ChatRoom room) {
+            this.pinned = room.isPinned();
+            this.lastMessageTime = room.getLastMessageTime().getTime();
+            this.roomId = room.getRoomId();
+            this.room = room;
+        }
+        
+        @Override
+        public int compareTo(Entry other) {
+            if (pinned != other.pinned) {
+                return pinned ? -1 : 1;
+            }
+            if (lastMessageTime != other.lastMessageTime) {
+                return Long.compare(other.lastMessageTime, lastMessageTime);
+            }
+            return roomId.compareTo(other.roomId);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+// SearchHit.java - 여러 채팅방을 가로지르는 검색 결과 한 건
+class SearchHit {
+    private final ChatRoom room;
+    private final Message message;
+    
+    public SearchHit(ChatRoom room, Message message) {
+        this.room = room;
+        this.message = message;
+    }
+    
+    public ChatRoom getRoom() { return room; }
+    public Message getMessage() { return message; }
+}
@@ -0,0 +1,41 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// SenderTable.java - 보낸 사람 아이디 <-> 번호 사전
+// 메시지마다 아이디 문자열 대신 4바이트 번호만 저장하기 위한 전역 사전이다.
+// 번호는 프로세스 안에서만 의미가 있으므로 파일에는 아이디 문자열로 기록한다.
+// 이미 있는 아이디를 찾거나 번호로 아이디를 읽을 때는 잠그지 않는다. 새 아이디를 등록할 때만
+// computeIfAbsent 안에서 번호를 정하고 이름 배열을 복사본으로 바꾼다.
+final class SenderTable {
+    private static final Map<String, Integer> numbers = new ConcurrentHashMap<>();
+    // 번호 -> 아이디. 늘릴 때는 복사본으로 바꾸고, 번호가 공개되기 전에 이름을 먼저 채운다.
+    private static volatile String[] names = new String[64];
+    private static int count;
+    
+    private SenderTable() {}
+    
+    static int numberOf(String senderId) {
+        Integer number = numbers.get(senderId);
+        return number != null ? number : numbers.computeIfAbsent(senderId, SenderTable::register);
+    }
+    
+    // computeIfAbsent 안에서만 부른다. 서로 다른 아이디가 동시에 들어올 수 있으므로 번호 배정은 따로 잠근다.
+    private static synchronized Integer register(String senderId) {
+        String[] current = names;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, count * 2);
+        }
+        current[count] = senderId;
+        names = current;
+        return count++;
+    }
+    
+    static String nameOf(int number) {
+        return names[number];
+    }
+    
+    // 지금까지 등록된 아이디 (번호 순)
+    static synchronized String[] names() {
+        return Arrays.copyOf(names, count);
+    }
+}
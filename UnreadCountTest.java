@@ -0,0 +1,82 @@
+// UnreadCountTest.java - 삭제와 읽음 위치가 섞였을 때 안읽은 메시지 수 확인
+// 테스트 프레임워크 없이 돈다. 실패하면 어긋난 경우를 출력하고 종료 코드 1로 끝난다.
+// 실행: java UnreadCountTest
+public class UnreadCountTest {
+    private static int failures;
+    
+    public static void main(String[] args) {
+        deleteThenPartialRead();
+        deleteOnBothSidesOfPartialRead();
+        partialReadThenReadAll();
+        partialReadAcrossChunks();
+        
+        if (failures > 0) {
+            System.out.println("실패 " + failures + "건");
+            System.exit(1);
+        }
+        System.out.println("모두 통과");
+    }
+    
+    // 1~10 중 3, 5 삭제 후 6까지 읽음 -> 7~10 이 남는다
+    private static void deleteThenPartialRead() {
+        ChatRoom room = roomWithMessages(10);
+        room.deleteMessage(3);
+        room.deleteMessage(5);
+        check("삭제 직후", room.getUnreadCount("reader"), 8);
+        room.markReadUpTo("reader", 6);
+        check("삭제 -> 중간까지 읽음", room.getUnreadCount("reader"), 4);
+    }
+    
+    // 읽은 구간 안(2)과 밖(9)의 삭제가 섞인 경우 -> 7, 8, 10 이 남는다
+    private static void deleteOnBothSidesOfPartialRead() {
+        ChatRoom room = roomWithMessages(10);
+        room.deleteMessage(2);
+        room.deleteMessage(9);
+        room.markReadUpTo("reader", 6);
+        check("읽은 구간 안팎의 삭제", room.getUnreadCount("reader"), 3);
+        room.deleteMessage(7);
+        check("중간까지 읽은 뒤 삭제", room.getUnreadCount("reader"), 2);
+    }
+    
+    private static void partialReadThenReadAll() {
+        ChatRoom room = roomWithMessages(10);
+        room.deleteMessage(4);
+        room.deleteMessage(8);
+        room.markReadUpTo("reader", 5);
+        check("중간까지 읽음", room.getUnreadCount("reader"), 4);
+        room.markAllRead("reader");
+        check("끝까지 읽음", room.getUnreadCount("reader"), 0);
+        room.addMessage("writer", "새 메시지", 0, System.currentTimeMillis());
+        check("끝까지 읽은 뒤 새 메시지", room.getUnreadCount("reader"), 1);
+    }
+    
+    // 청크(4096건) 경계를 넘는 구간: 통째로 읽은 청크의 삭제 수와 양끝 청크의 플래그를 함께 센다
+    private static void partialReadAcrossChunks() {
+        ChatRoom room = roomWithMessages(10_000);
+        for (long seq = 1; seq <= 10_000; seq += 3) {
+            room.deleteMessage(seq);
+        }
+        // 삭제 3334건, 남은 6666건
+        check("여러 청크 삭제", room.getUnreadCount("reader"), 6666);
+        room.markReadUpTo("reader", 9000);
+        // 9001~10000 중 삭제된 것은 9001, 9004, ..., 10000 (334건)
+        check("청크를 넘어 중간까지 읽음", room.getUnreadCount("reader"), 1000 - 334);
+    }
+    
+    private static ChatRoom roomWithMessages(int count) {
+        ChatRoom room = new ChatRoom("unread_test", "테스트", true);
+        room.addParticipant("writer");
+        room.addParticipant("reader");
+        for (int i = 1; i <= count; i++) {
+            room.addMessage("writer", "메시지 " + i, 0, System.currentTimeMillis());
+        }
+        return room;
+    }
+    
+    private static void check(String name, int actual, int expected) {
+        if (actual != expected) {
+            failures++;
+            System.out.println("❌ " + name + ": 안읽음 " + actual + " (기대 " + expected + ")");
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// User.java - 사용자 정보를 저장하는 클래스
+// 프로필 필드는 volatile, 친구/차단 목록은 이 객체의 잠금으로 보호한다.
+// 스냅샷은 목록을 복사하지 않고 참조만 가져가며, 가져간 목록은 다음 변경 때 한 번만 복사해 새로 쓴다.
+class User {
+    private final String userId;
+    private volatile String password;
+    private volatile String nickname;
+    private volatile String email;
+    private volatile String phone;
+    private Set<String> friendList;
+    private Set<String> blockedList;
+    // 스냅샷이 참조 중인 목록이면 true (고치기 전에 복사한다)
+    private boolean friendListShared;
+    private boolean blockedListShared;
+    // 참여 중인 채팅방 (방 아이디 -> 방). 이름은 DisplayNames 로 따로 구한다.
+    private final Map<String, ChatRoom> chatRooms;
+    // 같은 방들을 고정 여부와 최근 메시지 순으로 유지 (chatRooms 와 함께 addChatRoom/removeChatRoom 으로만 바꾼다)
+    private final RoomOrderIndex roomOrder;
+    private volatile UserStore store;
+    
+    public User(String userId, String password, String nickname, String email, String phone) {
+        this.userId = userId;
+        this.password = password;
+        this.nickname = nickname;
+        this.email = email;
+        this.phone = phone;
+        this.friendList = new IdSet();
+        this.blockedList = new IdSet();
+        this.chatRooms = new ConcurrentHashMap<>();
+        this.roomOrder = new RoomOrderIndex();
+    }
+    
+    // Getters and Setters
+    public String getUserId() { return userId; }
+    public String getPassword() { return password; }
+    public void setPassword(String password) { this.password = password; }
+    public String getNickname() { return nickname; }
+    public String getEmail() { return email; }
+    public String getPhone() { return phone; }
+    public synchronized Set<String> getFriendList() { return Collections.unmodifiableSet(copyOf(friendList)); }
+    public synchronized Set<String> getBlockedList() { return Collections.unmodifiableSet(copyOf(blockedList)); }
+    public synchronized int getFriendCount() { return friendList.size(); }
+    
+    // 스냅샷용: 모든 변경이 멈춘 동안(스냅샷 쓰기 잠금 안)에만 부른다. 변경을 기다리며 이 사용자를 잠근
+    // 스레드가 있을 수 있으므로 사용자 잠금을 잡지 않는다. 돌려준 목록은 이후 변경이 고치지 않는다.
+    Set<String> friendListForSnapshot() {
+        friendListShared = true;
+        return friendList;
+    }
+    
+    Set<String> blockedListForSnapshot() {
+        blockedListShared = true;
+        return blockedList;
+    }
+    
+    public Map<String, ChatRoom> getChatRooms() { return Collections.unmodifiableMap(chatRooms); }
+    
+    // 고정된 방 먼저, 최근 메시지 순으로 앞에서부터 limit 개
+    public List<ChatRoom> getRecentChatRooms(int limit) { return roomOrder.top(limit); }
+    public List<ChatRoom> getChatRoomsInOrder() { return roomOrder.top(Integer.MAX_VALUE); }
+    
+    public ChatRoom getChatRoom(String roomId) { return chatRooms.get(roomId); }
+    
+    public void addChatRoom(ChatRoom room) {
+        chatRooms.put(room.getRoomId(), room);
+        room.addOrderIndex(roomOrder);
+        roomOrder.add(room);
+    }
+    
+    public void removeChatRoom(ChatRoom room) {
+        chatRooms.remove(room.getRoomId());
+        room.removeOrderIndex(roomOrder);
+        roomOrder.remove(room);
+    }
+    
+    // 닉네임/이메일/전화번호는 UserStore 색인에 반영되어야 하므로 변경 시 저장소에 알린다
+    public void setNickname(String nickname) {
+        String oldNickname = this.nickname;
+        this.nickname = nickname;
+        if (store != null) {
+            store.nicknameChanged(this, oldNickname);
+        }
+    }
+    
+    public void setEmail(String email) {
+        String oldEmail = this.email;
+        this.email = email;
+        if (store != null) {
+            store.emailChanged(this, oldEmail);
+        }
+    }
+    
+    public void setPhone(String phone) {
+        String oldPhone = this.phone;
+        this.phone = phone;
+        if (store != null) {
+            store.phoneChanged(this, oldPhone);
+        }
+    }
+    
+    void attachTo(UserStore store) {
+        this.store = store;
+    }
+    
+    // 같은 아이디 문자열을 여러 목록이 공유하도록 저장소의 아이디 인스턴스를 사용
+    private String canonicalId(String userId) {
+        User user = store != null ? store.get(userId) : null;
+        return user != null ? user.getUserId() : userId;
+    }
+    
+    private static Set<String> copyOf(Set<String> ids) {
+        Set<String> copy = new IdSet();
+        copy.addAll(ids);
+        return copy;
+    }
+    
+    // 스냅샷이 가져간 목록이면 복사본으로 바꿔 끼운 뒤 고칠 목록을 돌려준다
+    private Set<String> writableFriendList() {
+        if (friendListShared) {
+            friendList = copyOf(friendList);
+            friendListShared = false;
+        }
+        return friendList;
+    }
+    
+    private Set<String> writableBlockedList() {
+        if (blockedListShared) {
+            blockedList = copyOf(blockedList);
+            blockedListShared = false;
+        }
+        return blockedList;
+    }
+    
+    // 친구 관련 메서드
+    public synchronized void addFriend(String friendId) {
+        if (!blockedList.contains(friendId) && !friendList.contains(friendId)) {
+            writableFriendList().add(canonicalId(friendId));
+        }
+    }
+    
+    public synchronized void removeFriend(String friendId) {
+        if (friendList.contains(friendId)) {
+            writableFriendList().remove(friendId);
+        }
+    }
+    
+    public synchronized void blockUser(String userId) {
+        if (!blockedList.contains(userId)) {
+            writableBlockedList().add(canonicalId(userId));
+            removeFriend(userId);
+        }
+    }
+    
+    public synchronized void unblockUser(String userId) {
+        if (blockedList.contains(userId)) {
+            writableBlockedList().remove(userId);
+        }
+    }
+    
+    public synchronized boolean isFriend(String userId) {
+        return friendList.contains(userId);
+    }
+    
+    public synchronized boolean isBlocked(String userId) {
+        return blockedList.contains(userId);
+    }
+}
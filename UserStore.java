@@ -0,0 +1,168 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// UserStore.java - 사용자 저장소와 보조 색인
+// 이메일/전화번호는 해시 색인, 닉네임/아이디는 접미사 색인으로 부분 문자열 검색을 처리한다.
+// 아이디 조회는 동시성 맵에서 잠금 없이 하고, 보조 색인은 읽기/쓰기 잠금으로 보호한다.
+class UserStore {
+    private Map<String, User> users;
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private Map<String, Set<String>> emailIndex;
+    private Map<String, Set<String>> phoneIndex;
+    // 소문자로 바꾼 문자열의 모든 접미사 -> 사용자 아이디
+    // 부분 문자열 검색은 접미사에 대한 접두어 검색과 같으므로 정렬된 맵의 구간 조회로 처리
+    private TreeMap<String, Set<String>> nicknameSuffixes;
+    private TreeMap<String, Set<String>> userIdSuffixes;
+    
+    public UserStore() {
+        this.users = new ConcurrentHashMap<>();
+        this.emailIndex = new HashMap<>();
+        this.phoneIndex = new HashMap<>();
+        this.nicknameSuffixes = new TreeMap<>();
+        this.userIdSuffixes = new TreeMap<>();
+    }
+    
+    public User get(String userId) { return users.get(userId); }
+    public boolean containsKey(String userId) { return users.containsKey(userId); }
+    public Collection<User> values() { return users.values(); }
+    public Set<String> keySet() { return users.keySet(); }
+    public int size() { return users.size(); }
+    
+    // 아이디 맵에 먼저 넣고 색인에 올린다. 색인으로 찾은 아이디는 언제나 아이디 맵에서 찾을 수 있어야 하고,
+    // 색인에 오르기 전에 아이디로 먼저 보이는 것은 괜찮다.
+    public void add(User user) {
+        user.attachTo(this);
+        users.put(user.getUserId(), user);
+        indexLock.writeLock().lock();
+        try {
+            addEntry(emailIndex, user.getEmail(), user.getUserId());
+            addEntry(phoneIndex, user.getPhone(), user.getUserId());
+            addSuffixes(nicknameSuffixes, user.getNickname(), user.getUserId());
+            addSuffixes(userIdSuffixes, user.getUserId(), user.getUserId());
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+    
+    public List<User> findByEmail(String email) {
+        return lookup(emailIndex, email);
+    }
+    
+    public List<User> findByPhone(String phone) {
+        return lookup(phoneIndex, phone);
+    }
+    
+    // 닉네임 또는 아이디에 keyword 가 포함된 사용자 (대소문자 무시)
+    public List<User> searchByNicknameOrId(String keyword) {
+        String key = keyword.toLowerCase();
+        Set<String> matched = new LinkedHashSet<>();
+        indexLock.readLock().lock();
+        try {
+            collectPrefix(nicknameSuffixes, key, matched);
+            collectPrefix(userIdSuffixes, key, matched);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        
+        List<User> result = new ArrayList<>();
+        for (String userId : matched) {
+            result.add(users.get(userId));
+        }
+        return result;
+    }
+    
+    // User 의 setter 에서 호출되어 색인을 갱신
+    void nicknameChanged(User user, String oldNickname) {
+        indexLock.writeLock().lock();
+        try {
+            removeSuffixes(nicknameSuffixes, oldNickname, user.getUserId());
+            addSuffixes(nicknameSuffixes, user.getNickname(), user.getUserId());
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+    
+    void emailChanged(User user, String oldEmail) {
+        indexLock.writeLock().lock();
+        try {
+            removeEntry(emailIndex, oldEmail, user.getUserId());
+            addEntry(emailIndex, user.getEmail(), user.getUserId());
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+    
+    void phoneChanged(User user, String oldPhone) {
+        indexLock.writeLock().lock();
+        try {
+            removeEntry(phoneIndex, oldPhone, user.getUserId());
+            addEntry(phoneIndex, user.getPhone(), user.getUserId());
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+    
+    private List<User> lookup(Map<String, Set<String>> index, String key) {
+        List<User> result = new ArrayList<>();
+        indexLock.readLock().lock();
+        try {
+            Set<String> userIds = index.get(key);
+            if (userIds == null) {
+                return Collections.emptyList();
+            }
+            for (String userId : userIds) {
+                result.add(users.get(userId));
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    private static void addEntry(Map<String, Set<String>> index, String key, String userId) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(userId);
+        }
+    }
+    
+    private static void removeEntry(Map<String, Set<String>> index, String key, String userId) {
+        if (key == null) {
+            return;
+        }
+        Set<String> userIds = index.get(key);
+        if (userIds != null) {
+            userIds.remove(userId);
+            if (userIds.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+    
+    private static void addSuffixes(TreeMap<String, Set<String>> index, String value, String userId) {
+        if (value == null) {
+            return;
+        }
+        String lower = value.toLowerCase();
+        for (int i = 0; i < lower.length(); i++) {
+            addEntry(index, lower.substring(i), userId);
+        }
+    }
+    
+    private static void removeSuffixes(TreeMap<String, Set<String>> index, String value, String userId) {
+        if (value == null) {
+            return;
+        }
+        String lower = value.toLowerCase();
+        for (int i = 0; i < lower.length(); i++) {
+            removeEntry(index, lower.substring(i), userId);
+        }
+    }
+    
+    private static void collectPrefix(TreeMap<String, Set<String>> index, String prefix, Set<String> out) {
+        for (Set<String> userIds : index.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            out.addAll(userIds);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import chatbench.ChatWorkload;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+// ChatWorkloadFixture.java - 벤치마크용 합성 데이터와 핫 패스 호출 (chatbench.ChatWorkload 구현)
+// createDefaultTestAccounts 와 같은 모양의 사용자 userCount 명을 만들고, 사용자마다 친구 20명과 차단 3명을 둔다.
+// 그룹 방 하나에 참여자 groupSize 명과 메시지 messageCount 건을 넣고, 참여자마다 읽음 위치를 흩어 둔다.
+// 조회용 사용자(user000000)는 그룹 방 외에 1:1 방 300개를 가지며, 방마다 메시지 수와 최근 시각, 고정 여부가 다르다.
+// 모델은 로그 없이 직접 채운다 (스냅샷 복구와 같은 방식). 같은 시드를 쓰므로 실행마다 데이터가 같다.
+public class ChatWorkloadFixture implements ChatWorkload {
+    private static final int FRIENDS_PER_USER = 20;
+    private static final int BLOCKS_PER_USER = 3;
+    private static final int DIRECT_ROOMS = 300;
+    private static final String[] WORDS = {
+        "오늘", "내일", "점심", "메뉴", "회의", "일정", "배포", "리뷰", "버그", "수정", "확인", "부탁", "감사합니다",
+        "커피", "주말", "퇴근", "출근", "자료", "공유", "링크", "사진", "ㅋㅋ", "ㅎㅎ", "네", "좋아요", "잠깐",
+        "deploy", "release", "hotfix", "PR", "build", "test", "meeting", "lunch", "ok", "thanks"
+    };
+    
+    private final Random random = new Random(42);
+    private UserStore users;
+    private String[] userIds;
+    private ChatRoom groupRoom;
+    private String[] groupParticipants;
+    private User viewer;
+    
+    @Override
+    public void setUp(int userCount, int messageCount, int groupSize) {
+        try {
+            MessageStore.configure(Files.createTempDirectory("chat-benchmark"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        createUsers(userCount);
+        createGroupRoom(Math.min(groupSize, userCount), messageCount);
+        createDirectRooms();
+        // 검색 색인은 첫 검색 때 만들어지므로 미리 한 번 찾아 둔다
+        groupRoom.search("회의", 0, 1);
+    }
+    
+    private void createUsers(int userCount) {
+        users = new UserStore();
+        userIds = new String[userCount];
+        for (int i = 0; i < userCount; i++) {
+            String userId = String.format("user%06d", i);
+            userIds[i] = userId;
+            users.add(new User(userId, "0000", "닉네임" + i, userId + "@example.com",
+                               String.format("010-%04d-%04d", i / 10000, i % 10000)));
+        }
+        for (String userId : userIds) {
+            User user = users.get(userId);
+            for (int f = 0; f < FRIENDS_PER_USER; f++) {
+                user.addFriend(userIds[random.nextInt(userCount)]);
+            }
+            for (int b = 0; b < BLOCKS_PER_USER; b++) {
+                user.blockUser(userIds[random.nextInt(userCount)]);
+            }
+        }
+    }
+    
+    private void createGroupRoom(int groupSize, int messageCount) {
+        groupRoom = new ChatRoom("group_1", "벤치마크 그룹", true);
+        groupParticipants = new String[groupSize];
+        for (int i = 0; i < groupSize; i++) {
+            groupParticipants[i] = userIds[i];
+            groupRoom.addParticipant(userIds[i]);
+            users.get(userIds[i]).addChatRoom(groupRoom);
+        }
+        long timestamp = System.currentTimeMillis() - messageCount * 1000L;
+        for (int i = 1; i <= messageCount; i++) {
+            // 5%는 답장, 1%는 삭제
+            long replyToSeq = i > 1 && random.nextInt(100) < 5 ? 1 + random.nextInt(i - 1) : 0;
+            groupRoom.addMessage(groupParticipants[random.nextInt(groupSize)], text(), replyToSeq, timestamp + i * 1000L);
+            if (random.nextInt(100) == 0) {
+                groupRoom.deleteMessage(i);
+            }
+        }
+        for (String participantId : groupParticipants) {
+            groupRoom.markReadUpTo(participantId, messageCount - random.nextInt(Math.max(1, messageCount / 10)));
+        }
+    }
+    
+    private void createDirectRooms() {
+        viewer = users.get(userIds[0]);
+        int partners = Math.min(DIRECT_ROOMS, userIds.length - 1);
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= partners; i++) {
+            ChatRoom room = new ChatRoom("room_" + i, viewer.getNickname() + ", " + users.get(userIds[i]).getNickname(), false);
+            room.addParticipant(viewer.getUserId());
+            room.addParticipant(userIds[i]);
+            viewer.addChatRoom(room);
+            users.get(userIds[i]).addChatRoom(room);
+            int messages = random.nextInt(30);
+            long timestamp = now - random.nextInt(30 * 24 * 3600) * 1000L;
+            for (int m = 0; m < messages; m++) {
+                String senderId = random.nextBoolean() ? viewer.getUserId() : userIds[i];
+                room.addMessage(senderId, text(), 0, timestamp + m * 60_000L);
+            }
+            if (random.nextInt(20) == 0) {
+                room.setPinned(true);
+            }
+        }
+    }
+    
+    private String text() {
+        int words = 3 + random.nextInt(10);
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+    
+    @Override
+    public int getUserCount() { return userIds.length; }
+    
+    @Override
+    public int getGroupSize() { return groupParticipants.length; }
+    
+    @Override
+    public long getMessageCount() { return groupRoom.getLastSeq(); }
+    
+    @Override
+    public long addMessage(int participant) {
+        return groupRoom.addMessage(groupParticipants[participant], "배포 끝났습니다 확인 부탁드려요", 0, System.currentTimeMillis());
+    }
+    
+    @Override
+    public int unreadCount(int participant) {
+        return groupRoom.getUnreadCount(groupParticipants[participant]);
+    }
+    
+    @Override
+    public Object messageBySeq(long seq) {
+        return groupRoom.getMessageBySeq(seq);
+    }
+    
+    @Override
+    public int search(String keyword) {
+        return groupRoom.search(keyword.toLowerCase(), 0, 20).size();
+    }
+    
+    @Override
+    public Object chatRoomsByTime() {
+        return viewer.getChatRoomsInOrder();
+    }
+    
+    @Override
+    public Object chatRoomsByUnread() {
+        return ChatService.chatRoomsByUnread(viewer);
+    }
+    
+    @Override
+    public boolean isBlocked(int user, int other) {
+        return users.get(userIds[user]).isBlocked(userIds[other]);
+    }
+    
+    @Override
+    public void addAndRemoveFriend(int user, int other) {
+        User friendOwner = users.get(userIds[user]);
+        friendOwner.addFriend(userIds[other]);
+        friendOwner.removeFriend(userIds[other]);
+    }
+    
+    @Override
+    public String randomChatPartner(int user, int pick) {
+        List<String> candidates = ChatService.randomChatCandidates(users, users.get(userIds[user]));
+        return candidates.isEmpty() ? null : candidates.get(pick % candidates.size());
+    }
+}
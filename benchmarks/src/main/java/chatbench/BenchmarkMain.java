@@ -0,0 +1,18 @@
+package chatbench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// BenchmarkMain.java - benchmarks.jar 의 시작점
+// JMH 의 Main 과 같은 인자를 받는다. 결과 형식(-rf)을 주지 않으면 jmh-result.json 에 JSON 으로 남겨
+// 실행끼리 비교하거나 CI 에서 회귀를 잡을 수 있게 한다.
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.addAll(Arrays.asList("-rf", "json", "-rff", "jmh-result.json"));
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
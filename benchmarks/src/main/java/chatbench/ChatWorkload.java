@@ -0,0 +1,49 @@
+package chatbench;
+
+// ChatWorkload.java - 벤치마크가 재는 채팅 엔진의 핫 패스
+// 엔진 클래스는 이름 없는 패키지에 있어 이름 있는 패키지의 JMH 벤치마크에서 직접 부를 수 없다.
+// 그래서 이름 없는 패키지의 ChatWorkloadFixture 가 이 인터페이스를 구현하고, 벤치마크는 이 인터페이스로만 부른다.
+// 구현이 하나뿐이라 호출은 JIT 가 인라인하므로 측정값에 끼어드는 비용은 없다.
+public interface ChatWorkload {
+    // 사용자 userCount 명, 메시지 messageCount 건짜리 그룹 방(참여자 groupSize 명)과 조회용 사용자의 방 목록을 만든다
+    static ChatWorkload create(int userCount, int messageCount, int groupSize) {
+        try {
+            ChatWorkload workload = (ChatWorkload) Class.forName("ChatWorkloadFixture")
+                .getDeclaredConstructor().newInstance();
+            workload.setUp(userCount, messageCount, groupSize);
+            return workload;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("ChatWorkloadFixture 를 만들 수 없습니다", e);
+        }
+    }
+    
+    void setUp(int userCount, int messageCount, int groupSize);
+    
+    int getUserCount();
+    int getGroupSize();
+    long getMessageCount();
+    
+    // 그룹 방에 participant 번째 참여자가 메시지를 하나 보낸다 (ChatRoom.addMessage)
+    long addMessage(int participant);
+    
+    // 그룹 방에서 participant 번째 참여자의 안읽은 메시지 수
+    int unreadCount(int participant);
+    
+    // 그룹 방의 seq 번 메시지 (이전의 findMessageById)
+    Object messageBySeq(long seq);
+    
+    // 그룹 방 메시지 검색 첫 페이지 (searchMessages 와 같은 경로)
+    int search(String keyword);
+    
+    // 조회용 사용자의 방 목록: 고정/최근 순 (sortChatRoomsByTime), 안읽은 순 (sortChatRoomsByUnread)
+    Object chatRoomsByTime();
+    Object chatRoomsByUnread();
+    
+    boolean isBlocked(int user, int other);
+    
+    // 친구 목록 크기가 측정 중에 커지지 않도록 추가한 뒤 바로 지운다
+    void addAndRemoveFriend(int user, int other);
+    
+    // 랜덤 채팅 상대 고르기 (randomChat 의 후보 목록 만들기 + 하나 고르기)
+    String randomChatPartner(int user, int pick);
+}
@@ -0,0 +1,76 @@
+package chatbench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// MessageBenchmarks.java - 그룹 방 하나(참여자 1000명)에 대한 메시지 핫 패스
+// 방 크기(messageCount)마다 데이터를 새로 만든다. 대상 참여자와 순번은 미리 뽑아 둔 표를 차례로 쓴다.
+// addMessage 는 측정하는 동안 방이 계속 자라므로 값은 "그 크기 이상인 방"에 보내는 비용이다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class MessageBenchmarks {
+    private static final int TABLE_SIZE = 4096;
+    
+    @Param({ "100000" })
+    public int userCount;
+    
+    @Param({ "1000", "100000", "1000000" })
+    public int messageCount;
+    
+    @Param({ "1000" })
+    public int groupSize;
+    
+    private ChatWorkload workload;
+    private int[] participants;
+    private long[] seqs;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = ChatWorkload.create(userCount, messageCount, groupSize);
+        Random random = new Random(7);
+        participants = new int[TABLE_SIZE];
+        seqs = new long[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            participants[i] = random.nextInt(workload.getGroupSize());
+            seqs[i] = 1 + (long) (random.nextDouble() * workload.getMessageCount());
+        }
+    }
+    
+    // 검색어는 검색 벤치마크에만 붙도록 따로 둔다
+    @State(Scope.Benchmark)
+    public static class Keyword {
+        @Param({ "회의", "deploy 확인" })
+        public String keyword;
+    }
+    
+    private int nextIndex() {
+        return next++ & (TABLE_SIZE - 1);
+    }
+    
+    @Benchmark
+    public long addMessage() {
+        return workload.addMessage(participants[nextIndex()]);
+    }
+    
+    @Benchmark
+    public int getUnreadCount() {
+        return workload.unreadCount(participants[nextIndex()]);
+    }
+    
+    @Benchmark
+    public Object getMessageBySeq() {
+        return workload.messageBySeq(seqs[nextIndex()]);
+    }
+    
+    @Benchmark
+    public int search(Keyword keyword) {
+        return workload.search(keyword.keyword);
+    }
+}
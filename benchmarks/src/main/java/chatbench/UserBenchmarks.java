@@ -0,0 +1,72 @@
+package chatbench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// UserBenchmarks.java - 사용자 한 명 단위의 핫 패스 (사용자 10만 명)
+// 방 목록 정렬은 방 301개를 가진 조회용 사용자로, 친구/차단과 랜덤 채팅은 미리 뽑아 둔 사용자 쌍으로 잰다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class UserBenchmarks {
+    private static final int TABLE_SIZE = 4096;
+    
+    @Param({ "100000" })
+    public int userCount;
+    
+    private ChatWorkload workload;
+    private int[] users;
+    private int[] others;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = ChatWorkload.create(userCount, 1000, 1000);
+        Random random = new Random(11);
+        users = new int[TABLE_SIZE];
+        others = new int[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            users[i] = random.nextInt(workload.getUserCount());
+            others[i] = random.nextInt(workload.getUserCount());
+        }
+    }
+    
+    private int nextIndex() {
+        return next++ & (TABLE_SIZE - 1);
+    }
+    
+    @Benchmark
+    public Object sortChatRoomsByTime() {
+        return workload.chatRoomsByTime();
+    }
+    
+    @Benchmark
+    public Object sortChatRoomsByUnread() {
+        return workload.chatRoomsByUnread();
+    }
+    
+    @Benchmark
+    public boolean isBlocked() {
+        int i = nextIndex();
+        return workload.isBlocked(users[i], others[i]);
+    }
+    
+    @Benchmark
+    public void addFriend() {
+        int i = nextIndex();
+        workload.addAndRemoveFriend(users[i], others[i]);
+    }
+    
+    // 후보 목록을 매번 전체 사용자에서 만들므로 사용자 수에 비례한다
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String randomChatPartner() {
+        int i = nextIndex();
+        return workload.randomChatPartner(users[i], others[i]);
+    }
+}